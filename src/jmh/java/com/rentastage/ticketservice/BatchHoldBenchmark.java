@@ -0,0 +1,104 @@
+package com.rentastage.ticketservice;
+
+import com.rentastage.ticketservice.model.HoldRequest;
+import com.rentastage.ticketservice.model.HoldResult;
+import com.rentastage.ticketservice.model.SnowflakeIdGenerator;
+import com.rentastage.ticketservice.model.Venue;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Measures holding a whole venue for box office groups, one group per call against batches of groups.
+ * <p>
+ * A batch size of 1 calls the single hold method in a loop. The score of {@link #holdAll} is the time it takes to
+ * hold every seat of a new venue.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public class BatchHoldBenchmark {
+
+    @Param({"default", "channel"})
+    String engine;
+
+    @Param({"1", "16", "256"})
+    int batchSize;
+
+    @Param({"4"})
+    int holdSize;
+
+    //Journal of the default engine: none, or flushed before replying
+    @Param({"none", "sync"})
+    String journal;
+
+    private Path directory;
+
+    private MappedJournal mappedJournal;
+
+    private TicketService ticketService;
+
+    private List<List<HoldRequest>> batches;
+
+    @Setup(Level.Iteration)
+    public void setUp() throws IOException {
+        Venue venue = new Venue(200, 500);
+        if (engine.equals("default") && journal.equals("sync")) {
+            directory = Files.createTempDirectory("journal");
+            mappedJournal = new MappedJournal(directory, 64 << 20, MappedJournal.FsyncPolicy.SYNC, 0);
+            ticketService = new DefaultTicketService(venue, SnowflakeIdGenerator.LOCAL, mappedJournal);
+        } else {
+            ticketService = BenchmarkSupport.ticketService(engine, venue);
+        }
+        batches = new ArrayList<>();
+        List<HoldRequest> batch = new ArrayList<>(batchSize);
+        for (int i = 0; i < venue.getSeatStore().size() / holdSize; i++) {
+            batch.add(new HoldRequest(holdSize, "group" + i + "@example.com"));
+            if (batch.size() == batchSize) {
+                batches.add(batch);
+                batch = new ArrayList<>(batchSize);
+            }
+        }
+        if (!batch.isEmpty()) {
+            batches.add(batch);
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() throws IOException {
+        BenchmarkSupport.shutdown(ticketService);
+        if (mappedJournal != null) {
+            mappedJournal.close();
+            try (Stream<Path> files = Files.walk(directory)) {
+                files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+            mappedJournal = null;
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public int holdAll() {
+        int held = 0;
+        for (List<HoldRequest> batch : batches) {
+            if (batchSize == 1) {
+                ticketService.findAndHoldSeats(holdSize, batch.get(0).getCustomerEmail());
+                held++;
+                continue;
+            }
+            for (HoldResult result : ticketService.findAndHoldSeats(batch, false)) {
+                held += result.isHeld() ? 1 : 0;
+            }
+        }
+        return held;
+    }
+}
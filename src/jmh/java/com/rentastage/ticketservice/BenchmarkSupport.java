@@ -0,0 +1,65 @@
+package com.rentastage.ticketservice;
+
+import com.rentastage.ticketservice.model.SeatHold;
+import com.rentastage.ticketservice.model.SnowflakeIdGenerator;
+import com.rentastage.ticketservice.model.Venue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Creates the venues and ticket service engines the benchmarks are parameterized with
+ */
+final class BenchmarkSupport {
+
+    private BenchmarkSupport() {
+    }
+
+    /**
+     * @param venue rows and seats per row, e.g. 10x34
+     */
+    static Venue venue(String venue) {
+        String[] size = venue.split("x");
+        return new Venue(Integer.parseInt(size[0]), Integer.parseInt(size[1]));
+    }
+
+    /**
+     * @param engine default or channel, the values of ts.engine
+     */
+    static TicketService ticketService(String engine, Venue venue) {
+        return ticketService(engine, venue, "1");
+    }
+
+    /**
+     * @param engine default or channel, the values of ts.engine
+     * @param sections sections of the venue, the values of ts.sections. Only used by the default engine
+     */
+    static TicketService ticketService(String engine, Venue venue, String sections) {
+        switch (engine) {
+            case "default":
+                return new DefaultTicketService(venue, SnowflakeIdGenerator.LOCAL, Journal.NONE, ReservationStore.NONE, sections);
+            case "channel":
+                return new ChannelBasedTicketService(venue, 4096, 5);
+            default:
+                throw new IllegalArgumentException("Unknown engine " + engine);
+        }
+    }
+
+    static void shutdown(TicketService ticketService) {
+        if (ticketService instanceof ChannelBasedTicketService) {
+            ((ChannelBasedTicketService) ticketService).shutdown();
+        }
+    }
+
+    /**
+     * Open holds to have in place before measuring. At most half the venue is held so the benchmark has seats left
+     */
+    static List<SeatHold> holdSeats(TicketService ticketService, int activeHolds, int holdSize) {
+        int holds = Math.min(activeHolds, ticketService.numSeatsAvailable() / 2 / holdSize);
+        List<SeatHold> seatHolds = new ArrayList<>(holds);
+        for (int i = 0; i < holds; i++) {
+            seatHolds.add(ticketService.findAndHoldSeats(holdSize, "hold" + i + "@example.com"));
+        }
+        return seatHolds;
+    }
+}
@@ -0,0 +1,43 @@
+package com.rentastage.ticketservice;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how long the default engine takes to expire open holds and release their seats. The channel engine
+ * expires holds inside its own batches, which {@link TicketServiceBenchmark} already covers.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class HoldExpiryBenchmark {
+
+    @Param({"10x34", "100x100", "200x500"})
+    String venue;
+
+    @Param({"1", "4", "10"})
+    int holdSize;
+
+    //Open holds to expire, capped at half the venue
+    @Param({"100", "1000", "10000"})
+    int activeHolds;
+
+    DefaultTicketService ticketService;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        ticketService = new DefaultTicketService(BenchmarkSupport.venue(venue));
+        BenchmarkSupport.holdSeats(ticketService, activeHolds, holdSize);
+    }
+
+    @Benchmark
+    public int expireSeatHolds() {
+        //holds expire within one 100ms tick of their deadline
+        ticketService.expireSeatHolds(System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(5) + 100);
+        return ticketService.numSeatsAvailable();
+    }
+}
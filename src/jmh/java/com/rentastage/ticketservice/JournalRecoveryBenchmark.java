@@ -0,0 +1,92 @@
+package com.rentastage.ticketservice;
+
+import com.rentastage.ticketservice.model.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Measures how long the default engine takes to open a journal and rebuild its holds and reservations.
+ * <p>
+ * The journal is written once per trial for a 200x500 venue. Holds of 4 seats are created one after the other,
+ * most of them expire and the seats are held again, and enough are reserved to sell out the venue by the end.
+ * With {@code snapshot=true} the journal is folded into a snapshot before the trial, so startup loads the snapshot
+ * instead of replaying the events.
+ */
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class JournalRecoveryBenchmark {
+
+    private static final int ROWS = 200;
+
+    private static final int SEATS_PER_ROW = 500;
+
+    private static final int HOLD_SIZE = 4;
+
+    @Param({"1000000", "5000000"})
+    int events;
+
+    @Param({"false", "true"})
+    boolean snapshot;
+
+    Path directory;
+
+    @Setup(Level.Trial)
+    public void writeJournal() throws IOException {
+        directory = Files.createTempDirectory("journal");
+        Venue venue = new Venue(ROWS, SEATS_PER_ROW);
+        SeatStore seatStore = venue.getSeatStore();
+        //every hold is followed by its reserve or expire event
+        int holds = events / 2;
+        int reserveEvery = Math.max(1, holds / (seatStore.size() / HOLD_SIZE));
+        int offset = 0;
+        try (MappedJournal journal = new MappedJournal(directory, 64 << 20, MappedJournal.FsyncPolicy.NONE, 0)) {
+            for (int i = 0; i < holds && offset + HOLD_SIZE <= seatStore.size(); i++) {
+                List<Seat> seats = new ArrayList<>(HOLD_SIZE);
+                for (int seat = offset; seat < offset + HOLD_SIZE; seat++) {
+                    seatStore.getAndSetStatus(seat, ReservedStatus.ON_HOLD);
+                    seats.add(seatStore.seat(seat));
+                }
+                SeatHold seatHold = SeatHold.newSeatHold().id(i + 1).holds(seats).customerEmail("customer" + i + "@example.com").build();
+                journal.hold(seatHold);
+                if (i % reserveEvery == 0) {
+                    seats.forEach(seat -> seat.setStatus(ReservedStatus.RESERVED));
+                    journal.reserve(seatHold, Reservation.newReservation().id(i + 1).reserves(seats)
+                            .customerEmail(seatHold.getCustomerEmail()).build());
+                    offset += HOLD_SIZE;
+                } else {
+                    seats.forEach(seat -> seat.setStatus(ReservedStatus.UNRESERVED));
+                    journal.expire(seatHold);
+                }
+            }
+            if (snapshot) {
+                journal.snapshot(seatStore.size());
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteJournal() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public int recover() {
+        try (MappedJournal journal = new MappedJournal(directory, 64 << 20, MappedJournal.FsyncPolicy.NONE, 0)) {
+            return new DefaultTicketService(new Venue(ROWS, SEATS_PER_ROW), new SnowflakeIdGenerator(1), journal).recover();
+        }
+    }
+}
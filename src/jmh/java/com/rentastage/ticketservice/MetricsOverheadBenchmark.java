@@ -0,0 +1,49 @@
+package com.rentastage.ticketservice;
+
+import com.rentastage.ticketservice.model.SeatHold;
+import com.rentastage.ticketservice.model.SnowflakeIdGenerator;
+import com.rentastage.ticketservice.model.Venue;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures what the Micrometer instrumentation adds to a hold of the default engine.
+ * <p>
+ * With metrics off the meters are registered with a composite registry that has no registries, so they record
+ * nothing. Every hold is expired right away, so the venue never sells out. Run with {@code -prof gc} to check that
+ * recording allocates nothing.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MetricsOverheadBenchmark {
+
+    @Param({"off", "on"})
+    String metrics;
+
+    @Param({"4"})
+    int holdSize;
+
+    DefaultTicketService ticketService;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        MeterRegistry registry = metrics.equals("on") ? new SimpleMeterRegistry() : new CompositeMeterRegistry();
+        ticketService = new DefaultTicketService(new Venue(200, 500), SnowflakeIdGenerator.LOCAL, Journal.NONE,
+                ReservationStore.NONE, "1", registry);
+    }
+
+    @Benchmark
+    public SeatHold holdAndExpire() {
+        SeatHold seatHold = ticketService.findAndHoldSeats(holdSize, "a@b.com");
+        ticketService.expireSeatHold(seatHold);
+        return seatHold;
+    }
+}
@@ -0,0 +1,79 @@
+package com.rentastage.ticketservice;
+
+import com.rentastage.ticketservice.model.*;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the sustained rate at which reservations of 4 seats are written behind to an embedded H2 database.
+ * <p>
+ * Each invocation hands a block of reservations to the store and waits until the writer has inserted all of them,
+ * so the score is the rate of the database writes, not of the queue.
+ */
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ReservationStoreBenchmark {
+
+    private static final int RESERVATIONS = 10_000;
+
+    private static final int HOLD_SIZE = 4;
+
+    @Param({"1", "32", "256"})
+    int batchSize;
+
+    JdbcTemplate jdbcTemplate;
+
+    WriteBehindReservationStore store;
+
+    //Reserved seats of a 200x500 venue, in groups of 4
+    List<List<Seat>> seatGroups = new ArrayList<>();
+
+    long nextId;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource("jdbc:h2:mem:reservations;DB_CLOSE_DELAY=-1");
+        new ResourceDatabasePopulator(new ClassPathResource("schema.sql")).execute(dataSource);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        store = new WriteBehindReservationStore(jdbcTemplate, 8192, batchSize);
+        SeatAllocator seatAllocator = new SeatAllocator(BenchmarkSupport.venue("200x500"));
+        List<Seat> seats;
+        while (seatGroups.size() < RESERVATIONS && (seats = seatAllocator.claim(HOLD_SIZE)) != null) {
+            seatAllocator.reserve(seats);
+            seatGroups.add(seats);
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void truncate() {
+        jdbcTemplate.execute("TRUNCATE TABLE reserved_seat");
+        jdbcTemplate.execute("TRUNCATE TABLE reservation");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        store.close();
+        jdbcTemplate.execute("DROP ALL OBJECTS");
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RESERVATIONS)
+    public long storeReservations() {
+        for (List<Seat> seats : seatGroups) {
+            store.store(Reservation.newReservation().id(++nextId).reserves(seats).customerEmail("customer@example.com").build());
+        }
+        store.flush();
+        return store.getWritten();
+    }
+}
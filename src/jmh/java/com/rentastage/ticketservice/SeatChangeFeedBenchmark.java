@@ -0,0 +1,45 @@
+package com.rentastage.ticketservice;
+
+import com.rentastage.ticketservice.model.SeatHold;
+import com.rentastage.ticketservice.model.Venue;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures what publishing every seat change to the {@link SeatChangeFeed} adds to a hold of the default engine.
+ * Writers never wait for subscribers, so there are none here. Every hold is expired right away, so the venue never
+ * sells out.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SeatChangeFeedBenchmark {
+
+    @Param({"off", "on"})
+    String feed;
+
+    @Param({"4"})
+    int holdSize;
+
+    DefaultTicketService ticketService;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        Venue venue = new Venue(200, 500);
+        if (feed.equals("on")) {
+            new SeatChangeFeed(venue, 65536);
+        }
+        ticketService = (DefaultTicketService) BenchmarkSupport.ticketService("default", venue);
+    }
+
+    @Benchmark
+    public SeatHold holdAndExpire() {
+        SeatHold seatHold = ticketService.findAndHoldSeats(holdSize, "a@b.com");
+        ticketService.expireSeatHold(seatHold);
+        return seatHold;
+    }
+}
@@ -0,0 +1,42 @@
+package com.rentastage.ticketservice;
+
+import com.rentastage.ticketservice.model.SeatHold;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures rendering the shell view of the default engine after a hold changed one row, as every shell command
+ * that changes seats does.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SeatMapRenderBenchmark {
+
+    @Param({"26x100"})
+    String venue;
+
+    //Open holds to list, capped at half the venue
+    @Param({"100", "1000"})
+    int activeHolds;
+
+    DefaultTicketService ticketService;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        ticketService = (DefaultTicketService) BenchmarkSupport.ticketService("default", BenchmarkSupport.venue(venue));
+        BenchmarkSupport.holdSeats(ticketService, activeHolds, 1);
+    }
+
+    @Benchmark
+    public String holdAndRender() {
+        SeatHold seatHold = ticketService.findAndHoldSeats(1, "a@b.com");
+        String view = ticketService.toString();
+        ticketService.expireSeatHold(seatHold);
+        return view;
+    }
+}
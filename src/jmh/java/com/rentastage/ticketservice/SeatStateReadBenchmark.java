@@ -0,0 +1,91 @@
+package com.rentastage.ticketservice;
+
+import com.rentastage.ticketservice.model.ReservedStatus;
+import com.rentastage.ticketservice.model.SeatHold;
+import com.rentastage.ticketservice.model.SeatStateVersions;
+import com.rentastage.ticketservice.model.SeatStore;
+import com.rentastage.ticketservice.model.Venue;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures availability reads while one thread keeps holding and expiring seats. Readers either count the seats
+ * of the latest {@link SeatStateVersions} version, or look up seats in it, or read the live seat store the way the
+ * HTTP seat map did before versions. Add reader threads with {@code -tg 1,N} to see how reads scale.
+ */
+@State(Scope.Group)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SeatStateReadBenchmark {
+
+    DefaultTicketService ticketService;
+
+    SeatStateVersions seatStateVersions;
+
+    SeatStore seatStore;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        Venue venue = new Venue(200, 500);
+        seatStateVersions = venue.getSeatStateVersions();
+        seatStore = venue.getSeatStore();
+        ticketService = (DefaultTicketService) BenchmarkSupport.ticketService("default", venue);
+    }
+
+    @State(Scope.Thread)
+    public static class Reader {
+        int offset;
+
+        int next() {
+            offset = (offset + 7919) % 100_000;
+            return offset;
+        }
+    }
+
+    @Benchmark
+    @Group("count")
+    public SeatHold countWriter() {
+        return holdAndExpire();
+    }
+
+    @Benchmark
+    @Group("count")
+    public int countReader() {
+        return ticketService.numSeatsAvailable();
+    }
+
+    @Benchmark
+    @Group("versionLookup")
+    public SeatHold versionLookupWriter() {
+        return holdAndExpire();
+    }
+
+    @Benchmark
+    @Group("versionLookup")
+    public ReservedStatus versionLookupReader(Reader reader) {
+        int offset = reader.next();
+        return seatStateVersions.read(state -> state.getStatus(offset));
+    }
+
+    @Benchmark
+    @Group("liveLookup")
+    public SeatHold liveLookupWriter() {
+        return holdAndExpire();
+    }
+
+    @Benchmark
+    @Group("liveLookup")
+    public ReservedStatus liveLookupReader(Reader reader) {
+        return seatStore.getStatus(reader.next());
+    }
+
+    private SeatHold holdAndExpire() {
+        SeatHold seatHold = ticketService.findAndHoldSeats(4, "a@b.com");
+        ticketService.expireSeatHold(seatHold);
+        return seatHold;
+    }
+}
@@ -0,0 +1,62 @@
+package com.rentastage.ticketservice;
+
+import com.rentastage.ticketservice.model.SeatHold;
+import com.rentastage.ticketservice.model.Venue;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares a hold of the default engine with the seat status words on the heap and in a memory mapped file that
+ * other processes could share. Run with {@code -prof gc} to compare allocation and collections. Every hold is
+ * expired right away, so the venue never sells out.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SharedSeatStoreBenchmark {
+
+    @Param({"heap", "mapped"})
+    String store;
+
+    @Param({"1000x1000"})
+    String venue;
+
+    DefaultTicketService ticketService;
+
+    Path directory;
+
+    @Setup(Level.Iteration)
+    public void setUp() throws IOException {
+        String[] dimensions = venue.split("x");
+        Path file = null;
+        if (store.equals("mapped")) {
+            directory = Files.createTempDirectory("seats");
+            file = directory.resolve("seats.bin");
+        }
+        ticketService = new DefaultTicketService(new Venue(Integer.parseInt(dimensions[0]),
+                Integer.parseInt(dimensions[1]), file));
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() throws IOException {
+        if (directory != null) {
+            //The mapping stays valid once the file is gone
+            Files.deleteIfExists(directory.resolve("seats.bin"));
+            Files.deleteIfExists(directory);
+        }
+    }
+
+    @Benchmark
+    public SeatHold holdAndExpire() {
+        SeatHold seatHold = ticketService.findAndHoldSeats(4, "a@b.com");
+        ticketService.expireSeatHold(seatHold);
+        return seatHold;
+    }
+}
@@ -0,0 +1,77 @@
+package com.rentastage.ticketservice;
+
+import com.rentastage.ticketservice.model.SeatHold;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the request path of every engine: holding and reserving seats until the venue is sold out, and
+ * counting the available seats while holds are open.
+ * <p>
+ * Every measured iteration sells out a new venue, so the score of {@link #sellOut} is the time it takes all
+ * benchmark threads together to sell the whole venue. Run with {@code -t} to set the number of threads.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public class TicketServiceBenchmark {
+
+    @Param({"default", "channel"})
+    String engine;
+
+    //rows x seats per row, from the shell's venue up to 100k seats
+    @Param({"10x34", "100x100", "200x500"})
+    String venue;
+
+    @Param({"1", "4", "10"})
+    int holdSize;
+
+    //Open holds in place before measuring, capped at half the venue
+    @Param({"0", "1000"})
+    int activeHolds;
+
+    //Sections holds are placed in concurrently, the default engine only
+    @Param({"1", "4"})
+    String sections;
+
+    TicketService ticketService;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        ticketService = BenchmarkSupport.ticketService(engine, BenchmarkSupport.venue(venue), sections);
+        BenchmarkSupport.holdSeats(ticketService, activeHolds, holdSize);
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() {
+        BenchmarkSupport.shutdown(ticketService);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public int sellOut() {
+        String customerEmail = Thread.currentThread().getName() + "@example.com";
+        int reserved = 0;
+        while (true) {
+            SeatHold seatHold;
+            try {
+                seatHold = ticketService.findAndHoldSeats(holdSize, customerEmail);
+            } catch (TicketServiceException soldOut) {
+                return reserved;
+            }
+            ticketService.reserveSeats(seatHold.getId(), customerEmail);
+            reserved += holdSize;
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public void numSeatsAvailable(Blackhole blackhole) {
+        blackhole.consume(ticketService.numSeatsAvailable());
+    }
+}
@@ -0,0 +1,194 @@
+package com.rentastage.ticketservice;
+
+import com.rentastage.ticketservice.model.HoldRequest;
+import com.rentastage.ticketservice.model.HoldResult;
+import com.rentastage.ticketservice.model.SeatHold;
+import org.reactivestreams.Publisher;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+import static org.springframework.util.Assert.isTrue;
+import static org.springframework.util.Assert.notNull;
+
+/**
+ * Non blocking facade over any {@link TicketService} engine. Calls run on a dedicated pool of worker threads and
+ * complete a future, or signal a Reactive Streams publisher, so the caller's thread is never blocked.
+ * <p>
+ * Requests wait in a bounded queue. When it is full a request is turned away rather than waiting, and a stream of
+ * hold requests only pulls as many requests from upstream as there are workers, so a fast producer is slowed down
+ * to the pace of the engine. Concurrent reads of the available seats share one computation.
+ * <p>
+ * A hold that is cancelled before a worker picks it up is never made. A hold that was already made when it is
+ * cancelled expires like any hold that is not reserved.
+ */
+@Component
+public class AsyncTicketService {
+
+    private final TicketService ticketService;
+
+    private final ThreadPoolExecutor workers;
+
+    //The read of the available seats in progress, shared by the callers that arrive while it runs
+    private final AtomicReference<CompletableFuture<Integer>> seatsAvailable = new AtomicReference<>();
+
+    @Autowired
+    public AsyncTicketService(TicketService ticketService,
+                              @Value("${ts.async.threads:4}") int threads,
+                              @Value("${ts.async.queueCapacity:1024}") int queueCapacity) {
+        notNull(ticketService, "Ticket service cannot be null");
+        isTrue(threads > 0, "Number of threads must be > 0");
+        isTrue(queueCapacity > 0, "Queue capacity must be > 0");
+        this.ticketService = ticketService;
+        AtomicInteger nextThread = new AtomicInteger();
+        this.workers = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "ticket-service-async-" + nextThread.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    /**
+     * @return a future completed with the number of seats that are neither held nor reserved
+     */
+    public CompletableFuture<Integer> numSeatsAvailableAsync() {
+        while (true) {
+            CompletableFuture<Integer> pending = seatsAvailable.get();
+            if (pending == null) {
+                CompletableFuture<Integer> read = new CompletableFuture<>();
+                if (!seatsAvailable.compareAndSet(null, read)) {
+                    continue;
+                }
+                //Cleared once complete, so a caller that arrives after the result is known reads again
+                read.whenComplete((seats, failure) -> seatsAvailable.compareAndSet(read, null));
+                try {
+                    run(read, ticketService::numSeatsAvailable);
+                } catch (TicketServiceException e) {
+                    seatsAvailable.compareAndSet(read, null);
+                    throw e;
+                }
+                pending = read;
+            }
+            //Every caller gets its own future, so one caller cancelling does not cancel the others
+            return pending.thenApply(seats -> seats);
+        }
+    }
+
+    /**
+     * Queue a request to find and hold the best available seats for a customer
+     *
+     * @return a future completed with the seat hold. Cancel it to drop the request if it has not started yet
+     * @throws TicketServiceException when the request queue is full
+     */
+    public CompletableFuture<SeatHold> findAndHoldSeatsAsync(int numSeats, String customerEmail) {
+        CompletableFuture<SeatHold> hold = new CompletableFuture<>();
+        run(hold, () -> ticketService.findAndHoldSeats(numSeats, customerEmail));
+        return hold;
+    }
+
+    /**
+     * Queue a request to commit seats held for a specific customer
+     *
+     * @return a future completed with the reservation confirmation code
+     * @throws TicketServiceException when the request queue is full
+     */
+    public CompletableFuture<String> reserveSeatsAsync(int seatHoldId, String customerEmail) {
+        CompletableFuture<String> reservation = new CompletableFuture<>();
+        run(reservation, () -> ticketService.reserveSeats(seatHoldId, customerEmail));
+        return reservation;
+    }
+
+    /**
+     * @return a publisher of the number of available seats
+     */
+    public Mono<Integer> numSeatsAvailable() {
+        return publish(this::numSeatsAvailableAsync);
+    }
+
+    /**
+     * @return a publisher of the seat hold. The seats are only looked for once it is subscribed to, and cancelling
+     * the subscription drops a request that has not started yet
+     */
+    public Mono<SeatHold> findAndHoldSeats(int numSeats, String customerEmail) {
+        return publish(() -> findAndHoldSeatsAsync(numSeats, customerEmail));
+    }
+
+    /**
+     * @return a publisher of the reservation confirmation code
+     */
+    public Mono<String> reserveSeats(int seatHoldId, String customerEmail) {
+        return publish(() -> reserveSeatsAsync(seatHoldId, customerEmail));
+    }
+
+    /**
+     * Hold seats for a stream of groups. At most one request per worker is taken from upstream at a time, and
+     * the results are published in the order of the requests
+     *
+     * @param requests the groups to hold seats for
+     * @return a result for every request. A group that cannot be held does not end the stream
+     */
+    public Flux<HoldResult> findAndHoldSeats(Publisher<HoldRequest> requests) {
+        return Flux.from(requests).flatMapSequential(request ->
+                findAndHoldSeats(request.getNumSeats(), request.getCustomerEmail())
+                        .map(seatHold -> HoldResult.held(request, seatHold))
+                        .onErrorResume(e -> Mono.just(HoldResult.failed(request, String.valueOf(e.getMessage())))),
+                workers.getMaximumPoolSize());
+    }
+
+    /**
+     * Stop the workers once the requests already queued were applied
+     */
+    @PreDestroy
+    public void shutdown() {
+        workers.shutdown();
+        try {
+            workers.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Run a call on a worker and complete the future with its outcome, unless the future was cancelled first
+     */
+    private <T> void run(CompletableFuture<T> future, Supplier<T> call) {
+        try {
+            workers.execute(() -> {
+                if (future.isDone()) {
+                    return;
+                }
+                try {
+                    future.complete(call.get());
+                } catch (Throwable e) {
+                    //An Error fails this call too, the caller would otherwise wait for good
+                    future.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            throw new TicketServiceException("Too many ticket service requests, try again");
+        }
+    }
+
+    private static <T> Mono<T> publish(Supplier<CompletableFuture<T>> call) {
+        return Mono.create(sink -> {
+            CompletableFuture<T> future = call.get();
+            sink.onCancel(() -> future.cancel(false));
+            future.whenComplete((value, failure) -> {
+                if (failure != null) {
+                    sink.error(failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure);
+                } else {
+                    sink.success(value);
+                }
+            });
+        });
+    }
+}
@@ -1,21 +1,423 @@
 package com.rentastage.ticketservice;
 
-import com.rentastage.ticketservice.model.SeatHold;
+import com.rentastage.ticketservice.model.*;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
 
+import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+
+import static org.springframework.util.Assert.isTrue;
+import static org.springframework.util.Assert.notNull;
+
+/**
+ * Ticket service where all changes to the seat state are made by a single owner thread.
+ * <p>
+ * Holds and reservations are put on a bounded queue and applied in batches by the owner thread, so the seat
+ * state needs no locks. Callers get a future that completes once their command has been applied. Reads are
+ * served from a snapshot the owner thread publishes after every batch. New reservations are handed to the
+ * reservation store once their command completed, outside the owner thread, so a slow database never holds up
+ * other commands.
+ * <p>
+ * Once the service is shut down, or the owner thread stopped on an error, new commands are turned away and
+ * commands that were queued but never applied fail, so no caller waits for good.
+ * <p>
+ * Enabled with {@code ts.engine=channel}
+ */
+@Component
+@ConditionalOnProperty(name = "ts.engine", havingValue = "channel")
 public class ChannelBasedTicketService implements TicketService {
+    private static final org.slf4j.Logger logger = LoggerFactory.getLogger(ChannelBasedTicketService.class);
+
+    //Maximum number of commands applied before a snapshot is published
+    private static final int MAX_BATCH_SIZE = 256;
+
+    //How long the owner thread waits for commands before it checks for expired holds
+    private static final long EXPIRY_TICK_MILLIS = 100;
+
+    private final Venue venue;
+
+    private final SeatAvailabilityIndex availabilityIndex;
+
+    private final SeatStateVersions seatStateVersions;
+
+    //Seat map of the shell, re-renders only the rows that changed
+    private final TicketServiceView view;
+
+    //Finds the best adjacent seats for a hold. There is no contention as only the owner thread claims seats
+    private final SeatAllocator seatAllocator;
+
+    private final BlockingQueue<Command<?>> commands;
+
+    private final long holdExpiresInMillis;
+
+    //Ids of holds and reservations, unique across ticket service processes
+    private final IdGenerator idGenerator;
+
+    //Receives every reservation once it was made, writes it to the database in the background. Called by the
+    //reserving callers, never by the owner thread
+    private final ReservationStore reservationStore;
+
+    private final Thread owner;
+
+    //Written by the owner thread only. Concurrent maps so the shell can display them
+    private final Map<Integer, SeatHold> seatHoldMap = new ConcurrentHashMap<>();
+    private final Map<Long, Reservation> reservationMap = new ConcurrentHashMap<>();
+
+    //Reservations by the id of the hold they were made from, so reserving a hold twice returns the same code.
+    //Kept until the hold would have expired, hold ids are reused once their sequence wraps. Owner thread only
+    private final Map<Integer, Reservation> reservedHolds = new HashMap<>();
+
+    //Holds in the order they were created, which is also the order they expire in. Owner thread only
+    private final Deque<SeatHold> holdsByExpiry = new ArrayDeque<>();
+
+    private volatile int numSeatsAvailableSnapshot;
+
+    private volatile boolean running = true;
+
+    //Held to check running and queue a command, and taken exclusively by the owner thread once it stops, so no
+    //command is queued after the owner thread looked at the queue for the last time
+    private final ReadWriteLock submitLock = new ReentrantReadWriteLock();
+
+    public ChannelBasedTicketService(Venue venue, int queueCapacity, int holdExpiresInMins) {
+        this(venue, queueCapacity, holdExpiresInMins, SnowflakeIdGenerator.LOCAL);
+    }
+
+    public ChannelBasedTicketService(Venue venue, int queueCapacity, int holdExpiresInMins, IdGenerator idGenerator) {
+        this(venue, queueCapacity, holdExpiresInMins, idGenerator, ReservationStore.NONE);
+    }
+
+    @Autowired
+    ChannelBasedTicketService(Venue venue,
+                              @Value("${ts.channel.queueCapacity:4096}") int queueCapacity,
+                              @Value("${ts.holdExpiresInMins:5}") int holdExpiresInMins,
+                              IdGenerator idGenerator,
+                              ReservationStore reservationStore) {
+        notNull(venue, "Venue cannot be null");
+        isTrue(queueCapacity > 0, "Queue capacity must be > 0");
+        notNull(idGenerator, "Id generator cannot be null");
+        notNull(reservationStore, "Reservation store cannot be null");
+        this.venue = venue;
+        this.view = new TicketServiceView(venue);
+        this.seatStateVersions = venue.getSeatStateVersions();
+        this.idGenerator = idGenerator;
+        this.reservationStore = reservationStore;
+        this.availabilityIndex = venue.getAvailabilityIndex();
+        this.seatAllocator = new SeatAllocator(venue);
+        this.commands = new ArrayBlockingQueue<>(queueCapacity);
+        this.holdExpiresInMillis = TimeUnit.MINUTES.toMillis(holdExpiresInMins);
+        this.numSeatsAvailableSnapshot = availabilityIndex.count(ReservedStatus.UNRESERVED);
+        this.owner = new Thread(this::run, "ticket-service-owner");
+        owner.setDaemon(true);
+        owner.start();
+    }
 
     @Override
     public int numSeatsAvailable() {
-        return 0;
+        return numSeatsAvailableSnapshot;
     }
 
     @Override
     public SeatHold findAndHoldSeats(int numSeats, String customerEmail) {
-        return null;
+        return await(findAndHoldSeatsAsync(numSeats, customerEmail));
     }
 
     @Override
     public String reserveSeats(int seatHoldId, String customerEmail) {
-        return null;
+        return stored(await(submit(() -> reserveHeldSeats(seatHoldId, customerEmail))));
+    }
+
+    /**
+     * Queue a request to find and hold the best available seats for a customer
+     *
+     * @param numSeats the number of seats to find and hold
+     * @param customerEmail unique identifier for the customer
+     * @return a future completed with the seat hold once the owner thread has applied the request
+     */
+    public CompletableFuture<SeatHold> findAndHoldSeatsAsync(int numSeats, String customerEmail) {
+        isTrue(numSeats > 0, "Number of seats must be > 0");
+        notNull(customerEmail, "Customer Email cannot be null");
+        return submit(() -> holdSeats(numSeats, customerEmail));
+    }
+
+    /**
+     * Hold seats for many groups with a single command, so the batch is applied by the owner thread in one go
+     * instead of queueing every group on its own
+     */
+    @Override
+    public List<HoldResult> findAndHoldSeats(List<HoldRequest> requests, boolean bestFit) {
+        notNull(requests, "Requests cannot be null");
+        return await(submit(() -> {
+            List<HoldResult> results = new ArrayList<>(Collections.nCopies(requests.size(), null));
+            for (int i : HoldRequest.placementOrder(requests, bestFit)) {
+                HoldRequest request = requests.get(i);
+                try {
+                    results.set(i, HoldResult.held(request, holdSeats(request.getNumSeats(), request.getCustomerEmail())));
+                } catch (TicketServiceException | IllegalArgumentException e) {
+                    results.set(i, HoldResult.failed(request, e.getMessage()));
+                }
+            }
+            return results;
+        }));
+    }
+
+    /**
+     * Queue a request to commit seats held for a specific customer
+     *
+     * @param seatHoldId the seat hold identifier
+     * @param customerEmail the email address of the customer to which the seat hold is assigned
+     * @return a future completed with the reservation confirmation code
+     */
+    public CompletableFuture<String> reserveSeatsAsync(int seatHoldId, String customerEmail) {
+        return submit(() -> reserveHeldSeats(seatHoldId, customerEmail)).thenApplyAsync(this::stored);
+    }
+
+    /**
+     * Hand a new reservation to the reservation store. Runs on the caller's side once the command completed, so a
+     * store waiting for a slow database holds up only this caller and never the owner thread
+     *
+     * @return the confirmation code
+     */
+    private String stored(Reserved reserved) {
+        if (reserved.made) {
+            reservationStore.store(reserved.reservation);
+        }
+        return reserved.reservation.getConfirmationCode();
+    }
+
+    /**
+     * Queue a request to expire the holds that are due at the given time. Holds are also expired on every batch
+     *
+     * @param nowMillis the time to expire holds at
+     * @return a future completed once the expired holds were released
+     */
+    CompletableFuture<Void> expireSeatHoldsAsync(long nowMillis) {
+        return submit(() -> {
+            expireSeatHolds(nowMillis);
+            return null;
+        });
+    }
+
+    /**
+     * Stop accepting commands, apply the ones already queued and stop the owner thread
+     */
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        try {
+            owner.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private <T> CompletableFuture<T> submit(Supplier<T> action) {
+        Command<T> command = new Command<>(action);
+        submitLock.readLock().lock();
+        try {
+            //Waits for room while the owner thread runs, it stops taking commands once shut down
+            do {
+                if (!running) {
+                    throw new TicketServiceException("Ticket service is shut down");
+                }
+            } while (!commands.offer(command, EXPIRY_TICK_MILLIS, TimeUnit.MILLISECONDS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TicketServiceException("Interrupted while waiting for the ticket service");
+        } finally {
+            submitLock.readLock().unlock();
+        }
+        return command.future;
+    }
+
+    private static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * The owner thread loop. Applies queued commands in batches, expires holds, publishes the snapshot and only
+     * then completes the futures, so a caller always reads its own changes
+     */
+    private void run() {
+        List<Command<?>> batch = new ArrayList<>(MAX_BATCH_SIZE);
+        try {
+            applyCommands(batch);
+        } catch (RuntimeException | Error e) {
+            logger.error("Ticket service owner thread stopped", e);
+            throw e;
+        } finally {
+            running = false;
+            //Waits for callers that are queueing a command, later callers see that the service is shut down
+            submitLock.writeLock().lock();
+            try {
+                commands.drainTo(batch);
+            } finally {
+                submitLock.writeLock().unlock();
+            }
+            //Completing a future that was completed already does nothing
+            TicketServiceException shutDown = new TicketServiceException("Ticket service is shut down");
+            batch.forEach(command -> command.future.completeExceptionally(shutDown));
+        }
+    }
+
+    private void applyCommands(List<Command<?>> batch) {
+        while (running || !commands.isEmpty()) {
+            try {
+                Command<?> first = commands.poll(EXPIRY_TICK_MILLIS, TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    commands.drainTo(batch, MAX_BATCH_SIZE - 1);
+                }
+            } catch (InterruptedException e) {
+                logger.warn("Ticket service owner thread interrupted");
+                break;
+            }
+            //The whole batch is one write, readers of the seat state see it applied in full or not at all
+            seatStateVersions.beginWrite();
+            try {
+                batch.forEach(Command::apply);
+                expireSeatHolds(System.currentTimeMillis());
+                venue.syncSharedSeats();
+            } finally {
+                seatStateVersions.endWrite();
+            }
+            numSeatsAvailableSnapshot = availabilityIndex.count(ReservedStatus.UNRESERVED);
+            batch.forEach(Command::complete);
+            batch.clear();
+        }
+    }
+
+    private SeatHold holdSeats(int numSeats, String customerEmail) {
+        int available = availabilityIndex.count(ReservedStatus.UNRESERVED);
+        if (available < numSeats) {
+            throw new TicketServiceException(String.format("Cannot hold %d seats! %d seats available", numSeats, available));
+        }
+        List<Seat> heldSeats = seatAllocator.claim(numSeats);
+        if (heldSeats == null) {
+            //Other processes sharing the seats may have taken them since they were counted
+            throw new TicketServiceException(String.format("Cannot hold %d seats! %d seats available", numSeats,
+                    availabilityIndex.count(ReservedStatus.UNRESERVED)));
+        }
+        SeatHold seatHold = SeatHold.newSeatHold()
+                .id(idGenerator.nextHoldId())
+                .customerEmail(customerEmail)
+                .holds(heldSeats).build();
+        seatHoldMap.put(seatHold.getId(), seatHold);
+        holdsByExpiry.addLast(seatHold);
+        return seatHold;
+    }
+
+    private Reserved reserveHeldSeats(int seatHoldId, String customerEmail) {
+        //Commands are applied one at a time, so a duplicate reserve of the same hold always finds the first one
+        Reservation reserved = reservedHolds.get(seatHoldId);
+        if (reserved != null) {
+            if (!reserved.getCustomerEmail().equalsIgnoreCase(customerEmail)) {
+                throw new TicketServiceException(String.format("Customer email: %s, not found", customerEmail));
+            }
+            return new Reserved(reserved, false);
+        }
+        SeatHold seatHold = seatHoldMap.get(seatHoldId);
+        if (seatHold == null) {
+            throw new TicketServiceException(String.format("The seat hold id %d is not available", seatHoldId));
+        }
+        if (!seatHold.getCustomerEmail().equalsIgnoreCase(customerEmail)) {
+            throw new TicketServiceException(String.format("Customer email: %s, not found", customerEmail));
+        }
+        seatAllocator.reserve(seatHold.getHolds());
+        Reservation reservation = Reservation.newReservation()
+                .id(idGenerator.nextReservationId())
+                .reserves(seatHold.getHolds()).customerEmail(seatHold.getCustomerEmail()).build();
+        seatHoldMap.remove(seatHoldId);
+        reservationMap.put(reservation.getId(), reservation);
+        reservedHolds.put(seatHoldId, reservation);
+        return new Reserved(reservation, true);
+    }
+
+    /**
+     * Release the seats of holds that have expired. Holds are created in expiry order, so only the expired holds
+     * at the head of the queue are visited
+     */
+    private void expireSeatHolds(long now) {
+        SeatHold oldest;
+        while ((oldest = holdsByExpiry.peekFirst()) != null
+                && oldest.getHeldAt().getTime() + holdExpiresInMillis <= now) {
+            holdsByExpiry.removeFirst();
+            //Holds that were reserved are no longer in the map
+            if (seatHoldMap.remove(oldest.getId(), oldest)) {
+                oldest.getHolds().forEach(seat -> seat.setStatus(ReservedStatus.UNRESERVED));
+            } else {
+                reservedHolds.remove(oldest.getId());
+            }
+        }
+    }
+
+    @Override
+    public String render(int page) {
+        return view.render(seatHoldMap.values(), reservationMap.values(), numSeatsAvailable(), page);
+    }
+
+    public String toString() {
+        return render(1);
+    }
+
+    /**
+     * The reservation of a hold, and whether this command made it or found it made by an earlier one
+     */
+    private static final class Reserved {
+        private final Reservation reservation;
+        private final boolean made;
+
+        private Reserved(Reservation reservation, boolean made) {
+            this.reservation = reservation;
+            this.made = made;
+        }
+    }
+
+    /**
+     * A queued change to the seat state. Applied and completed by the owner thread
+     */
+    private static final class Command<T> {
+        private final Supplier<T> action;
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+        private T result;
+        private Throwable failure;
+
+        private Command(Supplier<T> action) {
+            this.action = action;
+        }
+
+        private void apply() {
+            try {
+                result = action.get();
+            } catch (Throwable e) {
+                //Fails this command only, the owner thread carries on with the next
+                failure = e;
+            }
+        }
+
+        private void complete() {
+            if (failure != null) {
+                future.completeExceptionally(failure);
+            } else {
+                future.complete(result);
+            }
+        }
     }
 }
@@ -12,14 +12,21 @@ public class Commands {
   private final
   TicketService venue;
 
+  private final EventCatalog eventCatalog;
+
   @Autowired
-  public Commands(TicketService venue) {
+  public Commands(TicketService venue, EventCatalog eventCatalog) {
     this.venue = venue;
+    this.eventCatalog = eventCatalog;
   }
 
-  @ShellMethod("Show all Seats")
-  public String showSeats() {
-    return venue.toString();
+  @ShellMethod("Show all Seats, with a page of the seat holds and reservations")
+  public String showSeats(@ShellOption(defaultValue = "1") int page) {
+    try {
+      return venue.render(page);
+    } catch (Exception e) {
+      return e.getLocalizedMessage();
+    }
   }
 
   @ShellMethod(value = "Get the number of available seats")
@@ -52,4 +59,25 @@ public class Commands {
     }
     return venue.toString();
   }
+
+  @ShellMethod(value = "Create an event with its own venue")
+  public String createEvent(
+      @ShellOption() String name,
+      @ShellOption() int noOfRows,
+      @ShellOption() int noOfSeatsPerRow
+  ) {
+    try {
+      eventCatalog.createEvent(name, noOfRows, noOfSeatsPerRow);
+    } catch (Exception e) {
+      return e.getLocalizedMessage();
+    }
+    return showEvents();
+  }
+
+  @ShellMethod(value = "Show all events")
+  public String showEvents() {
+    StringBuilder events = new StringBuilder();
+    eventCatalog.getEvents().forEach(event -> events.append(event).append(System.lineSeparator()));
+    return events.toString();
+  }
 }
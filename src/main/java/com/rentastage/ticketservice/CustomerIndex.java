@@ -0,0 +1,149 @@
+package com.rentastage.ticketservice;
+
+import com.rentastage.ticketservice.model.Reservation;
+import com.rentastage.ticketservice.model.SeatHold;
+
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Open holds and reservations of every customer, keyed by the normalized email address.
+ * <p>
+ * Seats are counted against the per customer limit before they are claimed, with one compare and set on the
+ * customer's seat count, so the limit holds under concurrent requests of the same customer without scanning
+ * their holds. Held seats stay counted when the hold is reserved and are given back when it expires.
+ */
+class CustomerIndex {
+
+    private final ConcurrentMap<String, Customer> customers = new ConcurrentHashMap<>();
+
+    /**
+     * @return the email address as the index keys it
+     */
+    static String normalize(String customerEmail) {
+        return customerEmail.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Count seats against the limit of the customer before they are claimed
+     *
+     * @param maxSeats the maximum number of held and reserved seats per customer, 0 for no limit
+     * @throws TicketServiceException when the customer would go over the limit
+     */
+    void acquireSeats(String customerEmail, int numSeats, int maxSeats) {
+        AtomicInteger seats = customer(customerEmail).seats;
+        int current;
+        do {
+            current = seats.get();
+            if (maxSeats > 0 && current + numSeats > maxSeats) {
+                throw new TicketServiceException(String.format("Customer %s cannot hold %d more seats, the limit is %d",
+                        customerEmail, numSeats, maxSeats));
+            }
+        } while (!seats.compareAndSet(current, current + numSeats));
+    }
+
+    /**
+     * Give back seats that were acquired but could not be claimed
+     */
+    void releaseSeats(String customerEmail, int numSeats) {
+        customer(customerEmail).seats.addAndGet(-numSeats);
+    }
+
+    /**
+     * @param seatHold a new hold, whose seats were acquired
+     */
+    void holdCreated(SeatHold seatHold) {
+        Customer customer = customer(seatHold.getCustomerEmail());
+        customer.heldSeats.addAndGet(seatHold.getHolds().size());
+        customer.seatHoldIds.add(seatHold.getId());
+    }
+
+    /**
+     * @param seatHold a hold that expired, its seats are given back
+     */
+    void holdExpired(SeatHold seatHold) {
+        Customer customer = customer(seatHold.getCustomerEmail());
+        customer.seatHoldIds.remove(seatHold.getId());
+        customer.heldSeats.addAndGet(-seatHold.getHolds().size());
+        customer.seats.addAndGet(-seatHold.getHolds().size());
+    }
+
+    /**
+     * @param seatHold a hold that was reserved, its seats stay counted
+     * @param reservation the reservation made from it
+     */
+    void holdReserved(SeatHold seatHold, Reservation reservation) {
+        Customer customer = customer(seatHold.getCustomerEmail());
+        customer.reservationIds.add(reservation.getId());
+        customer.reservedSeats.addAndGet(reservation.getReserves().size());
+        customer.seatHoldIds.remove(seatHold.getId());
+        customer.heldSeats.addAndGet(-seatHold.getHolds().size());
+    }
+
+    /**
+     * Index a hold rebuilt on startup. Its seats are counted even when they are over the limit
+     */
+    void holdRestored(SeatHold seatHold) {
+        customer(seatHold.getCustomerEmail()).seats.addAndGet(seatHold.getHolds().size());
+        holdCreated(seatHold);
+    }
+
+    /**
+     * Index a reservation rebuilt on startup
+     */
+    void reservationRestored(Reservation reservation) {
+        Customer customer = customer(reservation.getCustomerEmail());
+        customer.seats.addAndGet(reservation.getReserves().size());
+        customer.reservedSeats.addAndGet(reservation.getReserves().size());
+        customer.reservationIds.add(reservation.getId());
+    }
+
+    /**
+     * @return ids of the open holds of the customer
+     */
+    Set<Integer> getSeatHoldIds(String customerEmail) {
+        Customer customer = customers.get(normalize(customerEmail));
+        return customer == null ? Collections.emptySet() : Collections.unmodifiableSet(customer.seatHoldIds);
+    }
+
+    /**
+     * @return ids of the reservations of the customer
+     */
+    Set<Long> getReservationIds(String customerEmail) {
+        Customer customer = customers.get(normalize(customerEmail));
+        return customer == null ? Collections.emptySet() : Collections.unmodifiableSet(customer.reservationIds);
+    }
+
+    /**
+     * @return the number of seats the customer has on hold
+     */
+    int getHeldSeats(String customerEmail) {
+        Customer customer = customers.get(normalize(customerEmail));
+        return customer == null ? 0 : customer.heldSeats.get();
+    }
+
+    /**
+     * @return the number of seats the customer has reserved
+     */
+    int getReservedSeats(String customerEmail) {
+        Customer customer = customers.get(normalize(customerEmail));
+        return customer == null ? 0 : customer.reservedSeats.get();
+    }
+
+    private Customer customer(String customerEmail) {
+        return customers.computeIfAbsent(normalize(customerEmail), email -> new Customer());
+    }
+
+    private static final class Customer {
+        //Held and reserved seats, including seats acquired for a hold that is being placed. Checked against the limit
+        private final AtomicInteger seats = new AtomicInteger();
+        private final AtomicInteger heldSeats = new AtomicInteger();
+        private final AtomicInteger reservedSeats = new AtomicInteger();
+        private final Set<Integer> seatHoldIds = ConcurrentHashMap.newKeySet();
+        private final Set<Long> reservationIds = ConcurrentHashMap.newKeySet();
+    }
+}
@@ -1,20 +1,25 @@
 package com.rentastage.ticketservice;
 
-import com.google.common.collect.ImmutableList;
 import com.rentastage.ticketservice.model.*;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.scheduling.annotation.Scheduled;
-import org.springframework.shell.table.*;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PostConstruct;
+
 import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.stream.Collectors;
+import java.util.concurrent.TimeUnit;
 
-import static org.springframework.shell.table.CellMatchers.at;
+import static org.springframework.util.Assert.isTrue;
 import static org.springframework.util.Assert.notNull;
 
 /**
@@ -22,66 +27,278 @@ import static org.springframework.util.Assert.notNull;
  * <p>
  * Implements ticket service as we do not want to allow access to seat objects
  * outside this class
+ * <p>
+ * This is the default engine. Set {@code ts.engine=channel} to use {@link ChannelBasedTicketService} instead
  */
 @Component
+@ConditionalOnProperty(name = "ts.engine", havingValue = "default", matchIfMissing = true)
 public class DefaultTicketService implements TicketService {
     private static final org.slf4j.Logger logger = LoggerFactory.getLogger(DefaultTicketService.class);
     private final Venue venue;
 
+    //Counts and locates seats by status without scanning the seat cache
+    private final SeatAvailabilityIndex availabilityIndex;
+
+    //Seat map of the shell, re-renders only the rows that changed
+    private final TicketServiceView view;
+
+    //Finds and claims the best adjacent seats for a hold
+    private final SeatAllocator seatAllocator;
+
+    //Moves split holds to adjacent seats as seats are released
+    final HoldDefragmenter defragmenter;
+
     Map<Integer, SeatHold> seatHoldMap = new ConcurrentHashMap<Integer, SeatHold>();
-    Map<Integer, Reservation> reservationMap = new ConcurrentHashMap<>();
+    Map<Long, Reservation> reservationMap = new ConcurrentHashMap<>();
+
+    //Reservations by the id of the hold they were made from, so reserving a hold twice returns the same code.
+    //Kept until the hold would have expired, hold ids are reused once their sequence wraps
+    final Map<Integer, CompletableFuture<Reservation>> reservedHolds = new ConcurrentHashMap<>();
+
+    //Reservations restored from the journal have no hold left to expire. They are forgotten together once the
+    //last of their holds would have expired
+    private final Map<Integer, CompletableFuture<Reservation>> recoveredReservedHolds = new ConcurrentHashMap<>();
+    private volatile long recoveredReservedHoldsExpireAt;
 
-    //Store the seat layout linearly to make it easier to allocate/deallocate seats
-    //Use a CopyOnWriteArrayList to support concurrency
+    //The seats in venue order, backed by the venue's seat store
     final List<Seat> seatCache;
 
-    //Seat Index to quickly lookup seats. It is a umodifiable map
-    Map<String, Seat> seatIndexMap;
+    //Open holds and reservations by customer, with the seat count the per customer limit is checked against
+    final CustomerIndex customerIndex = new CustomerIndex();
+
+    //Seats a customer can have on hold and reserved together, 0 for no limit
+    @Value("${ts.customer.maxSeats:0}")
+    int maxSeatsPerCustomer = 0;
 
     @Value("${ts.holdExpiresInMins : 5}")
     private int holdExpiresInMins = 5;
 
-    @Autowired
+    @Value("${ts.defragMaxHoldsPerPass:64}")
+    private int defragMaxHoldsPerPass = 64;
+
+    //Expiry deadlines of the active holds. 100ms ticks, one rotation spans about 7 minutes
+    final HoldExpiryWheel expiryWheel = new HoldExpiryWheel(100, 4096);
+
+    //Ids of holds and reservations, unique across ticket service processes
+    private final IdGenerator idGenerator;
+
+    //Records every change to holds and reservations so they survive a restart
+    private final Journal journal;
+
+    //Receives every reservation once it was made, writes it to the database in the background
+    private final ReservationStore reservationStore;
+
+    final TicketServiceMetrics metrics;
+
     public DefaultTicketService(Venue venue) {
+        this(venue, SnowflakeIdGenerator.LOCAL);
+    }
+
+    public DefaultTicketService(Venue venue, IdGenerator idGenerator) {
+        this(venue, idGenerator, Journal.NONE);
+    }
+
+    DefaultTicketService(Venue venue, IdGenerator idGenerator, Journal journal) {
+        this(venue, idGenerator, journal, ReservationStore.NONE);
+    }
+
+    DefaultTicketService(Venue venue, IdGenerator idGenerator, Journal journal, ReservationStore reservationStore) {
+        this(venue, idGenerator, journal, reservationStore, "1");
+    }
+
+    DefaultTicketService(Venue venue, IdGenerator idGenerator, Journal journal, ReservationStore reservationStore,
+                         String sections) {
+        //A composite registry without registries records nothing
+        this(venue, idGenerator, journal, reservationStore, sections, new CompositeMeterRegistry());
+    }
+
+    /**
+     * @param sections sections of the venue that holds are placed in concurrently, see {@link SeatAllocator#sectionRows}
+     * @param meterRegistry registry the timers, counters and gauges of the service are registered with
+     */
+    @Autowired
+    DefaultTicketService(Venue venue, IdGenerator idGenerator, Journal journal, ReservationStore reservationStore,
+                         @Value("${ts.sections:1}") String sections, MeterRegistry meterRegistry) {
         notNull(venue, "Venue cannot be null");
+        notNull(idGenerator, "Id generator cannot be null");
+        notNull(journal, "Journal cannot be null");
+        notNull(reservationStore, "Reservation store cannot be null");
+        notNull(meterRegistry, "Meter registry cannot be null");
+        //The seats of a shared store outlive this process, replaying a journal onto them would claim them twice
+        isTrue(journal == Journal.NONE || !venue.getSeatStore().isShared(), "A shared seat store cannot be journaled");
         this.venue = venue;
-        Seat[][] seatLayout = venue.getSeatLayout();
-
-        //Create and initialize the seatLayout
-        char rowName = 'A';
+        this.view = new TicketServiceView(venue);
+        this.idGenerator = idGenerator;
+        this.journal = journal;
+        this.reservationStore = reservationStore;
+        this.availabilityIndex = venue.getAvailabilityIndex();
+        this.seatAllocator = new SeatAllocator(venue, SeatAllocator.sectionRows(sections, venue.getNoOfRows()));
+        this.defragmenter = new HoldDefragmenter(seatHoldMap, seatAllocator, journal);
+        this.seatCache = venue.getSeatStore().asList();
+        this.metrics = new TicketServiceMetrics(meterRegistry, availabilityIndex, seatHoldMap);
+    }
 
-        ArrayList<Seat> tmpList = new ArrayList<>();
-        //TODO: use stream collect
-        for (int rowIndex = 0; rowIndex < venue.getNoOfRows(); rowIndex++, rowName++) {
-            Seat[] row = seatLayout[rowIndex];
-            tmpList.addAll(Arrays.asList(row).subList(0, venue.getNoOfSeatsPerRow()));
+    /**
+     * Rebuild the holds and reservations recorded in the journal, starting from its latest snapshot. Runs once on
+     * startup, before any request
+     *
+     * @return the number of journal events replayed after the snapshot
+     */
+    @PostConstruct
+    int recover() {
+        SeatStore seatStore = venue.getSeatStore();
+        JournalRecovery recovery = new JournalRecovery(seatStore.size());
+        journal.recover(recovery);
+        SeatStateVersions seatStateVersions = venue.getSeatStateVersions();
+        seatStateVersions.beginWrite();
+        try {
+            recovery.apply(seatStore);
+        } finally {
+            seatStateVersions.endWrite();
+        }
+        recovery.getReservations(seatStore).forEach((seatHoldId, reservation) -> {
+            reservationMap.put(reservation.getId(), reservation);
+            CompletableFuture<Reservation> reserved = CompletableFuture.completedFuture(reservation);
+            reservedHolds.put(seatHoldId, reserved);
+            recoveredReservedHolds.put(seatHoldId, reserved);
+            recoveredReservedHoldsExpireAt = Math.max(recoveredReservedHoldsExpireAt,
+                    reservation.getReservedAt().getTime() + TimeUnit.MINUTES.toMillis(holdExpiresInMins));
+            idGenerator.restored(seatHoldId, reservation.getId());
+            customerIndex.reservationRestored(reservation);
+        });
+        //Holds that are already past their expiry are released on the next tick
+        for (SeatHold seatHold : recovery.getOpenHolds(seatStore)) {
+            seatHoldMap.put(seatHold.getId(), seatHold);
+            defragmenter.holdCreated(seatHold);
+            expiryWheel.schedule(seatHold, seatHold.getHeldAt().getTime() + TimeUnit.MINUTES.toMillis(holdExpiresInMins));
+            idGenerator.restored(seatHold.getId(), 0);
+            customerIndex.holdRestored(seatHold);
         }
-        //convert to copyOnWriteList
-        seatCache = new CopyOnWriteArrayList(tmpList);
-        Map<String, Seat> tmpSeatMap = seatCache.stream().collect(Collectors.toMap(Seat::getId, seat -> seat));
-        //create an unmodifiable map
-        seatIndexMap = Collections.unmodifiableMap(tmpSeatMap);
+        if (!seatHoldMap.isEmpty() || !reservationMap.isEmpty()) {
+            logger.info(String.format("Recovered %d holds and %d reservations, replayed %d journal events",
+                    seatHoldMap.size(), reservationMap.size(), recovery.getEvents()));
+        }
+        return recovery.getEvents();
     }
 
+    /**
+     * @return the available seats of the latest version of the seat state, which never counts a hold half made
+     */
     @Override
     public int numSeatsAvailable() {
-        return (int) seatCache.stream().filter(seat -> seat.getStatus() == ReservedStatus.UNRESERVED).count();
+        return venue.getSeatStateVersions().count(ReservedStatus.UNRESERVED);
     }
 
     @Override
     public SeatHold findAndHoldSeats(int numSeats, String customerEmail) {
+        long start = System.nanoTime();
+        try {
+            return holdSeats(numSeats, customerEmail);
+        } catch (TicketServiceException e) {
+            metrics.holdFailures.increment();
+            throw e;
+        } finally {
+            TicketServiceMetrics.record(metrics.holdTimer, start);
+        }
+    }
+
+    private SeatHold holdSeats(int numSeats, String customerEmail) {
+        isTrue(numSeats > 0, "Number of seats must be > 0");
+        notNull(customerEmail, "Customer Email cannot be null");
+        //Checked against the live count, a version may still miss seats given back since it was published
+        int available = availabilityIndex.count(ReservedStatus.UNRESERVED);
+        if (available < numSeats) {
+            throw new TicketServiceException(String.format("Cannot hold %d seats! %d seats available", numSeats, available));
+        }
+        //Counted against the customer's limit before any seat is claimed, and given back if the hold fails
+        customerIndex.acquireSeats(customerEmail, numSeats, maxSeatsPerCustomer);
+        List<Seat> claimedSeats = null;
         SeatHold seatHold;
-        if (numSeatsAvailable() < numSeats) {
-            throw new TicketServiceException(String.format("Cannot hold %d seats! %d seats available", numSeats, numSeatsAvailable()));
+        //Journaled before the hold is visible, so a relocation is never written ahead of it
+        long position;
+        try {
+            //The seats are already ON_HOLD and owned by this request once they are claimed
+            claimedSeats = claimNextAvailableSeats(numSeats);
+            seatHold = newSeatHold(claimedSeats, customerEmail);
+            position = journal.hold(seatHold);
+        } catch (RuntimeException e) {
+            if (claimedSeats != null) {
+                releaseSeats(claimedSeats);
+            }
+            customerIndex.releaseSeats(customerEmail, numSeats);
+            throw e;
+        }
+        holdCreated(seatHold);
+        journal.sync(position);
+        return seatHold;
+    }
+
+    /**
+     * Find and hold seats for many groups in one pass. The customer limits are checked for the whole batch before
+     * any seat is claimed, the seats of all groups are claimed with the sections locked once, and a single journal
+     * flush covers every hold, so the cost per seat drops as the batch grows
+     */
+    @Override
+    public List<HoldResult> findAndHoldSeats(List<HoldRequest> requests, boolean bestFit) {
+        notNull(requests, "Requests cannot be null");
+        List<HoldResult> results = new ArrayList<>(Collections.nCopies(requests.size(), null));
+        //Requests within their customer's limit, in the order they are placed
+        List<Integer> accepted = new ArrayList<>(requests.size());
+        for (int i : HoldRequest.placementOrder(requests, bestFit)) {
+            HoldRequest request = requests.get(i);
+            try {
+                customerIndex.acquireSeats(request.getCustomerEmail(), request.getNumSeats(), maxSeatsPerCustomer);
+                accepted.add(i);
+            } catch (TicketServiceException e) {
+                metrics.holdFailures.increment();
+                results.set(i, HoldResult.failed(request, e.getMessage()));
+            }
+        }
+        List<List<Seat>> claimedSeats = seatAllocator.claimAll(accepted.stream().mapToInt(i -> requests.get(i).getNumSeats()).toArray());
+        long position = 0;
+        for (int j = 0; j < accepted.size(); j++) {
+            HoldRequest request = requests.get(accepted.get(j));
+            List<Seat> seats = claimedSeats.get(j);
+            try {
+                if (seats == null) {
+                    throw new TicketServiceException(String.format("Cannot hold %d seats! %d seats available",
+                            request.getNumSeats(), availabilityIndex.count(ReservedStatus.UNRESERVED)));
+                }
+                SeatHold seatHold = newSeatHold(seats, request.getCustomerEmail());
+                position = Math.max(position, journal.hold(seatHold));
+                holdCreated(seatHold);
+                results.set(accepted.get(j), HoldResult.held(request, seatHold));
+            } catch (RuntimeException e) {
+                if (seats != null) {
+                    releaseSeats(seats);
+                }
+                customerIndex.releaseSeats(request.getCustomerEmail(), request.getNumSeats());
+                metrics.holdFailures.increment();
+                results.set(accepted.get(j), HoldResult.failed(request, e.getMessage()));
+            }
         }
-        List<Seat> nextAvailableSeats = getNextAvailableSeats(numSeats);
-        nextAvailableSeats.forEach(seat -> seat.setStatus(ReservedStatus.ON_HOLD));
-        //Stores an immutable list. The seats cannot be modified
-        seatHold = SeatHold.newSeatHold()
+        journal.sync(position);
+        return results;
+    }
+
+    /**
+     * @param claimedSeats seats claimed for the hold, the hold keeps an immutable copy of their offsets
+     */
+    private SeatHold newSeatHold(List<Seat> claimedSeats, String customerEmail) {
+        return SeatHold.newSeatHold()
+                .id(idGenerator.nextHoldId())
                 .customerEmail(customerEmail)
-                .holds(ImmutableList.copyOf(nextAvailableSeats)).build();
+                .holds(claimedSeats).build();
+    }
+
+    /**
+     * Make a journaled hold visible and schedule its expiry
+     */
+    private void holdCreated(SeatHold seatHold) {
+        customerIndex.holdCreated(seatHold);
         seatHoldMap.put(seatHold.getId(), seatHold);
-        return seatHold;
+        defragmenter.holdCreated(seatHold);
+        expiryWheel.schedule(seatHold, seatHold.getHeldAt().getTime() + TimeUnit.MINUTES.toMillis(holdExpiresInMins));
     }
 
     /**
@@ -93,170 +310,261 @@ public class DefaultTicketService implements TicketService {
      */
     @Override
     public String reserveSeats(int seatHoldId, String customerEmail) {
-        return reserveHeldSeats(seatHoldId, customerEmail, seatHoldMap, seatCache, reservationMap);
+        long start = System.nanoTime();
+        try {
+            return reserve(seatHoldId, customerEmail);
+        } finally {
+            TicketServiceMetrics.record(metrics.reserveTimer, start);
+        }
+    }
+
+    private String reserve(int seatHoldId, String customerEmail) {
+        while (true) {
+            CompletableFuture<Reservation> pending = new CompletableFuture<>();
+            CompletableFuture<Reservation> existing = reservedHolds.putIfAbsent(seatHoldId, pending);
+            if (existing == null) {
+                Reservation reservation = reserveHeldSeats(seatHoldId, customerEmail, pending);
+                reservationStore.store(reservation);
+                return reservation.getConfirmationCode();
+            }
+            //A duplicate or concurrent reserve of the same hold gets the reservation that was already made.
+            //If the other attempt failed, its entry is gone and this one tries again
+            Reservation reservation;
+            try {
+                reservation = existing.join();
+            } catch (CompletionException | CancellationException e) {
+                continue;
+            }
+            if (!reservation.getCustomerEmail().equalsIgnoreCase(customerEmail)) {
+                throw new TicketServiceException(String.format("Customer email: %s, not found", customerEmail));
+            }
+            return reservation.getConfirmationCode();
+        }
     }
 
     /**
-     * Reserve seat held by the customer
-     * Delegated to this method to facilitate unit testing
+     * Reserve seat held by the customer. Only the seats of the hold are visited
+     *
      * @param seatHoldId the seat hold identifier
      * @param customerEmail the email address of the customer holding the ticket
-     * @param seatHoldMap the map of seat holds
-     * @param seatCache seat cache containing the orignal list of seats
-     * @param reservationMap the map of reservations to add the reservation to
-     * @return
+     * @param pending completed with the reservation, or failed and unregistered when the hold cannot be reserved
+     * @return the reservation
      */
-    private String reserveHeldSeats(int seatHoldId, String customerEmail, Map<Integer, SeatHold> seatHoldMap, List<Seat> seatCache, Map<Integer, Reservation> reservationMap) {
-        //verify if seatHold Exists and then reserve
-        SeatHold seatHold = seatHoldMap.get(seatHoldId);
-        if (seatHold == null) {
-            throw new TicketServiceException(String.format("The seat hold id %d is not available", seatHoldId));
-        }
+    private Reservation reserveHeldSeats(int seatHoldId, String customerEmail, CompletableFuture<Reservation> pending) {
+        //The hold once it was taken out of the map, and whether its seats were reserved, to undo a failed reserve
+        SeatHold removedHold = null;
+        boolean seatsReserved = false;
+        try {
+            //verify if seatHold Exists and then reserve
+            SeatHold seatHold;
+            do {
+                seatHold = seatHoldMap.get(seatHoldId);
+                if (seatHold == null) {
+                    throw new TicketServiceException(String.format("The seat hold id %d is not available", seatHoldId));
+                }
 
-        if (!seatHold.getCustomerEmail().equalsIgnoreCase(customerEmail)) {
-            throw new TicketServiceException(String.format("Customer email: %s, not found", customerEmail));
-        }
+                if (!seatHold.getCustomerEmail().equalsIgnoreCase(customerEmail)) {
+                    throw new TicketServiceException(String.format("Customer email: %s, not found", customerEmail));
+                }
+                //Removing the hold decides the race with expiry, only one of them gets to update the seats.
+                //Retry when the defragmenter moved the hold in the meantime
+            } while (!seatHoldMap.remove(seatHoldId, seatHold));
+            removedHold = seatHold;
+            defragmenter.holdClosed(seatHold);
 
-        //update the status to reserved
-        //Extract all the hold seat copies and get the original seat list and
-        //update the reserved status
-        List<Seat> holds = seatHold.getHolds();
-        List<Seat> tmpReserves = seatCache.stream()
-                .filter(seat -> holds.stream().map(Seat::getId).anyMatch(id -> id.equals(seat.getId())))
-                .collect(Collectors.toList());
-        tmpReserves.stream().forEach(seat -> seat.setStatus(ReservedStatus.RESERVED));
-
-        Reservation reservation = Reservation.newReservation()
-                .reserves(ImmutableList.copyOf(tmpReserves)).customerEmail(seatHold.getCustomerEmail()).build();
-        seatHoldMap.remove(seatHoldId);
-        reservationMap.put(reservation.getId(), reservation);
-        return String.valueOf(reservation.getId());
+            long reservationId = idGenerator.nextReservationId();
+            //The hold owns its seats, so they move from ON_HOLD to RESERVED without looking at any other seat
+            seatAllocator.reserve(seatHold.getHolds());
+            seatsReserved = true;
+            Reservation reservation = Reservation.newReservation()
+                    .id(reservationId)
+                    .reserves(seatHold.getHolds()).customerEmail(seatHold.getCustomerEmail()).build();
+            journal.sync(journal.reserve(seatHold, reservation));
+            removedHold = null;
+            reservationMap.put(reservation.getId(), reservation);
+            customerIndex.holdReserved(seatHold, reservation);
+            metrics.holdsReserved.increment();
+            pending.complete(reservation);
+            return reservation;
+        } catch (RuntimeException e) {
+            if (removedHold != null) {
+                //Put the hold back with its seats on hold, so it is reserved again or expires and frees its seats
+                if (seatsReserved) {
+                    seatAllocator.unreserve(removedHold.getHolds());
+                }
+                seatHoldMap.put(seatHoldId, removedHold);
+                defragmenter.holdCreated(removedHold);
+            }
+            reservedHolds.remove(seatHoldId, pending);
+            pending.completeExceptionally(e);
+            throw e;
+        }
     }
 
     /**
-     * Expire seat holds
-     * TODO: Tie fixedDelay to expiry settings
+     * Expire seat holds and release their seats. Runs off the request path on the scheduler
      */
-    @Scheduled(fixedDelay = 60000)
+    @Scheduled(fixedDelayString = "${ts.expiryTickMillis:100}")
     void expireSeatHolds() {
-        ArrayList<Integer> expiredIdList = new ArrayList<>();
-        Date expiresIn = new Date(System.currentTimeMillis() - (60 * 1000 * holdExpiresInMins));
-        seatHoldMap.forEach((key, value) -> {
-            if (value.getHeldAt().before(expiresIn)) {
-                value.getHolds().forEach(seat -> {
-                    Seat heldSeat = seatIndexMap.get(seat.getId());
-                    if (heldSeat != null) {
-                        heldSeat.setStatus(ReservedStatus.RESERVED);
-                    } else {
-                        logger.warn(String.format("Held seat: %s,not found in seat cache", heldSeat));
-                    }
-                });
-                expiredIdList.add(key);
-            }
-        });
-        //remove expired holds from the map
-        expiredIdList.forEach(seatHoldMap::remove);
+        expireSeatHolds(System.currentTimeMillis());
     }
 
-    void compactSeatAssignments() {
-        if (numSeatsAvailable() > 0) {
-            //find the first unreserved seat
-            Optional<Seat> result =
-                    seatCache.stream().filter(
-                            seat -> seat.getStatus() == ReservedStatus.UNRESERVED).findFirst();
-            //find the index of that seat in the seat cache
-            result.ifPresent(firstUnreservedSeat -> {
-                int index = seatCache.indexOf(firstUnreservedSeat);
-                List<Seat> compactableList = seatCache.subList(index, seatCache.size() - 1);
-                List<Seat> fragmentedSeats = compactableList.stream().filter(seat -> seat.getStatus() != ReservedStatus.UNRESERVED).collect(Collectors.toList());
-                for (int i = 0; i < fragmentedSeats.size(); i++) {
-                    //update the status of the compatable list with the status of the fragmented list
-                    Seat seat = fragmentedSeats.get(i);
-                    compactableList.get(index + i).setStatus(seat.getStatus());
-                    seat.setStatus(ReservedStatus.UNRESERVED);
-                }
-            });
+    /**
+     * Expire the seat holds that are due at the given time
+     *
+     * @param nowMillis the current time
+     */
+    void expireSeatHolds(long nowMillis) {
+        long start = System.nanoTime();
+        expiryWheel.advance(nowMillis, this::expireSeatHold);
+        if (!recoveredReservedHolds.isEmpty() && nowMillis >= recoveredReservedHoldsExpireAt) {
+            recoveredReservedHolds.forEach(reservedHolds::remove);
+            recoveredReservedHolds.clear();
         }
+        TicketServiceMetrics.record(metrics.expiryTimer, start);
+    }
+
+    void expireSeatHold(SeatHold expired) {
+        //The defragmenter may have moved the hold to other seats since it was scheduled.
+        //Removing the hold decides the race with reserveSeats, a hold that was reserved is no longer in the map
+        SeatHold seatHold;
+        do {
+            seatHold = seatHoldMap.get(expired.getId());
+            if (seatHold == null) {
+                forgetReservedHold(expired.getId());
+                return;
+            }
+            if (!expired.isSameHold(seatHold)) {
+                return;
+            }
+        } while (!seatHoldMap.remove(seatHold.getId(), seatHold));
+        logger.debug(String.format("Seat hold %d expired", seatHold.getId()));
+        defragmenter.holdClosed(seatHold);
+        //Journaled before the seats are released, so a hold that claims them is written after it
+        journal.expire(seatHold);
+        releaseSeats(seatHold.getHolds());
+        customerIndex.holdExpired(seatHold);
+        metrics.holdsExpired.increment();
+        defragmenter.seatsReleased();
     }
 
     /**
-     * Get the next available seats. Before getting the available seats, the expired seats are cleaned up and the fragmented
-     * seats are compacted
-     *
-     * @param numberOfSeats
-     * @return
+     * Forget the reservation of a hold once its expiry window closed. A reservation still being made is forgotten
+     * when it completes
      */
-    List<Seat> getNextAvailableSeats(int numberOfSeats) {
-        List<Seat> availableSeats = new ArrayList<>();
-        //need to expire ticket holds to get accurate results
-        expireSeatHolds();
-        compactSeatAssignments();
-        Optional<Seat> firstSeat = seatCache.stream().filter(
-                seat -> seat.getStatus() == ReservedStatus.UNRESERVED).findFirst();
-        if (firstSeat.isPresent()) {
-            int fromIndex = seatCache.indexOf(firstSeat.get());
-            availableSeats = seatCache.subList(fromIndex, fromIndex + numberOfSeats);
+    private void forgetReservedHold(int seatHoldId) {
+        CompletableFuture<Reservation> reserved = reservedHolds.get(seatHoldId);
+        if (reserved != null) {
+            reserved.whenComplete((reservation, e) -> reservedHolds.remove(seatHoldId, reserved));
         }
-        return availableSeats;
     }
 
+    /**
+     * @param customerEmail the email address of the customer, in any case
+     * @return the open holds of the customer
+     */
+    public List<SeatHold> getSeatHolds(String customerEmail) {
+        notNull(customerEmail, "Customer Email cannot be null");
+        List<SeatHold> seatHolds = new ArrayList<>();
+        for (Integer seatHoldId : customerIndex.getSeatHoldIds(customerEmail)) {
+            //A hold that is being reserved or expired may already be gone from the map
+            SeatHold seatHold = seatHoldMap.get(seatHoldId);
+            if (seatHold != null) {
+                seatHolds.add(seatHold);
+            }
+        }
+        return seatHolds;
+    }
 
-    public String toString() {
-        String[][] data = new String[1][3];
-        TableModel model = new ArrayTableModel(data);
-        TableBuilder tableBuilder = new TableBuilder(model);
+    /**
+     * @param customerEmail the email address of the customer, in any case
+     * @return the reservations of the customer
+     */
+    public List<Reservation> getReservations(String customerEmail) {
+        notNull(customerEmail, "Customer Email cannot be null");
+        List<Reservation> reservations = new ArrayList<>();
+        for (Long reservationId : customerIndex.getReservationIds(customerEmail)) {
+            Reservation reservation = reservationMap.get(reservationId);
+            if (reservation != null) {
+                reservations.add(reservation);
+            }
+        }
+        return reservations;
+    }
 
-        data[0][0] = getSeatLayoutView();
-        tableBuilder.on(at(0, 0)).addAligner(SimpleHorizontalAligner.values()[0]);
-        tableBuilder.on(at(0, 0)).addAligner(SimpleVerticalAligner.values()[0]);
+    /**
+     * Pick up the seats that other processes sharing the seat store held, reserved or released. Runs off the request
+     * path on the scheduler, and does nothing unless the seat store is shared
+     */
+    @Scheduled(fixedDelayString = "${ts.seatStore.syncMillis:100}")
+    void syncSharedSeats() {
+        int changes = venue.syncSharedSeats();
+        if (changes > 0) {
+            logger.debug(String.format("Picked up %d seat changes of other processes", changes));
+        }
+    }
 
-        data[0][1] = getSeatHoldsView();
-        tableBuilder.on(at(0, 1)).addAligner(SimpleHorizontalAligner.values()[0]);
-        tableBuilder.on(at(0, 1)).addAligner(SimpleVerticalAligner.values()[0]);
+    /**
+     * Move split holds to adjacent seats freed by expired holds. Runs off the request path on the scheduler
+     */
+    @Scheduled(fixedDelayString = "${ts.defragIntervalMillis:1000}")
+    void defragmentSeatHolds() {
+        long start = System.nanoTime();
+        int relocated = defragmenter.defragment(defragMaxHoldsPerPass);
+        TicketServiceMetrics.record(metrics.defragmentTimer, start);
+        if (relocated > 0) {
+            logger.debug(String.format("Moved %d split seat holds to adjacent seats", relocated));
+        }
+    }
 
-        data[0][2] = getReservationView();
-        tableBuilder.on(at(0, 2)).addAligner(SimpleHorizontalAligner.values()[0]);
-        tableBuilder.on(at(0, 2)).addAligner(SimpleVerticalAligner.values()[0]);
+    /**
+     * Fold the journal into a snapshot so a restart does not replay it from the start. Runs off the request path
+     * on the scheduler and only reads the journal, holds and reservations carry on while it runs
+     */
+    @Scheduled(fixedDelayString = "${ts.journal.snapshotIntervalMillis:60000}")
+    void snapshotJournal() {
+        int events = journal.snapshot(venue.getSeatStore().size());
+        if (events > 0) {
+            logger.debug(String.format("Folded %d journal events into a snapshot", events));
+        }
+    }
 
-        return tableBuilder.addFullBorder(BorderStyle.fancy_light).build().render(120);
+    /**
+     * Claim the best available seats. The group is seated together in the row nearest the stage that has room
+     * for it, and only split over several runs when no row has enough adjacent free seats.
+     * <p>
+     * Each seat is claimed with a compare and set from UNRESERVED to ON_HOLD, so concurrent callers never
+     * get the same seat and no lock is needed. If not enough seats can be claimed, the seats claimed so far
+     * are released again.
+     *
+     * @param numberOfSeats the number of seats to claim
+     * @return the claimed seats, all ON_HOLD
+     */
+    List<Seat> claimNextAvailableSeats(int numberOfSeats) {
+        List<Seat> claimedSeats = seatAllocator.claim(numberOfSeats);
+        if (claimedSeats == null) {
+            throw new TicketServiceException(String.format("Cannot hold %d seats! %d seats available", numberOfSeats,
+                    availabilityIndex.count(ReservedStatus.UNRESERVED)));
+        }
+        return claimedSeats;
     }
 
-    private String getSeatHoldsView() {
-        return seatHoldMap.values().stream().map(Object::toString)
-                .collect(Collectors.joining("\n"));
+    /**
+     * Return seats on hold to the pool of available seats
+     *
+     * @param seats the seats to release
+     */
+    private void releaseSeats(List<Seat> seats) {
+        seatAllocator.release(seats);
     }
 
-    private String getReservationView() {
-        return reservationMap.values().stream().map(Object::toString)
-                .collect(Collectors.joining("\n"));
+
+    @Override
+    public String render(int page) {
+        return view.render(seatHoldMap.values(), reservationMap.values(), numSeatsAvailable(), page);
     }
 
-    private String getSeatLayoutView() {
-        StringBuilder stringBuilder = new StringBuilder();
-        //print stage, width 15
-        stringBuilder.append("||||||||||||________________||||||||||\n");
-
-        Arrays.stream(venue.getSeatLayout()).forEach(row -> {
-            //Print row id
-            stringBuilder.append(row[0].getRowName()).append(" ");
-            Arrays.stream(row).forEach(seat -> {
-                String symbol = "-";
-                switch (seat.getStatus()) {
-                    case ON_HOLD:
-                        symbol = "h";
-                        break;
-                    case UNRESERVED:
-                        symbol = "-";
-                        break;
-                    case RESERVED:
-                        symbol = "R";
-                        break;
-                }
-                stringBuilder.append(symbol);
-            });
-            stringBuilder.append(" ").append(row[0].getRowName()).append("\n");
-        });
-        stringBuilder.append("Number Of Seats Available: ").append(numSeatsAvailable());
-        return stringBuilder.toString();
+    public String toString() {
+        return render(1);
     }
 }
@@ -0,0 +1,341 @@
+package com.rentastage.ticketservice;
+
+import com.rentastage.ticketservice.model.*;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import static org.springframework.util.Assert.isTrue;
+import static org.springframework.util.Assert.notNull;
+
+/**
+ * Sells tickets for many events at once. Every event has its own venue and its own {@link DefaultTicketService}.
+ * <p>
+ * Events are spread over a fixed number of shards. A shard is one worker thread with a bounded queue, and every
+ * hold and reserve of an event runs on the worker of its shard. A new event goes to the shard with the fewest
+ * seats, so a hot on-sale only competes with the events on its own shard. When the queue of a shard is full,
+ * requests for its events are turned away rather than waiting. Seat counts are read without going through the
+ * shard.
+ * <p>
+ * Catalog events are kept in memory only, they are not journaled. Their reservations are stored with the event id,
+ * apart from the reservations of other events. The {@link TicketService} bean keeps serving the
+ * venue configured with ts.noOfRows and ts.noOfSeatsPerRow.
+ */
+@Component
+public class EventCatalog implements EventTicketService {
+    private static final org.slf4j.Logger logger = LoggerFactory.getLogger(EventCatalog.class);
+
+    //Heap estimates per seat of the venue and its ticket service, and per open hold or reservation, measured with
+    //SeatFootprint on a 200x500 venue with holds of 4 seats
+    static final long BYTES_PER_SEAT = 73;
+    static final long BYTES_PER_HOLD = 227;
+
+    private final Map<Integer, Event> events = new ConcurrentHashMap<>();
+
+    private final Shard[] shards;
+
+    private final AtomicInteger nextEventId = new AtomicInteger();
+
+    //Ids of holds and reservations, shared by all events so hold ids are unique across them
+    private final IdGenerator idGenerator;
+
+    private final ReservationStore reservationStore;
+
+    public EventCatalog(int shards, int queueCapacity) {
+        this(shards, queueCapacity, SnowflakeIdGenerator.LOCAL, ReservationStore.NONE);
+    }
+
+    @Autowired
+    EventCatalog(@Value("${ts.catalog.shards:4}") int shards,
+                 @Value("${ts.catalog.queueCapacity:4096}") int queueCapacity,
+                 IdGenerator idGenerator,
+                 ReservationStore reservationStore) {
+        isTrue(shards > 0, "Number of shards must be > 0");
+        isTrue(queueCapacity > 0, "Queue capacity must be > 0");
+        notNull(idGenerator, "Id generator cannot be null");
+        notNull(reservationStore, "Reservation store cannot be null");
+        this.idGenerator = idGenerator;
+        this.reservationStore = reservationStore;
+        this.shards = new Shard[shards];
+        for (int shard = 0; shard < shards; shard++) {
+            this.shards[shard] = new Shard(shard, queueCapacity);
+        }
+    }
+
+    /**
+     * Add an event with its own venue
+     *
+     * @param name name of the event
+     * @param noOfRows number of rows of the venue
+     * @param noOfSeatsPerRow number of seats in each row
+     * @return the event identifier
+     */
+    public int createEvent(String name, int noOfRows, int noOfSeatsPerRow) {
+        notNull(name, "Event name cannot be null");
+        Venue venue = new Venue(noOfRows, noOfSeatsPerRow);
+        int eventId = nextEventId.incrementAndGet();
+        DefaultTicketService ticketService = new DefaultTicketService(venue, idGenerator, Journal.NONE,
+                reservationStore.forEvent(eventId));
+        Shard shard;
+        //Placement is rare, picking the shard and adding the seats under one lock keeps the shards balanced
+        synchronized (shards) {
+            shard = Arrays.stream(shards).min(Comparator.comparingLong(candidate -> candidate.seats)).get();
+            shard.seats += venue.getSeatStore().size();
+        }
+        Event event = new Event(eventId, name, shard, venue, ticketService);
+        shard.events.add(event);
+        events.put(eventId, event);
+        logger.info(String.format("Event %d %s with %d seats placed on shard %d", eventId, name, venue.getSeatStore().size(), shard.id));
+        return eventId;
+    }
+
+    @Override
+    public int numSeatsAvailable(int eventId) {
+        return event(eventId).ticketService.numSeatsAvailable();
+    }
+
+    @Override
+    public SeatHold findAndHoldSeats(int eventId, int numSeats, String customerEmail) {
+        return await(findAndHoldSeatsAsync(eventId, numSeats, customerEmail));
+    }
+
+    @Override
+    public String reserveSeats(int eventId, int seatHoldId, String customerEmail) {
+        return await(reserveSeatsAsync(eventId, seatHoldId, customerEmail));
+    }
+
+    /**
+     * Queue a request to find and hold seats of an event on the shard of the event
+     *
+     * @return a future completed with the seat hold
+     */
+    public CompletableFuture<SeatHold> findAndHoldSeatsAsync(int eventId, int numSeats, String customerEmail) {
+        Event event = event(eventId);
+        return event.shard.submit(() -> event.ticketService.findAndHoldSeats(numSeats, customerEmail));
+    }
+
+    /**
+     * Queue a request to reserve seats of an event on the shard of the event
+     *
+     * @return a future completed with the reservation confirmation code
+     */
+    public CompletableFuture<String> reserveSeatsAsync(int eventId, int seatHoldId, String customerEmail) {
+        Event event = event(eventId);
+        return event.shard.submit(() -> event.ticketService.reserveSeats(seatHoldId, customerEmail));
+    }
+
+    /**
+     * @return the events in the order they were created, with their size and estimated heap use
+     */
+    public List<EventStats> getEvents() {
+        List<EventStats> stats = new ArrayList<>(events.size());
+        for (Event event : events.values()) {
+            stats.add(event.stats());
+        }
+        stats.sort(Comparator.comparingInt(EventStats::getEventId));
+        return stats;
+    }
+
+    /**
+     * Render the seats of an event the same way the shell shows the default venue
+     */
+    public String render(int eventId) {
+        return event(eventId).ticketService.toString();
+    }
+
+    /**
+     * Expire the holds of every event on its own shard. Runs off the request path on the scheduler
+     */
+    @Scheduled(fixedDelayString = "${ts.expiryTickMillis:100}")
+    void expireSeatHolds() {
+        long now = System.currentTimeMillis();
+        forEachEventOnShard(ticketService -> ticketService.expireSeatHolds(now));
+    }
+
+    /**
+     * Move split holds of every event to adjacent seats, on the event's shard
+     */
+    @Scheduled(fixedDelayString = "${ts.defragIntervalMillis:1000}")
+    void defragmentSeatHolds() {
+        forEachEventOnShard(DefaultTicketService::defragmentSeatHolds);
+    }
+
+    /**
+     * Stop the shard workers once the requests already queued were applied
+     */
+    @PreDestroy
+    public void shutdown() {
+        for (Shard shard : shards) {
+            shard.worker.shutdown();
+        }
+        for (Shard shard : shards) {
+            try {
+                shard.worker.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Run a task for every event on the shard of the event. A shard whose queue is full skips this round, the
+     * task runs again on the next tick
+     */
+    private void forEachEventOnShard(Consumer<DefaultTicketService> task) {
+        for (Shard shard : shards) {
+            try {
+                shard.worker.execute(() -> shard.events.forEach(event -> task.accept(event.ticketService)));
+            } catch (RejectedExecutionException e) {
+                logger.debug(String.format("Shard %d is busy, skipped a background pass", shard.id));
+            }
+        }
+    }
+
+    private Event event(int eventId) {
+        Event event = events.get(eventId);
+        if (event == null) {
+            throw new TicketServiceException(String.format("The event id %d is not available", eventId));
+        }
+        return event;
+    }
+
+    private static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * One worker thread and the events it serves
+     */
+    private static final class Shard {
+        private final int id;
+        private final ThreadPoolExecutor worker;
+        private final List<Event> events = new CopyOnWriteArrayList<>();
+        //Seats of the events on this shard. Guarded by the shards array
+        private long seats;
+
+        private Shard(int id, int queueCapacity) {
+            this.id = id;
+            this.worker = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueCapacity),
+                    runnable -> {
+                        Thread thread = new Thread(runnable, "event-shard-" + id);
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+        }
+
+        private <T> CompletableFuture<T> submit(Supplier<T> action) {
+            try {
+                return CompletableFuture.supplyAsync(action, worker);
+            } catch (RejectedExecutionException e) {
+                throw new TicketServiceException(String.format("Too many requests for shard %d, try again", id));
+            }
+        }
+    }
+
+    private static final class Event {
+        private final int id;
+        private final String name;
+        private final Shard shard;
+        private final Venue venue;
+        private final DefaultTicketService ticketService;
+
+        private Event(int id, String name, Shard shard, Venue venue, DefaultTicketService ticketService) {
+            this.id = id;
+            this.name = name;
+            this.shard = shard;
+            this.venue = venue;
+            this.ticketService = ticketService;
+        }
+
+        private EventStats stats() {
+            int seats = venue.getSeatStore().size();
+            int openHolds = ticketService.seatHoldMap.size();
+            int reservations = ticketService.reservationMap.size();
+            return new EventStats(id, name, shard.id, seats, ticketService.numSeatsAvailable(), openHolds, reservations,
+                    seats * BYTES_PER_SEAT + (openHolds + reservations) * BYTES_PER_HOLD);
+        }
+    }
+
+    /**
+     * Size of an event at the time it was read
+     */
+    public static final class EventStats {
+        private final int eventId;
+        private final String name;
+        private final int shard;
+        private final int seats;
+        private final int seatsAvailable;
+        private final int openHolds;
+        private final int reservations;
+        private final long estimatedBytes;
+
+        EventStats(int eventId, String name, int shard, int seats, int seatsAvailable, int openHolds, int reservations,
+                   long estimatedBytes) {
+            this.eventId = eventId;
+            this.name = name;
+            this.shard = shard;
+            this.seats = seats;
+            this.seatsAvailable = seatsAvailable;
+            this.openHolds = openHolds;
+            this.reservations = reservations;
+            this.estimatedBytes = estimatedBytes;
+        }
+
+        public int getEventId() {
+            return eventId;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getShard() {
+            return shard;
+        }
+
+        public int getSeats() {
+            return seats;
+        }
+
+        public int getSeatsAvailable() {
+            return seatsAvailable;
+        }
+
+        public int getOpenHolds() {
+            return openHolds;
+        }
+
+        public int getReservations() {
+            return reservations;
+        }
+
+        /**
+         * @return estimated heap used by the venue, its ticket service, open holds and reservations
+         */
+        public long getEstimatedBytes() {
+            return estimatedBytes;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d %s: %d/%d seats available, %d holds, %d reservations, shard %d, ~%d KB",
+                    eventId, name, seatsAvailable, seats, openHolds, reservations, shard, estimatedBytes / 1024);
+        }
+    }
+}
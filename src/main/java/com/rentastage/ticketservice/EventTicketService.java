@@ -0,0 +1,36 @@
+package com.rentastage.ticketservice;
+
+import com.rentastage.ticketservice.model.SeatHold;
+
+/**
+ * The {@link TicketService} operations for one of many events, each with its own venue
+ */
+public interface EventTicketService {
+  /**
+   * The number of seats in the venue of the event that are neither held nor reserved
+   *
+   * @param eventId the event identifier
+   * @return the number of tickets available for the event
+   */
+  int numSeatsAvailable(int eventId);
+
+  /**
+   * Find and hold the best available seats of an event for a customer
+   *
+   * @param eventId the event identifier
+   * @param numSeats the number of seats to find and hold
+   * @param customerEmail unique identifier for the customer
+   * @return a SeatHold object identifying the specific seats and related information
+   */
+  SeatHold findAndHoldSeats(int eventId, int numSeats, String customerEmail);
+
+  /**
+   * Commit seats of an event held for a specific customer
+   *
+   * @param eventId the event identifier
+   * @param seatHoldId the seat hold identifier
+   * @param customerEmail the email address of the customer to which the seat hold is assigned
+   * @return a reservation confirmation code
+   */
+  String reserveSeats(int eventId, int seatHoldId, String customerEmail);
+}
@@ -0,0 +1,123 @@
+package com.rentastage.ticketservice;
+
+import com.rentastage.ticketservice.model.FreeRunIndex;
+import com.rentastage.ticketservice.model.Seat;
+import com.rentastage.ticketservice.model.SeatHold;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Brings back together groups that had to be split over several runs of seats.
+ * <p>
+ * Open holds that were split are tracked as they are created. When seats are released, a bounded background
+ * pass tries to move each split hold to a run of adjacent seats. Only open holds are ever moved, reserved seats
+ * stay where they are. A hold keeps its id when it is moved, and reserving it reserves the new seats.
+ * <p>
+ * The fragmentation score is the number of open holds that are split. How fragmented the free seats are is
+ * given by {@link FreeRunIndex#freeRunCount()}.
+ */
+class HoldDefragmenter {
+
+    private final Map<Integer, SeatHold> seatHoldMap;
+
+    private final SeatAllocator seatAllocator;
+
+    //Ids of open holds whose seats are not adjacent
+    private final Set<Integer> splitHoldIds = ConcurrentHashMap.newKeySet();
+
+    //Set when seats are released or a split hold is created, a pass is only worth running after that
+    private final AtomicBoolean changed = new AtomicBoolean();
+
+    //Relocations are journaled so a restart puts holds on the seats they were moved to
+    private final Journal journal;
+
+    HoldDefragmenter(Map<Integer, SeatHold> seatHoldMap, SeatAllocator seatAllocator) {
+        this(seatHoldMap, seatAllocator, Journal.NONE);
+    }
+
+    HoldDefragmenter(Map<Integer, SeatHold> seatHoldMap, SeatAllocator seatAllocator, Journal journal) {
+        this.seatHoldMap = seatHoldMap;
+        this.seatAllocator = seatAllocator;
+        this.journal = journal;
+    }
+
+    /**
+     * @return the number of open holds whose seats are not adjacent
+     */
+    int getFragmentationScore() {
+        return splitHoldIds.size();
+    }
+
+    void holdCreated(SeatHold seatHold) {
+        if (!seatAllocator.isAdjacent(seatHold.getHolds())) {
+            splitHoldIds.add(seatHold.getId());
+            changed.set(true);
+        }
+    }
+
+    void holdClosed(SeatHold seatHold) {
+        splitHoldIds.remove(seatHold.getId());
+    }
+
+    void seatsReleased() {
+        if (!splitHoldIds.isEmpty()) {
+            changed.set(true);
+        }
+    }
+
+    /**
+     * Move split holds to adjacent seats
+     *
+     * @param maxHolds the maximum number of holds to look at in this pass
+     * @return the number of holds that were moved
+     */
+    int defragment(int maxHolds) {
+        if (!changed.getAndSet(false)) {
+            return 0;
+        }
+        int relocated = 0;
+        int visited = 0;
+        Iterator<Integer> iterator = splitHoldIds.iterator();
+        for (; iterator.hasNext() && visited < maxHolds; visited++) {
+            SeatHold seatHold = seatHoldMap.get(iterator.next());
+            if (seatHold == null) {
+                iterator.remove();
+            } else if (relocate(seatHold)) {
+                iterator.remove();
+                relocated++;
+            }
+        }
+        if (iterator.hasNext()) {
+            //continue in the next pass
+            changed.set(true);
+        }
+        return relocated;
+    }
+
+    private boolean relocate(SeatHold seatHold) {
+        //A version of the seat state shows the hold on either its old or its new seats
+        return seatAllocator.write(() -> relocateSeats(seatHold));
+    }
+
+    private boolean relocateSeats(SeatHold seatHold) {
+        List<Seat> run = seatAllocator.claimAdjacent(seatHold.getHolds().size());
+        if (run == null) {
+            return false;
+        }
+        //Replacing the hold decides the race with reserve and expiry
+        SeatHold relocated = seatHold.relocate(run);
+        if (seatHoldMap.replace(seatHold.getId(), seatHold, relocated)) {
+            //Journaled before the old seats are released, so a hold that claims them is written after it
+            journal.relocate(relocated);
+            seatAllocator.release(seatHold.getHolds());
+            return true;
+        }
+        seatAllocator.release(run);
+        return false;
+    }
+}
@@ -0,0 +1,109 @@
+package com.rentastage.ticketservice;
+
+import com.rentastage.ticketservice.model.SeatHold;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+
+import static org.springframework.util.Assert.isTrue;
+
+/**
+ * Hashed timer wheel that tracks when seat holds expire.
+ * <p>
+ * Any thread can schedule a hold. Scheduled holds are queued and only placed into the wheel by the thread
+ * advancing it, so the buckets need no synchronization. Advancing visits one bucket per elapsed tick and only
+ * touches the holds in those buckets, so the cost is proportional to the number of expired holds rather than
+ * the number of active holds. A hold due more than one rotation ahead stays in its bucket and is re-placed
+ * when the bucket comes round. The wheel should span the hold expiry time so that never happens in practice.
+ * <p>
+ * Holds are never removed from the wheel when they are reserved. The expiry callback has to check that the
+ * hold is still active.
+ */
+class HoldExpiryWheel {
+
+    private final long tickMillis;
+
+    private final int mask;
+
+    private final Queue<Entry>[] buckets;
+
+    private final Queue<Entry> pending = new ConcurrentLinkedQueue<>();
+
+    //The last tick that has been processed. Only used by the advancing thread
+    private long processedTick = -1;
+
+    /**
+     * @param tickMillis the resolution of the wheel
+     * @param wheelSize the number of buckets, a power of 2
+     */
+    @SuppressWarnings("unchecked")
+    HoldExpiryWheel(long tickMillis, int wheelSize) {
+        isTrue(tickMillis > 0, "Tick must be > 0");
+        isTrue(wheelSize > 0 && Integer.bitCount(wheelSize) == 1, "Wheel size must be a power of 2");
+        this.tickMillis = tickMillis;
+        this.mask = wheelSize - 1;
+        this.buckets = new Queue[wheelSize];
+        for (int i = 0; i < wheelSize; i++) {
+            buckets[i] = new ArrayDeque<>();
+        }
+    }
+
+    /**
+     * Schedule a hold to expire. Safe to call from any thread
+     *
+     * @param seatHold the hold
+     * @param deadlineMillis the time at which the hold expires
+     */
+    void schedule(SeatHold seatHold, long deadlineMillis) {
+        pending.add(new Entry(seatHold, deadlineMillis));
+    }
+
+    /**
+     * Expire all holds whose deadline is at or before the given time. Must only be called by one thread at a time
+     *
+     * @param nowMillis the current time
+     * @param onExpired called for every expired hold
+     */
+    synchronized void advance(long nowMillis, Consumer<SeatHold> onExpired) {
+        long nowTick = nowMillis / tickMillis;
+        if (processedTick < 0) {
+            processedTick = nowTick - 1;
+        }
+        Entry entry;
+        while ((entry = pending.poll()) != null) {
+            place(entry);
+        }
+        //after a full rotation every bucket has been visited
+        long fromTick = Math.max(processedTick + 1, nowTick - mask);
+        for (long tick = fromTick; tick <= nowTick; tick++) {
+            Queue<Entry> bucket = buckets[(int) (tick & mask)];
+            for (int i = bucket.size(); i > 0; i--) {
+                entry = bucket.poll();
+                if (entry.deadlineMillis <= nowMillis) {
+                    onExpired.accept(entry.seatHold);
+                } else {
+                    bucket.add(entry);
+                }
+            }
+        }
+        processedTick = Math.max(processedTick, nowTick);
+    }
+
+    private void place(Entry entry) {
+        //round the deadline up so a bucket only holds entries that are due once its tick has passed
+        long tick = Math.max((entry.deadlineMillis + tickMillis - 1) / tickMillis, processedTick + 1);
+        buckets[(int) (tick & mask)].add(entry);
+    }
+
+    private static final class Entry {
+        private final SeatHold seatHold;
+        private final long deadlineMillis;
+
+        private Entry(SeatHold seatHold, long deadlineMillis) {
+            this.seatHold = seatHold;
+            this.deadlineMillis = deadlineMillis;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.rentastage.ticketservice;
+
+import com.rentastage.ticketservice.model.Reservation;
+import com.rentastage.ticketservice.model.SeatHold;
+
+/**
+ * Write ahead journal of the changes to seat holds and reservations, replayed on startup to rebuild them.
+ * <p>
+ * Every event carries the seats it applies to, so replay does not depend on the order in which a relocation and
+ * the reserve or expiry of the same hold were written. Events are appended by the thread that made the change,
+ * after it won the hold and before it releases any seats, so seats are never claimed again ahead of the event
+ * that freed them.
+ * <p>
+ * Append returns the position of the event. {@link #sync(long)} waits until that position is durable, when the
+ * journal is configured to wait for it. {@link #snapshot(int)} folds the journal into a {@link SeatSnapshot}, so
+ * startup only replays the events written after it. The default journal does nothing.
+ */
+interface Journal extends AutoCloseable {
+
+    Journal NONE = new Journal() {
+    };
+
+    default long hold(SeatHold seatHold) {
+        return 0;
+    }
+
+    default long relocate(SeatHold seatHold) {
+        return 0;
+    }
+
+    default long reserve(SeatHold seatHold, Reservation reservation) {
+        return 0;
+    }
+
+    default long expire(SeatHold seatHold) {
+        return 0;
+    }
+
+    /**
+     * Wait until the journal is durable up to the given position, if the fsync policy asks for it
+     *
+     * @param position position returned by an append
+     */
+    default void sync(long position) {
+    }
+
+    /**
+     * Replay every event in the journal. Must be called before anything is appended
+     *
+     * @param listener receives the events
+     */
+    default void replay(JournalListener listener) {
+    }
+
+    /**
+     * Load the latest snapshot and replay the events written after it. Must be called before anything is appended
+     *
+     * @param recovery receives the snapshot and the events
+     */
+    default void recover(JournalRecovery recovery) {
+        replay(recovery);
+    }
+
+    /**
+     * Fold the events written since the last snapshot into a new snapshot and drop the segments it covers. Runs
+     * alongside appends, it only reads what was appended before it started
+     *
+     * @param seats number of seats in the venue
+     * @return the number of events folded into the snapshot
+     */
+    default int snapshot(int seats) {
+        return 0;
+    }
+
+    @Override
+    default void close() {
+    }
+}
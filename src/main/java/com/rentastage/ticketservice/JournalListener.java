@@ -0,0 +1,16 @@
+package com.rentastage.ticketservice;
+
+/**
+ * Receives the events of a {@link Journal} in the order they were written when the journal is replayed.
+ * Seats are given as offsets into the venue's seat store
+ */
+interface JournalListener {
+
+    void onHold(int seatHoldId, long heldAtMillis, String customerEmail, int[] offsets);
+
+    void onRelocate(int seatHoldId, int[] offsets);
+
+    void onReserve(int seatHoldId, long reservationId, long reservedAtMillis, String customerEmail, int[] offsets);
+
+    void onExpire(int seatHoldId, int[] offsets);
+}
@@ -0,0 +1,168 @@
+package com.rentastage.ticketservice;
+
+import com.rentastage.ticketservice.model.*;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Rebuilds seat holds and reservations from the events of a journal, optionally starting from a {@link SeatSnapshot}.
+ * <p>
+ * Seat status is tracked in an array while the events are replayed and only the final status is applied to the
+ * venue's seat store, so the indexes of the venue see one change per seat rather than one per event. The state is
+ * not tied to a venue until it is applied, so it can also be folded in the background to write a snapshot.
+ * <p>
+ * A hold that was relocated and then reserved or expired may have its relocation event written after the event that
+ * closed it, so closing events release the seats the hold had and then apply the seats they carry themselves, and
+ * relocations of holds that are already closed are ignored.
+ */
+class JournalRecovery implements JournalListener {
+    private static final ReservedStatus[] STATUSES = ReservedStatus.values();
+
+    //Status of every seat by offset, as of the events replayed so far. UNRESERVED is 0
+    final byte[] statuses;
+
+    //Holds that are still open, in the order they were created
+    final Map<Integer, RecoveredHold> openHolds = new LinkedHashMap<>();
+
+    final List<RecoveredReservation> reservations = new ArrayList<>();
+
+    private int events;
+
+    /**
+     * @param size the number of seats in the venue, all UNRESERVED to begin with
+     */
+    JournalRecovery(int size) {
+        this.statuses = new byte[size];
+    }
+
+    @Override
+    public void onHold(int seatHoldId, long heldAtMillis, String customerEmail, int[] offsets) {
+        events++;
+        openHolds.put(seatHoldId, new RecoveredHold(seatHoldId, heldAtMillis, customerEmail, offsets));
+        setStatus(offsets, ReservedStatus.ON_HOLD);
+    }
+
+    @Override
+    public void onRelocate(int seatHoldId, int[] offsets) {
+        events++;
+        RecoveredHold openHold = openHolds.get(seatHoldId);
+        if (openHold != null) {
+            setStatus(openHold.offsets, ReservedStatus.UNRESERVED);
+            setStatus(offsets, ReservedStatus.ON_HOLD);
+            openHold.offsets = offsets;
+        }
+    }
+
+    @Override
+    public void onReserve(int seatHoldId, long reservationId, long reservedAtMillis, String customerEmail, int[] offsets) {
+        events++;
+        close(seatHoldId);
+        setStatus(offsets, ReservedStatus.RESERVED);
+        reservations.add(new RecoveredReservation(seatHoldId, reservationId, reservedAtMillis, customerEmail, offsets));
+    }
+
+    @Override
+    public void onExpire(int seatHoldId, int[] offsets) {
+        events++;
+        close(seatHoldId);
+        setStatus(offsets, ReservedStatus.UNRESERVED);
+    }
+
+    int getEvents() {
+        return events;
+    }
+
+    /**
+     * Apply the recovered seat status to the venue. Must be called once, after the journal was replayed
+     */
+    void apply(SeatStore seatStore) {
+        for (int offset = 0; offset < statuses.length; offset++) {
+            seatStore.getAndSetStatus(offset, STATUSES[statuses[offset]]);
+        }
+    }
+
+    /**
+     * @return the holds that were still open, with their original id and hold time
+     */
+    List<SeatHold> getOpenHolds(SeatStore seatStore) {
+        List<SeatHold> seatHolds = new ArrayList<>(openHolds.size());
+        for (RecoveredHold openHold : openHolds.values()) {
+            seatHolds.add(SeatHold.newSeatHold()
+                    .id(openHold.seatHoldId)
+                    .heldAt(new Date(openHold.heldAtMillis))
+                    .holds(seats(seatStore, openHold.offsets))
+                    .customerEmail(openHold.customerEmail).build());
+        }
+        return seatHolds;
+    }
+
+    /**
+     * @return the reservations by the id of the hold they were made from
+     */
+    Map<Integer, Reservation> getReservations(SeatStore seatStore) {
+        Map<Integer, Reservation> reservationsByHold = new LinkedHashMap<>();
+        for (RecoveredReservation reservation : reservations) {
+            reservationsByHold.put(reservation.seatHoldId, Reservation.newReservation()
+                    .id(reservation.reservationId)
+                    .reservedAt(new Date(reservation.reservedAtMillis))
+                    .reserves(seats(seatStore, reservation.offsets))
+                    .customerEmail(reservation.customerEmail).build());
+        }
+        return reservationsByHold;
+    }
+
+    private void close(int seatHoldId) {
+        RecoveredHold openHold = openHolds.remove(seatHoldId);
+        if (openHold != null) {
+            setStatus(openHold.offsets, ReservedStatus.UNRESERVED);
+        }
+    }
+
+    private void setStatus(int[] offsets, ReservedStatus status) {
+        for (int offset : offsets) {
+            statuses[offset] = (byte) status.ordinal();
+        }
+    }
+
+    private static List<Seat> seats(SeatStore seatStore, int[] offsets) {
+        List<Seat> seats = new ArrayList<>(offsets.length);
+        for (int offset : offsets) {
+            seats.add(seatStore.seat(offset));
+        }
+        return seats;
+    }
+
+    static final class RecoveredHold {
+        final int seatHoldId;
+        final long heldAtMillis;
+        final String customerEmail;
+        int[] offsets;
+
+        RecoveredHold(int seatHoldId, long heldAtMillis, String customerEmail, int[] offsets) {
+            this.seatHoldId = seatHoldId;
+            this.heldAtMillis = heldAtMillis;
+            this.customerEmail = customerEmail;
+            this.offsets = offsets;
+        }
+    }
+
+    static final class RecoveredReservation {
+        final int seatHoldId;
+        final long reservationId;
+        final long reservedAtMillis;
+        final String customerEmail;
+        final int[] offsets;
+
+        RecoveredReservation(int seatHoldId, long reservationId, long reservedAtMillis, String customerEmail, int[] offsets) {
+            this.seatHoldId = seatHoldId;
+            this.reservationId = reservationId;
+            this.reservedAtMillis = reservedAtMillis;
+            this.customerEmail = customerEmail;
+            this.offsets = offsets;
+        }
+    }
+}
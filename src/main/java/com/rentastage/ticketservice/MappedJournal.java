@@ -0,0 +1,464 @@
+package com.rentastage.ticketservice;
+
+import com.rentastage.ticketservice.model.Reservation;
+import com.rentastage.ticketservice.model.Seat;
+import com.rentastage.ticketservice.model.SeatHold;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import static org.springframework.util.Assert.isTrue;
+import static org.springframework.util.Assert.notNull;
+
+/**
+ * Journal kept in memory mapped, append only segment files in a directory.
+ * <p>
+ * A record is its length, a CRC32 of its payload and the payload. A zero length marks the end of a segment.
+ * Events are encoded outside the lock into a buffer of the appending thread, then copied into the mapped segment
+ * under a short lock. Writes to the mapping survive a crash of the process. The fsync policy decides how they are
+ * made to survive a crash of the machine:
+ * <ul>
+ * <li>NONE leaves flushing to the operating system</li>
+ * <li>INTERVAL flushes from a background thread every flush interval, so at most one interval of events is lost</li>
+ * <li>SYNC makes {@link #sync(long)} wait for a flush. Callers that arrive while a flush is running are covered by
+ * the next one, so one flush commits a whole group of events</li>
+ * </ul>
+ * On open the segments are scanned up to the first record that is missing or torn. Anything after it is dropped
+ * and appends continue from there.
+ * <p>
+ * A {@link SeatSnapshot} kept next to the segments records the state as of a journal position. Snapshots are
+ * folded from the previous snapshot and the segments, never from the live seat state, so taking one does not
+ * pause appends. Segments that end before the snapshot position are deleted once the snapshot is on disk.
+ */
+class MappedJournal implements Journal {
+
+    enum FsyncPolicy {NONE, INTERVAL, SYNC}
+
+    private static final org.slf4j.Logger logger = LoggerFactory.getLogger(MappedJournal.class);
+
+    private static final Pattern SEGMENT_NAME = Pattern.compile("journal-(\\d{8})\\.log");
+
+    private static final String SEGMENT_TEMPLATE = "journal-%08d.log";
+
+    private static final String SNAPSHOT_NAME = "snapshot.bin";
+
+    //Record length and checksum
+    private static final int HEADER_BYTES = 8;
+
+    private static final byte HOLD = 1;
+    private static final byte RELOCATE = 2;
+    private static final byte RESERVE = 3;
+    private static final byte EXPIRE = 4;
+
+    private static final ThreadLocal<ByteBuffer> BUFFERS = ThreadLocal.withInitial(() -> ByteBuffer.allocate(1024));
+
+    private static final ThreadLocal<CRC32> CHECKSUMS = ThreadLocal.withInitial(CRC32::new);
+
+    private final Path directory;
+
+    private final int segmentBytes;
+
+    private final FsyncPolicy fsyncPolicy;
+
+    //The segment being appended to and its number. Guarded by this
+    private int segmentNo;
+    private MappedByteBuffer segment;
+
+    //Held while flushing, so callers waiting for the same flush queue up behind it
+    private final Object flushLock = new Object();
+
+    private volatile long flushedPosition;
+
+    private final ScheduledExecutorService flusher;
+
+    //Held while a snapshot is taken, so two snapshots never replace each other's file
+    private final Object snapshotLock = new Object();
+
+    /**
+     * Open the journal in a directory, creating it if needed
+     *
+     * @param directory directory holding the segment files
+     * @param segmentBytes size of a new segment file
+     * @param fsyncPolicy when appended events are flushed to disk
+     * @param flushIntervalMillis how often events are flushed with the INTERVAL policy
+     */
+    MappedJournal(Path directory, int segmentBytes, FsyncPolicy fsyncPolicy, long flushIntervalMillis) {
+        notNull(directory, "Journal directory cannot be null");
+        notNull(fsyncPolicy, "Fsync policy cannot be null");
+        isTrue(segmentBytes > HEADER_BYTES, "Segment size is too small");
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.fsyncPolicy = fsyncPolicy;
+        try {
+            Files.createDirectories(directory);
+            openTail();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open journal in " + directory, e);
+        }
+        if (fsyncPolicy == FsyncPolicy.INTERVAL) {
+            isTrue(flushIntervalMillis > 0, "Flush interval must be > 0");
+            flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "journal-flusher");
+                thread.setDaemon(true);
+                return thread;
+            });
+            flusher.scheduleWithFixedDelay(this::flush, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+        } else {
+            flusher = null;
+        }
+    }
+
+    @Override
+    public long hold(SeatHold seatHold) {
+        byte[] email = seatHold.getCustomerEmail().getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = buffer(1 + 4 + 8 + 2 + email.length + 4 + 4 * seatHold.getHolds().size());
+        buffer.put(HOLD).putInt(seatHold.getId()).putLong(seatHold.getHeldAt().getTime());
+        putString(buffer, email);
+        putOffsets(buffer, seatHold.getHolds());
+        return append(buffer);
+    }
+
+    @Override
+    public long relocate(SeatHold seatHold) {
+        ByteBuffer buffer = buffer(1 + 4 + 4 + 4 * seatHold.getHolds().size());
+        buffer.put(RELOCATE).putInt(seatHold.getId());
+        putOffsets(buffer, seatHold.getHolds());
+        return append(buffer);
+    }
+
+    @Override
+    public long reserve(SeatHold seatHold, Reservation reservation) {
+        byte[] email = reservation.getCustomerEmail().getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = buffer(1 + 4 + 8 + 8 + 2 + email.length + 4 + 4 * reservation.getReserves().size());
+        buffer.put(RESERVE).putInt(seatHold.getId()).putLong(reservation.getId()).putLong(reservation.getReservedAt().getTime());
+        putString(buffer, email);
+        putOffsets(buffer, reservation.getReserves());
+        return append(buffer);
+    }
+
+    @Override
+    public long expire(SeatHold seatHold) {
+        ByteBuffer buffer = buffer(1 + 4 + 4 + 4 * seatHold.getHolds().size());
+        buffer.put(EXPIRE).putInt(seatHold.getId());
+        putOffsets(buffer, seatHold.getHolds());
+        return append(buffer);
+    }
+
+    @Override
+    public void sync(long position) {
+        if (fsyncPolicy != FsyncPolicy.SYNC || flushedPosition >= position) {
+            return;
+        }
+        synchronized (flushLock) {
+            //A flush that ran while this caller waited for the lock may already cover it
+            if (flushedPosition < position) {
+                flushNow();
+            }
+        }
+    }
+
+    /**
+     * Flush everything appended so far
+     */
+    void flush() {
+        synchronized (flushLock) {
+            flushNow();
+        }
+    }
+
+    @Override
+    public void replay(JournalListener listener) {
+        replay(0, Long.MAX_VALUE, listener);
+    }
+
+    @Override
+    public void recover(JournalRecovery recovery) {
+        replay(SeatSnapshot.read(directory.resolve(SNAPSHOT_NAME), recovery), Long.MAX_VALUE, recovery);
+    }
+
+    @Override
+    public int snapshot(int seats) {
+        synchronized (snapshotLock) {
+            Path file = directory.resolve(SNAPSHOT_NAME);
+            JournalRecovery recovery = new JournalRecovery(seats);
+            long from = SeatSnapshot.read(file, recovery);
+            long to;
+            synchronized (this) {
+                to = position();
+            }
+            replay(from, to, recovery);
+            if (recovery.getEvents() == 0) {
+                return 0;
+            }
+            //The journal must not lose events the snapshot already covers, or appends after a crash would
+            //continue from a position before the snapshot and be skipped on the next recovery
+            flush();
+            SeatSnapshot.write(file, to, recovery);
+            try {
+                for (Path path : segments()) {
+                    if (segmentNumber(path) < (int) (to >>> 32)) {
+                        Files.delete(path);
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot delete journal segments in " + directory, e);
+            }
+            return recovery.getEvents();
+        }
+    }
+
+    /**
+     * Replay the events between two positions
+     *
+     * @param from position of the first event
+     * @param to position after the last event
+     * @param listener receives the events
+     */
+    private void replay(long from, long to, JournalListener listener) {
+        try {
+            for (Path path : segments()) {
+                int number = segmentNumber(path);
+                if (number < (int) (from >>> 32)) {
+                    continue;
+                }
+                if (number > (int) (to >>> 32)) {
+                    break;
+                }
+                ByteBuffer records = map(path, FileChannel.MapMode.READ_ONLY, Files.size(path));
+                int position = number == (int) (from >>> 32) ? (int) from : 0;
+                long end = number == (int) (to >>> 32) ? to & 0xFFFFFFFFL : records.limit();
+                int length;
+                while (position < end && (length = validRecordLength(records, position)) > 0) {
+                    ByteBuffer record = records.duplicate();
+                    record.limit(position + HEADER_BYTES + length).position(position + HEADER_BYTES);
+                    dispatch(record, listener);
+                    position += HEADER_BYTES + length;
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot replay journal in " + directory, e);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (flusher != null) {
+            flusher.shutdownNow();
+        }
+        flush();
+    }
+
+    private void flushNow() {
+        long target;
+        MappedByteBuffer current;
+        synchronized (this) {
+            target = position();
+            current = segment;
+        }
+        //Older segments were flushed when they were rolled over
+        current.force();
+        flushedPosition = target;
+    }
+
+    private long append(ByteBuffer payload) {
+        payload.flip();
+        CRC32 checksum = CHECKSUMS.get();
+        checksum.reset();
+        checksum.update(payload.duplicate());
+        int length = payload.remaining();
+        isTrue(HEADER_BYTES + length <= segmentBytes, "Journal event does not fit in a segment");
+        synchronized (this) {
+            if (segment.remaining() < HEADER_BYTES + length) {
+                roll();
+            }
+            segment.putInt(length).putInt((int) checksum.getValue()).put(payload);
+            return position();
+        }
+    }
+
+    /**
+     * @return position of the end of the journal, increases with every append
+     */
+    private long position() {
+        return ((long) segmentNo << 32) | segment.position();
+    }
+
+    private void roll() {
+        if (fsyncPolicy != FsyncPolicy.NONE) {
+            segment.force();
+        }
+        try {
+            openSegment(segmentNo + 1, 0);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot create journal segment " + (segmentNo + 1), e);
+        }
+    }
+
+    /**
+     * Find the end of the last valid record and continue from there
+     */
+    private void openTail() throws IOException {
+        List<Path> segments = segments();
+        if (segments.isEmpty()) {
+            openSegment(1, 0);
+            return;
+        }
+        for (int i = 0; i < segments.size(); i++) {
+            Path path = segments.get(i);
+            ByteBuffer records = map(path, FileChannel.MapMode.READ_ONLY, Files.size(path));
+            int position = 0;
+            int length;
+            while ((length = validRecordLength(records, position)) > 0) {
+                position += HEADER_BYTES + length;
+            }
+            boolean torn = position + 4 <= records.limit() && records.getInt(position) != 0;
+            if (torn || i == segments.size() - 1) {
+                if (torn) {
+                    logger.warn(String.format("Journal segment %s is torn at %d, dropping the rest of the journal", path, position));
+                    for (Path dropped : segments.subList(i + 1, segments.size())) {
+                        Files.delete(dropped);
+                    }
+                }
+                openSegment(segmentNumber(path), position);
+                if (torn) {
+                    for (int offset = position; offset < segment.limit(); offset++) {
+                        segment.put(offset, (byte) 0);
+                    }
+                }
+                return;
+            }
+        }
+    }
+
+    private void openSegment(int number, int position) throws IOException {
+        Path path = directory.resolve(String.format(SEGMENT_TEMPLATE, number));
+        long size = Files.exists(path) ? Math.max(Files.size(path), segmentBytes) : segmentBytes;
+        segment = map(path, FileChannel.MapMode.READ_WRITE, size);
+        segment.position(position);
+        segmentNo = number;
+    }
+
+    private static MappedByteBuffer map(Path path, FileChannel.MapMode mode, long size) throws IOException {
+        StandardOpenOption[] options = mode == FileChannel.MapMode.READ_ONLY
+                ? new StandardOpenOption[]{StandardOpenOption.READ}
+                : new StandardOpenOption[]{StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE};
+        //The mapping stays valid after the channel is closed
+        try (FileChannel channel = FileChannel.open(path, options)) {
+            return channel.map(mode, 0, size);
+        }
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> SEGMENT_NAME.matcher(path.getFileName().toString()).matches())
+                    .sorted((a, b) -> Integer.compare(segmentNumber(a), segmentNumber(b)))
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static int segmentNumber(Path path) {
+        Matcher matcher = SEGMENT_NAME.matcher(path.getFileName().toString());
+        isTrue(matcher.matches(), "Not a journal segment: " + path);
+        return Integer.parseInt(matcher.group(1));
+    }
+
+    /**
+     * @return the payload length of the record at the given position, or 0 when there is no complete record there
+     */
+    private static int validRecordLength(ByteBuffer records, int position) {
+        if (position + HEADER_BYTES > records.limit()) {
+            return 0;
+        }
+        int length = records.getInt(position);
+        if (length <= 0 || length > records.limit() - position - HEADER_BYTES) {
+            return 0;
+        }
+        ByteBuffer payload = records.duplicate();
+        payload.limit(position + HEADER_BYTES + length).position(position + HEADER_BYTES);
+        CRC32 checksum = CHECKSUMS.get();
+        checksum.reset();
+        checksum.update(payload);
+        return (int) checksum.getValue() == records.getInt(position + 4) ? length : 0;
+    }
+
+    private static void dispatch(ByteBuffer record, JournalListener listener) {
+        byte type = record.get();
+        int seatHoldId = record.getInt();
+        switch (type) {
+            case HOLD: {
+                long heldAt = record.getLong();
+                String customerEmail = getString(record);
+                listener.onHold(seatHoldId, heldAt, customerEmail, getOffsets(record));
+                break;
+            }
+            case RELOCATE:
+                listener.onRelocate(seatHoldId, getOffsets(record));
+                break;
+            case RESERVE: {
+                long reservationId = record.getLong();
+                long reservedAt = record.getLong();
+                String customerEmail = getString(record);
+                listener.onReserve(seatHoldId, reservationId, reservedAt, customerEmail, getOffsets(record));
+                break;
+            }
+            case EXPIRE:
+                listener.onExpire(seatHoldId, getOffsets(record));
+                break;
+            default:
+                throw new IllegalStateException("Unknown journal event " + type);
+        }
+    }
+
+    private static ByteBuffer buffer(int size) {
+        ByteBuffer buffer = BUFFERS.get();
+        if (buffer.capacity() < size) {
+            buffer = ByteBuffer.allocate(Integer.highestOneBit(size) << 1);
+            BUFFERS.set(buffer);
+        }
+        buffer.clear();
+        return buffer;
+    }
+
+    private static void putString(ByteBuffer buffer, byte[] value) {
+        isTrue(value.length <= 0xFFFF, "String is too long for the journal");
+        buffer.putShort((short) value.length).put(value);
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        byte[] value = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(value);
+        return new String(value, StandardCharsets.UTF_8);
+    }
+
+    private static void putOffsets(ByteBuffer buffer, List<Seat> seats) {
+        buffer.putInt(seats.size());
+        for (int i = 0; i < seats.size(); i++) {
+            buffer.putInt(seats.get(i).getOffset());
+        }
+    }
+
+    private static int[] getOffsets(ByteBuffer buffer) {
+        int[] offsets = new int[buffer.getInt()];
+        for (int i = 0; i < offsets.length; i++) {
+            offsets[i] = buffer.getInt();
+        }
+        return offsets;
+    }
+}
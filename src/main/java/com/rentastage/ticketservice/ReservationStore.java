@@ -0,0 +1,38 @@
+package com.rentastage.ticketservice;
+
+import com.rentastage.ticketservice.model.Reservation;
+
+/**
+ * Keeps reservations outside the ticket service, for reporting and other systems to read.
+ * <p>
+ * Storing happens after the reservation was made and journaled, the ticket service does not wait for the store to
+ * be durable. The default store keeps nothing.
+ */
+interface ReservationStore extends AutoCloseable {
+
+    ReservationStore NONE = new ReservationStore() {
+    };
+
+    /**
+     * Must not throw: the reservation is made already, a store that cannot keep it logs and drops it
+     *
+     * @param reservation a reservation that was just made
+     */
+    default void store(Reservation reservation) {
+    }
+
+    /**
+     * @param eventId id of a catalog event
+     * @return a store for the reservations of the event, which keeps them apart from those of other events
+     */
+    default ReservationStore forEvent(int eventId) {
+        return this;
+    }
+
+    /**
+     * Store everything that was handed over so far and stop accepting reservations
+     */
+    @Override
+    default void close() {
+    }
+}
@@ -0,0 +1,435 @@
+package com.rentastage.ticketservice;
+
+import com.rentastage.ticketservice.model.*;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+import static org.springframework.util.Assert.isTrue;
+
+/**
+ * Finds and claims the best available seats for a hold.
+ * <p>
+ * A group is seated together in the row nearest the stage that has enough adjacent free seats, starting from
+ * the leftmost such run. Only when no row has a long enough run is the group split, filling the longest runs
+ * first so it is broken into as few pieces as possible. Seats that are already held or reserved are never moved.
+ * <p>
+ * Seats are claimed with a compare and set from UNRESERVED to ON_HOLD. A run found in the index may be taken by
+ * a concurrent hold before it is claimed, in which case the partial claim is released and the search repeated.
+ * <p>
+ * The rows can be split into sections, such as the floor, the lower bowl and the balcony, each with its own lock.
+ * A hold goes to the section nearest the stage that can seat the group, or to the next section with room when
+ * another hold is being placed in that one, so concurrent holds fill different sections instead of competing
+ * for the same seats. Only a group that no single section can seat locks every section. With one section no lock
+ * is taken at all.
+ */
+class SeatAllocator {
+
+    //Number of times a run found in the index is retried before falling back to the next strategy
+    private static final int MAX_ATTEMPTS = 64;
+
+    private final SeatStore seatStore;
+
+    private final int seatsPerRow;
+
+    private final FreeRunIndex freeRunIndex;
+
+    private final SeatAvailabilityIndex availabilityIndex;
+
+    //Every claim, release and reservation is one write, so a version of the seat state never shows half of it
+    private final SeatStateVersions seatStateVersions;
+
+    //Sections in order of distance from the stage
+    private final Section[] sections;
+
+    //All rows, used when there is a single section and when a group is split over several sections
+    private final Section venueSection;
+
+    SeatAllocator(Venue venue) {
+        this(venue, new int[]{0});
+    }
+
+    /**
+     * @param venue the venue to allocate seats of
+     * @param sectionRows the first row of every section, in ascending order starting with row 0
+     */
+    SeatAllocator(Venue venue, int[] sectionRows) {
+        this.seatStore = venue.getSeatStore();
+        this.seatsPerRow = venue.getNoOfSeatsPerRow();
+        this.freeRunIndex = venue.getFreeRunIndex();
+        this.availabilityIndex = venue.getAvailabilityIndex();
+        this.seatStateVersions = venue.getSeatStateVersions();
+        int noOfRows = venue.getNoOfRows();
+        isTrue(sectionRows.length > 0 && sectionRows[0] == 0, "The first section must start at row 0");
+        this.sections = new Section[sectionRows.length];
+        for (int i = 0; i < sectionRows.length; i++) {
+            int toRow = i + 1 < sectionRows.length ? sectionRows[i + 1] : noOfRows;
+            isTrue(sectionRows[i] < toRow && toRow <= noOfRows, "Sections must be ascending row ranges of the venue");
+            sections[i] = new Section(sectionRows[i], toRow);
+        }
+        this.venueSection = new Section(0, noOfRows);
+    }
+
+    /**
+     * Parse the sections of a venue
+     *
+     * @param spec the number of sections of about equal size, or inclusive row ranges such as 0-9,10-29,30-39
+     * @param noOfRows number of rows of the venue
+     * @return the first row of every section
+     */
+    static int[] sectionRows(String spec, int noOfRows) {
+        String[] ranges = spec.trim().split("\\s*,\\s*");
+        if (ranges.length == 1 && !ranges[0].contains("-")) {
+            int count = Math.min(Integer.parseInt(ranges[0]), noOfRows);
+            isTrue(count > 0, "Number of sections must be > 0");
+            int[] sectionRows = new int[count];
+            for (int i = 0; i < count; i++) {
+                sectionRows[i] = i * noOfRows / count;
+            }
+            return sectionRows;
+        }
+        int[] sectionRows = new int[ranges.length];
+        int nextRow = 0;
+        for (int i = 0; i < ranges.length; i++) {
+            String[] range = ranges[i].split("-");
+            isTrue(range.length == 2 && Integer.parseInt(range[0]) == nextRow, "Sections must cover the rows in order: " + spec);
+            sectionRows[i] = nextRow;
+            nextRow = Integer.parseInt(range[1]) + 1;
+        }
+        isTrue(nextRow == noOfRows, "Sections must cover all " + noOfRows + " rows: " + spec);
+        return sectionRows;
+    }
+
+    /**
+     * Claim seats for a hold
+     *
+     * @param numSeats the number of seats to claim
+     * @return the claimed seats, all ON_HOLD, or null when not enough seats could be claimed
+     */
+    List<Seat> claim(int numSeats) {
+        seatStateVersions.beginWrite();
+        try {
+            List<Seat> claimedSeats = claimSeats(numSeats);
+            if (claimedSeats == null && seatStore.syncSharedChanges() > 0) {
+                //Other processes sharing the seats took or freed seats the index did not know of yet
+                claimedSeats = claimSeats(numSeats);
+            }
+            return claimedSeats;
+        } finally {
+            seatStateVersions.endWrite();
+        }
+    }
+
+    private List<Seat> claimSeats(int numSeats) {
+        if (sections.length == 1) {
+            return claim(numSeats, venueSection);
+        }
+        List<Seat> claimedSeats = claimAdjacentSeats(numSeats);
+        if (claimedSeats == null) {
+            claimedSeats = claimInSection(section -> availabilityIndex.count(ReservedStatus.UNRESERVED,
+                    section.fromOffset, section.toOffset) >= numSeats, section -> claim(numSeats, section));
+        }
+        if (claimedSeats == null) {
+            //No single section can seat the group
+            for (Section section : sections) {
+                section.lock.lock();
+            }
+            try {
+                claimedSeats = claim(numSeats, venueSection);
+            } finally {
+                for (Section section : sections) {
+                    section.lock.unlock();
+                }
+            }
+        }
+        return claimedSeats;
+    }
+
+    /**
+     * Claim seats for several holds in one pass. With more than one section every section is locked once for the
+     * whole batch and the groups are seated in venue order, as a group no single section can seat would be
+     *
+     * @param numSeats the number of seats of every hold, in the order they are claimed
+     * @return the claimed seats of every hold, null for a hold that could not be seated
+     */
+    List<List<Seat>> claimAll(int[] numSeats) {
+        List<List<Seat>> claimedSeats = new ArrayList<>(numSeats.length);
+        seatStateVersions.beginWrite();
+        if (sections.length > 1) {
+            for (Section section : sections) {
+                section.lock.lock();
+            }
+        }
+        try {
+            for (int seats : numSeats) {
+                claimedSeats.add(claim(seats, venueSection));
+            }
+        } finally {
+            if (sections.length > 1) {
+                for (Section section : sections) {
+                    section.lock.unlock();
+                }
+            }
+            seatStateVersions.endWrite();
+        }
+        return claimedSeats;
+    }
+
+    private List<Seat> claim(int numSeats, Section section) {
+        List<Seat> claimedSeats = claimAdjacent(numSeats, section);
+        if (claimedSeats == null) {
+            claimedSeats = claimSplit(numSeats, section);
+        }
+        if (claimedSeats == null) {
+            claimedSeats = claimAny(numSeats, section);
+        }
+        return claimedSeats;
+    }
+
+    /**
+     * Claim in the best section for which the condition holds. A section that is locked by another hold is passed
+     * over for the next one, and only when all of them are locked does the hold wait for the best one
+     *
+     * @return the claimed seats or null when no section could seat them
+     */
+    private List<Seat> claimInSection(Predicate<Section> hasRoom, Function<Section, List<Seat>> claim) {
+        Section best = null;
+        for (Section section : sections) {
+            if (!hasRoom.test(section)) {
+                continue;
+            }
+            if (best == null) {
+                best = section;
+            }
+            if (section.lock.tryLock()) {
+                try {
+                    List<Seat> claimedSeats = claim.apply(section);
+                    if (claimedSeats != null) {
+                        return claimedSeats;
+                    }
+                } finally {
+                    section.lock.unlock();
+                }
+            }
+        }
+        if (best == null) {
+            return null;
+        }
+        best.lock.lock();
+        try {
+            return claim.apply(best);
+        } finally {
+            best.lock.unlock();
+        }
+    }
+
+    /**
+     * Make several claims and releases one write, so no version of the seat state shows only some of them
+     *
+     * @param change the claims and releases
+     * @return the result of the change
+     */
+    <T> T write(Supplier<T> change) {
+        seatStateVersions.beginWrite();
+        try {
+            return change.get();
+        } finally {
+            seatStateVersions.endWrite();
+        }
+    }
+
+    /**
+     * Return seats on hold to the pool of available seats
+     *
+     * @param seats the seats to release
+     */
+    void release(List<Seat> seats) {
+        seatStateVersions.beginWrite();
+        try {
+            seats.forEach(seat -> seat.compareAndSetStatus(ReservedStatus.ON_HOLD, ReservedStatus.UNRESERVED));
+        } finally {
+            seatStateVersions.endWrite();
+        }
+    }
+
+    /**
+     * Reserve seats that are on hold. All seats are reserved or none: when a seat is not on hold, the seats reserved
+     * so far are put back on hold
+     *
+     * @param seats the seats of a hold, all ON_HOLD
+     */
+    void reserve(List<Seat> seats) {
+        seatStateVersions.beginWrite();
+        try {
+            for (int i = 0; i < seats.size(); i++) {
+                Seat seat = seats.get(i);
+                if (!seat.compareAndSetStatus(ReservedStatus.ON_HOLD, ReservedStatus.RESERVED)) {
+                    unreserve(seats.subList(0, i));
+                    throw new IllegalStateException(String.format("Seat %s is not on hold", seat));
+                }
+            }
+        } finally {
+            seatStateVersions.endWrite();
+        }
+    }
+
+    /**
+     * Put reserved seats back on hold, when the reservation they were reserved for could not be made
+     *
+     * @param seats the seats to put back on hold, all RESERVED
+     */
+    void unreserve(List<Seat> seats) {
+        seatStateVersions.beginWrite();
+        try {
+            seats.forEach(seat -> seat.compareAndSetStatus(ReservedStatus.RESERVED, ReservedStatus.ON_HOLD));
+        } finally {
+            seatStateVersions.endWrite();
+        }
+    }
+
+    /**
+     * Claim adjacent seats in the row nearest the stage that has room for them
+     *
+     * @param numSeats the number of seats to claim
+     * @return the claimed seats, all ON_HOLD, or null when no row has enough adjacent free seats
+     */
+    List<Seat> claimAdjacent(int numSeats) {
+        seatStateVersions.beginWrite();
+        try {
+            return claimAdjacentSeats(numSeats);
+        } finally {
+            seatStateVersions.endWrite();
+        }
+    }
+
+    private List<Seat> claimAdjacentSeats(int numSeats) {
+        if (sections.length == 1) {
+            return claimAdjacent(numSeats, venueSection);
+        }
+        return claimInSection(section -> freeRunIndex.longestRun(section.fromRow, section.toRow) >= numSeats,
+                section -> claimAdjacent(numSeats, section));
+    }
+
+    private List<Seat> claimAdjacent(int numSeats, Section section) {
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+            int row = section == venueSection
+                    ? freeRunIndex.findRow(numSeats)
+                    : freeRunIndex.findRow(numSeats, section.fromRow, section.toRow);
+            if (row < 0) {
+                return null;
+            }
+            List<Seat> run = claimRun(row, freeRunIndex.findRun(row, numSeats), numSeats);
+            if (run != null) {
+                return run;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param seats seats in venue order
+     * @return true if the seats are next to each other in one row
+     */
+    boolean isAdjacent(List<Seat> seats) {
+        int first = seats.get(0).getOffset();
+        int last = seats.get(seats.size() - 1).getOffset();
+        return last - first == seats.size() - 1 && first / seatsPerRow == last / seatsPerRow;
+    }
+
+    /**
+     * Split the group over the longest free runs of a section
+     */
+    private List<Seat> claimSplit(int numSeats, Section section) {
+        List<Seat> claimedSeats = new ArrayList<>(numSeats);
+        int failedAttempts = 0;
+        while (claimedSeats.size() < numSeats && failedAttempts < MAX_ATTEMPTS) {
+            int longestRun = section == venueSection
+                    ? freeRunIndex.longestRun()
+                    : freeRunIndex.longestRun(section.fromRow, section.toRow);
+            int runLength = Math.min(longestRun, numSeats - claimedSeats.size());
+            if (runLength == 0) {
+                break;
+            }
+            int row = section == venueSection
+                    ? freeRunIndex.findRow(runLength)
+                    : freeRunIndex.findRow(runLength, section.fromRow, section.toRow);
+            List<Seat> run = row < 0 ? null : claimRun(row, freeRunIndex.findRun(row, runLength), runLength);
+            if (run == null) {
+                failedAttempts++;
+            } else {
+                claimedSeats.addAll(run);
+            }
+        }
+        if (claimedSeats.size() < numSeats) {
+            release(claimedSeats);
+            return null;
+        }
+        claimedSeats.sort(Comparator.comparingInt(Seat::getOffset));
+        return claimedSeats;
+    }
+
+    /**
+     * Last resort when the run index keeps changing under heavy contention: take any free seats of a section in
+     * venue order
+     */
+    private List<Seat> claimAny(int numSeats, Section section) {
+        List<Seat> claimedSeats = new ArrayList<>(numSeats);
+        int offset = availabilityIndex.nextSeat(ReservedStatus.UNRESERVED, section.fromOffset);
+        while (offset >= 0 && offset < section.toOffset && claimedSeats.size() < numSeats) {
+            if (seatStore.compareAndSetStatus(offset, ReservedStatus.UNRESERVED, ReservedStatus.ON_HOLD)) {
+                claimedSeats.add(seatStore.seat(offset));
+            }
+            offset = availabilityIndex.nextSeat(ReservedStatus.UNRESERVED, offset + 1);
+        }
+        if (claimedSeats.size() < numSeats) {
+            release(claimedSeats);
+            return null;
+        }
+        return claimedSeats;
+    }
+
+    /**
+     * Claim adjacent seats in a row, all or none
+     *
+     * @return the claimed seats or null when any of them was taken
+     */
+    private List<Seat> claimRun(int row, int col, int runLength) {
+        if (col < 0) {
+            return null;
+        }
+        int from = row * seatsPerRow + col;
+        List<Seat> run = new ArrayList<>(runLength);
+        for (int offset = from; offset < from + runLength; offset++) {
+            if (!seatStore.compareAndSetStatus(offset, ReservedStatus.UNRESERVED, ReservedStatus.ON_HOLD)) {
+                release(run);
+                return null;
+            }
+            run.add(seatStore.seat(offset));
+        }
+        return run;
+    }
+
+    /**
+     * A range of rows of the venue
+     */
+    private final class Section {
+        private final int fromRow;
+        private final int toRow;
+        private final int fromOffset;
+        private final int toOffset;
+        //Held while a hold is placed in the section
+        private final ReentrantLock lock = new ReentrantLock();
+
+        private Section(int fromRow, int toRow) {
+            this.fromRow = fromRow;
+            this.toRow = toRow;
+            this.fromOffset = fromRow * seatsPerRow;
+            this.toOffset = toRow * seatsPerRow;
+        }
+    }
+}
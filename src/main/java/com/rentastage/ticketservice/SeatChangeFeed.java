@@ -0,0 +1,144 @@
+package com.rentastage.ticketservice;
+
+import com.rentastage.ticketservice.model.ReservedStatus;
+import com.rentastage.ticketservice.model.SeatStatusListener;
+import com.rentastage.ticketservice.model.SeatStore;
+import com.rentastage.ticketservice.model.Venue;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static org.springframework.util.Assert.isTrue;
+import static org.springframework.util.Assert.notNull;
+
+/**
+ * Every status change of a seat in the venue, numbered in order, in a bounded ring buffer that any number of
+ * subscribers read at their own pace.
+ * <p>
+ * An event is one long: the low 32 bits of its sequence number, the seat offset and the previous and new status.
+ * Writers claim a sequence number and write the slot, they never wait for a subscriber. A subscriber that falls
+ * more than the capacity behind finds its next event overwritten and is told to resync from a copy of the seat
+ * map instead.
+ * <p>
+ * Changes of different seats can be numbered out of the order in which they were made, but the changes of one
+ * seat are numbered in order: a held seat is only released or reserved through its hold, after the hold was made.
+ * Applying the new status of every event after a resync therefore brings the copy up to date.
+ */
+@Component
+public class SeatChangeFeed implements SeatStatusListener {
+
+    public static final int RESYNC = -1;
+
+    private static final ReservedStatus[] STATUSES = ReservedStatus.values();
+
+    //The seat offset takes 28 bits of an event
+    static final int MAX_SEATS = 1 << 28;
+
+    private static final int OFFSET_MASK = MAX_SEATS - 1;
+
+    private final SeatStore seatStore;
+
+    private final AtomicLongArray events;
+
+    private final int mask;
+
+    //Sequence number of the next change
+    private final AtomicLong nextSequence = new AtomicLong();
+
+    /**
+     * @param capacity number of events kept, a power of 2
+     */
+    @Autowired
+    public SeatChangeFeed(Venue venue, @Value("${ts.feed.capacity:65536}") int capacity) {
+        notNull(venue, "Venue cannot be null");
+        isTrue(capacity > 0 && Integer.bitCount(capacity) == 1, "Capacity must be a power of 2");
+        isTrue(venue.getSeatStore().size() <= MAX_SEATS, "Venue is too large for the change feed");
+        this.seatStore = venue.getSeatStore();
+        this.events = new AtomicLongArray(capacity);
+        this.mask = capacity - 1;
+        //Every slot starts out as written one lap before the first event, so it reads as not written yet
+        for (int i = 0; i < capacity; i++) {
+            events.set(i, (long) (i - capacity) << 32);
+        }
+        venue.addStatusListener(this);
+    }
+
+    @Override
+    public void onStatusChange(SeatStore store, int offset, ReservedStatus from, ReservedStatus to) {
+        long sequence = nextSequence.getAndIncrement();
+        events.lazySet((int) sequence & mask, sequence << 32 | (long) offset << 4 | from.ordinal() << 2 | to.ordinal());
+    }
+
+    /**
+     * @return a cursor that reads the changes made from now on
+     */
+    public Cursor subscribe() {
+        return new Cursor(nextSequence.get());
+    }
+
+    /**
+     * Receives the changes read from a cursor
+     */
+    public interface Handler {
+        void onChange(long sequence, int offset, ReservedStatus from, ReservedStatus to);
+    }
+
+    /**
+     * The position of one subscriber in the feed. Not thread safe, every subscriber reads from its own cursor
+     */
+    public final class Cursor {
+
+        private long sequence;
+
+        private Cursor(long sequence) {
+            this.sequence = sequence;
+        }
+
+        /**
+         * @return sequence number of the next change the cursor reads
+         */
+        public long getSequence() {
+            return sequence;
+        }
+
+        /**
+         * Hand the next changes to a handler, stopping at the first change that is not written yet
+         *
+         * @param maxEvents the most changes to hand over
+         * @return the number of changes handed over, or {@link #RESYNC} when the next change was overwritten
+         */
+        public int poll(Handler handler, int maxEvents) {
+            int read = 0;
+            while (read < maxEvents) {
+                long event = events.get((int) sequence & mask);
+                //Compares the low 32 bits of the sequence numbers, a slot is only ever a lap ahead or behind
+                int laps = (int) (event >>> 32) - (int) sequence;
+                if (laps < 0) {
+                    break;
+                }
+                if (laps > 0) {
+                    return RESYNC;
+                }
+                handler.onChange(sequence, (int) (event >>> 4) & OFFSET_MASK, STATUSES[(int) (event >>> 2) & 3],
+                        STATUSES[(int) event & 3]);
+                sequence++;
+                read++;
+            }
+            return read;
+        }
+
+        /**
+         * Move the cursor to the latest change and copy the seat map. The changes read from the cursor from now on
+         * bring the copy up to date, including changes the copy already has
+         *
+         * @return the status words of the seat store, see {@link SeatStore#copyStatusWords()}
+         */
+        public long[] resync() {
+            sequence = nextSequence.get();
+            return seatStore.copyStatusWords();
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.rentastage.ticketservice;
+
+import com.rentastage.ticketservice.model.ReservedStatus;
+import com.rentastage.ticketservice.model.SeatStore;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+
+import static org.springframework.util.Assert.isTrue;
+import static org.springframework.util.Assert.notNull;
+
+/**
+ * The seat map of one client as a stream of frames: a snapshot first, then only the seats that changed.
+ * <p>
+ * Every frame starts with its length in bytes as an int, not counting the length itself, then a type byte and the
+ * sequence number of the next change of the {@link SeatChangeFeed} as a long. A snapshot ({@code S}) follows with
+ * the number of rows and seats per row as ints and the packed status words as longs, like the packed seat map of
+ * {@link TicketServiceRoutes}. A delta ({@code D}) follows with the number of seats as an int and a varint per
+ * seat in offset order: the distance from the previous seat's offset (from 0 for the first) shifted left by 2,
+ * with the new status in the low 2 bits. A seat that changed more than once since the last frame is sent once.
+ * When the client falls too far behind the feed the next frame is a snapshot again.
+ */
+public class SeatMapStream {
+
+    static final byte SNAPSHOT = 'S';
+
+    static final byte DELTA = 'D';
+
+    private final SeatChangeFeed.Cursor cursor;
+
+    private final SeatStore seatStore;
+
+    private final int maxChanges;
+
+    private boolean snapshotSent;
+
+    //Changes read for the next frame, as offset << 32 | arrival << 2 | status
+    private long[] changes = new long[64];
+
+    private int size;
+
+    /**
+     * @param maxChanges the most changes read for one frame
+     */
+    public SeatMapStream(SeatChangeFeed feed, SeatStore seatStore, int maxChanges) {
+        notNull(feed, "Feed cannot be null");
+        notNull(seatStore, "Seat store cannot be null");
+        isTrue(maxChanges > 0 && maxChanges < 1 << 30, "Max changes must be > 0");
+        this.cursor = feed.subscribe();
+        this.seatStore = seatStore;
+        this.maxChanges = maxChanges;
+    }
+
+    /**
+     * @return the next frame, or null when no seat changed since the last frame
+     */
+    public byte[] nextFrame() {
+        if (!snapshotSent) {
+            snapshotSent = true;
+            return snapshot();
+        }
+        size = 0;
+        if (cursor.poll(this::add, maxChanges) == SeatChangeFeed.RESYNC) {
+            return snapshot();
+        }
+        return size == 0 ? null : delta();
+    }
+
+    private void add(long sequence, int offset, ReservedStatus from, ReservedStatus to) {
+        if (size == changes.length) {
+            changes = Arrays.copyOf(changes, size * 2);
+        }
+        changes[size] = (long) offset << 32 | (long) size << 2 | to.ordinal();
+        size++;
+    }
+
+    private byte[] snapshot() {
+        long[] words = cursor.resync();
+        return frame(SNAPSHOT, out -> {
+            out.writeInt(seatStore.getNoOfRows());
+            out.writeInt(seatStore.getSeatsPerRow());
+            for (long word : words) {
+                out.writeLong(word);
+            }
+        });
+    }
+
+    private byte[] delta() {
+        //Sorted by offset, then by arrival, so the last change of a seat comes last
+        Arrays.sort(changes, 0, size);
+        int seats = 0;
+        for (int i = 0; i < size; i++) {
+            if (i + 1 == size || changes[i + 1] >>> 32 != changes[i] >>> 32) {
+                changes[seats++] = changes[i];
+            }
+        }
+        int count = seats;
+        return frame(DELTA, out -> {
+            out.writeInt(count);
+            long previous = 0;
+            for (int i = 0; i < count; i++) {
+                long offset = changes[i] >>> 32;
+                writeVarint(out, (offset - previous) << 2 | changes[i] & 3);
+                previous = offset;
+            }
+        });
+    }
+
+    private static void writeVarint(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private byte[] frame(byte type, FrameBody body) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(0);
+            out.writeByte(type);
+            out.writeLong(cursor.getSequence());
+            body.write(out);
+            byte[] frame = bytes.toByteArray();
+            int length = frame.length - 4;
+            frame[0] = (byte) (length >>> 24);
+            frame[1] = (byte) (length >>> 16);
+            frame[2] = (byte) (length >>> 8);
+            frame[3] = (byte) length;
+            return frame;
+        } catch (IOException e) {
+            //Writes to memory do not fail
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private interface FrameBody {
+        void write(DataOutputStream out) throws IOException;
+    }
+}
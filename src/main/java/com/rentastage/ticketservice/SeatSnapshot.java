@@ -0,0 +1,189 @@
+package com.rentastage.ticketservice;
+
+import com.rentastage.ticketservice.JournalRecovery.RecoveredHold;
+import com.rentastage.ticketservice.JournalRecovery.RecoveredReservation;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+import static org.springframework.util.Assert.isTrue;
+import static org.springframework.util.Assert.state;
+
+/**
+ * Binary point in time image of the seat state, taken at a position of the journal.
+ * <p>
+ * The file is a header (magic, version, journal position, number of seats), the seat status packed 2 bits per
+ * seat, the open holds and the reservations as length prefixed records, and a CRC32 of everything before it.
+ * Strings and seat offsets are encoded the same way as in the journal.
+ * <p>
+ * A snapshot is written to a temporary file, flushed and then renamed over the previous one, so a crash leaves
+ * either the old or the new snapshot. It is read straight from a read only mapping of the file.
+ */
+final class SeatSnapshot {
+    private static final int MAGIC = 0x5453534E;
+
+    private static final int VERSION = 1;
+
+    //Magic, version, position and number of seats
+    private static final int HEADER_BYTES = 4 + 4 + 8 + 4;
+
+    private static final int SEATS_PER_BYTE = 4;
+
+    private SeatSnapshot() {
+    }
+
+    /**
+     * Write the state to a snapshot file, replacing the previous one
+     *
+     * @param file the snapshot file
+     * @param position the journal position the state is as of
+     * @param recovery the state to write
+     */
+    static void write(Path file, long position, JournalRecovery recovery) {
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileOutputStream fileOut = new FileOutputStream(temporary.toFile())) {
+            CheckedOutputStream checked = new CheckedOutputStream(new BufferedOutputStream(fileOut, 64 * 1024), new CRC32());
+            DataOutputStream out = new DataOutputStream(checked);
+            byte[] statuses = recovery.statuses;
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(position);
+            out.writeInt(statuses.length);
+            for (int offset = 0; offset < statuses.length; offset += SEATS_PER_BYTE) {
+                int packed = 0;
+                for (int i = 0; i < SEATS_PER_BYTE && offset + i < statuses.length; i++) {
+                    packed |= statuses[offset + i] << (2 * i);
+                }
+                out.writeByte(packed);
+            }
+            out.writeInt(recovery.openHolds.size());
+            for (RecoveredHold hold : recovery.openHolds.values()) {
+                byte[] email = hold.customerEmail.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(4 + 8 + 2 + email.length + 4 + 4 * hold.offsets.length);
+                out.writeInt(hold.seatHoldId);
+                out.writeLong(hold.heldAtMillis);
+                writeString(out, email);
+                writeOffsets(out, hold.offsets);
+            }
+            out.writeInt(recovery.reservations.size());
+            for (RecoveredReservation reservation : recovery.reservations) {
+                byte[] email = reservation.customerEmail.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(4 + 8 + 8 + 2 + email.length + 4 + 4 * reservation.offsets.length);
+                out.writeInt(reservation.seatHoldId);
+                out.writeLong(reservation.reservationId);
+                out.writeLong(reservation.reservedAtMillis);
+                writeString(out, email);
+                writeOffsets(out, reservation.offsets);
+            }
+            out.flush();
+            //The checksum itself is not part of the checksum
+            new DataOutputStream(fileOut).writeInt((int) checked.getChecksum().getValue());
+            fileOut.getChannel().force(true);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write snapshot " + temporary, e);
+        }
+        try {
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot replace snapshot " + file, e);
+        }
+    }
+
+    /**
+     * Load a snapshot file into the state. The state must be empty
+     *
+     * @param file the snapshot file
+     * @param recovery the state to load into, sized for the venue the snapshot was taken of
+     * @return the journal position the snapshot is as of, or 0 when there is no snapshot
+     */
+    static long read(Path file, JournalRecovery recovery) {
+        if (!Files.exists(file)) {
+            return 0;
+        }
+        ByteBuffer snapshot;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            snapshot = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read snapshot " + file, e);
+        }
+        state(snapshot.limit() >= HEADER_BYTES + 4 && snapshot.getInt(0) == MAGIC, "Not a seat snapshot: " + file);
+        state(snapshot.getInt(4) == VERSION, "Unsupported seat snapshot version: " + file);
+        int checksumAt = snapshot.limit() - 4;
+        CRC32 checksum = new CRC32();
+        ByteBuffer content = snapshot.duplicate();
+        content.limit(checksumAt);
+        checksum.update(content);
+        state((int) checksum.getValue() == snapshot.getInt(checksumAt), "Seat snapshot is corrupt: " + file);
+
+        snapshot.position(8);
+        long position = snapshot.getLong();
+        byte[] statuses = recovery.statuses;
+        isTrue(snapshot.getInt() == statuses.length, "Seat snapshot was taken of a venue of another size: " + file);
+        for (int offset = 0; offset < statuses.length; offset += SEATS_PER_BYTE) {
+            int packed = snapshot.get();
+            for (int i = 0; i < SEATS_PER_BYTE && offset + i < statuses.length; i++) {
+                statuses[offset + i] = (byte) ((packed >>> (2 * i)) & 0x3);
+            }
+        }
+        int holds = snapshot.getInt();
+        for (int i = 0; i < holds; i++) {
+            //Start of the next record, the length does not include itself
+            int next = snapshot.getInt() + snapshot.position();
+            int seatHoldId = snapshot.getInt();
+            long heldAt = snapshot.getLong();
+            String customerEmail = getString(snapshot);
+            recovery.openHolds.put(seatHoldId, new RecoveredHold(seatHoldId, heldAt, customerEmail, getOffsets(snapshot)));
+            snapshot.position(next);
+        }
+        int reservations = snapshot.getInt();
+        for (int i = 0; i < reservations; i++) {
+            int next = snapshot.getInt() + snapshot.position();
+            int seatHoldId = snapshot.getInt();
+            long reservationId = snapshot.getLong();
+            long reservedAt = snapshot.getLong();
+            String customerEmail = getString(snapshot);
+            recovery.reservations.add(new RecoveredReservation(seatHoldId, reservationId, reservedAt, customerEmail,
+                    getOffsets(snapshot)));
+            snapshot.position(next);
+        }
+        return position;
+    }
+
+    private static void writeString(DataOutputStream out, byte[] value) throws IOException {
+        isTrue(value.length <= 0xFFFF, "String is too long for the snapshot");
+        out.writeShort(value.length);
+        out.write(value);
+    }
+
+    private static void writeOffsets(DataOutputStream out, int[] offsets) throws IOException {
+        out.writeInt(offsets.length);
+        for (int offset : offsets) {
+            out.writeInt(offset);
+        }
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        byte[] value = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(value);
+        return new String(value, StandardCharsets.UTF_8);
+    }
+
+    private static int[] getOffsets(ByteBuffer buffer) {
+        int[] offsets = new int[buffer.getInt()];
+        buffer.asIntBuffer().get(offsets);
+        buffer.position(buffer.position() + 4 * offsets.length);
+        return offsets;
+    }
+}
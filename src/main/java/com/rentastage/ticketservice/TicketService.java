@@ -1,7 +1,13 @@
 package com.rentastage.ticketservice;
 
+import com.rentastage.ticketservice.model.HoldRequest;
+import com.rentastage.ticketservice.model.HoldResult;
 import com.rentastage.ticketservice.model.SeatHold;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
 public interface TicketService {
   /**
    * The number of seats in the venue that are neither held nor reserved
@@ -28,4 +34,34 @@ public interface TicketService {
    * @return a reservation confirmation code
    */
   String reserveSeats(int seatHoldId, String customerEmail);
+
+  /**
+   * Render the seat map with one page of the seat holds and reservations, for display in the shell
+   *
+   * @param page the page of seat holds and reservations, from 1
+   * @return the rendered view
+   */
+  default String render(int page) {
+    return toString();
+  }
+
+  /**
+   * Find and hold seats for many groups at once. A group that cannot be held does not fail the others
+   *
+   * @param requests the groups to hold seats for
+   * @param bestFit true to seat the largest groups first, false to seat them in the order of the requests
+   * @return a result for every request, in the order of the requests
+   */
+  default List<HoldResult> findAndHoldSeats(List<HoldRequest> requests, boolean bestFit) {
+    List<HoldResult> results = new ArrayList<>(Collections.nCopies(requests.size(), null));
+    for (int i : HoldRequest.placementOrder(requests, bestFit)) {
+      HoldRequest request = requests.get(i);
+      try {
+        results.set(i, HoldResult.held(request, findAndHoldSeats(request.getNumSeats(), request.getCustomerEmail())));
+      } catch (TicketServiceException | IllegalArgumentException e) {
+        results.set(i, HoldResult.failed(request, e.getMessage()));
+      }
+    }
+    return results;
+  }
 }
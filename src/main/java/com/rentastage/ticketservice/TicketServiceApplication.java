@@ -1,12 +1,19 @@
 package com.rentastage.ticketservice;
 
+import com.rentastage.ticketservice.model.Venue;
 import org.jline.utils.AttributedString;
 import org.jline.utils.AttributedStyle;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.annotation.Bean;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.shell.jline.PromptProvider;
+import org.springframework.web.reactive.function.server.RouterFunction;
+import org.springframework.web.reactive.function.server.ServerResponse;
+
+import java.nio.file.Paths;
 
 @SpringBootApplication
 @EnableScheduling
@@ -16,6 +23,44 @@ public class TicketServiceApplication {
     SpringApplication.run(TicketServiceApplication.class, args);
   }
 
+  /**
+   * The journal is only kept when ts.journal.dir is set
+   */
+  @Bean
+  Journal journal(@Value("${ts.journal.dir:}") String directory,
+                  @Value("${ts.journal.segmentBytes:67108864}") int segmentBytes,
+                  @Value("${ts.journal.fsync:interval}") String fsyncPolicy,
+                  @Value("${ts.journal.fsyncIntervalMillis:10}") long fsyncIntervalMillis) {
+    if (directory.isEmpty()) {
+      return Journal.NONE;
+    }
+    return new MappedJournal(Paths.get(directory), segmentBytes,
+        MappedJournal.FsyncPolicy.valueOf(fsyncPolicy.toUpperCase()), fsyncIntervalMillis);
+  }
+
+  /**
+   * Reservations are written behind to the database unless ts.store.enabled is false
+   */
+  @Bean
+  ReservationStore reservationStore(JdbcTemplate jdbcTemplate,
+                                    @Value("${ts.store.enabled:true}") boolean enabled,
+                                    @Value("${ts.store.queueCapacity:8192}") int queueCapacity,
+                                    @Value("${ts.store.batchSize:256}") int batchSize) {
+    if (!enabled) {
+      return ReservationStore.NONE;
+    }
+    return new WriteBehindReservationStore(jdbcTemplate, queueCapacity, batchSize);
+  }
+
+  /**
+   * HTTP API for the web front end on server.port, served next to the shell
+   */
+  @Bean
+  RouterFunction<ServerResponse> ticketServiceRoutes(AsyncTicketService asyncTicketService, TicketService ticketService,
+                                                     Venue venue, SeatChangeFeed seatChangeFeed) {
+    return new TicketServiceRoutes(asyncTicketService, ticketService, venue, seatChangeFeed).routes();
+  }
+
   @Bean
   public PromptProvider myPromptProvider() {
     return () -> new AttributedString("Rent-A-Stage>",
@@ -0,0 +1,72 @@
+package com.rentastage.ticketservice;
+
+import com.rentastage.ticketservice.model.ReservedStatus;
+import com.rentastage.ticketservice.model.SeatAvailabilityIndex;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Timers, counters and gauges of a ticket service, registered once with Micrometer.
+ * <p>
+ * Meters are looked up when the service is created, never on the request path. Calls are timed with
+ * {@link System#nanoTime()} and recorded with {@link Timer#record(long, TimeUnit)}, and counters are striped
+ * adders, so recording allocates nothing and takes no lock. Gauges are only read when the registry is scraped.
+ */
+final class TicketServiceMetrics {
+
+    final Timer holdTimer;
+    final Timer reserveTimer;
+    final Timer expiryTimer;
+    final Timer defragmentTimer;
+
+    //Holds that were refused, because there were not enough seats or the customer reached the limit
+    final Counter holdFailures;
+    final Counter holdsExpired;
+    final Counter holdsReserved;
+
+    /**
+     * @param availabilityIndex counts seats by status for the seat gauges
+     * @param seatHoldMap the open holds, for the active holds gauge
+     */
+    TicketServiceMetrics(MeterRegistry registry, SeatAvailabilityIndex availabilityIndex, Map<?, ?> seatHoldMap) {
+        this.holdTimer = timer(registry, "ticketservice.hold", "Time to find and hold seats");
+        this.reserveTimer = timer(registry, "ticketservice.reserve", "Time to reserve held seats");
+        this.expiryTimer = timer(registry, "ticketservice.expiry", "Time of a pass that releases expired holds");
+        this.defragmentTimer = timer(registry, "ticketservice.defragment", "Time of a pass that moves split holds to adjacent seats");
+        this.holdFailures = Counter.builder("ticketservice.hold.failures")
+                .description("Holds that were refused").register(registry);
+        this.holdsExpired = Counter.builder("ticketservice.holds.expired")
+                .description("Holds released because they were not reserved in time").register(registry);
+        this.holdsReserved = Counter.builder("ticketservice.holds.reserved")
+                .description("Holds turned into reservations").register(registry);
+        seatGauge(registry, availabilityIndex, ReservedStatus.UNRESERVED, "free");
+        seatGauge(registry, availabilityIndex, ReservedStatus.ON_HOLD, "held");
+        seatGauge(registry, availabilityIndex, ReservedStatus.RESERVED, "reserved");
+        Gauge.builder("ticketservice.holds.active", seatHoldMap, Map::size)
+                .description("Holds that are neither reserved nor expired").register(registry);
+    }
+
+    private static Timer timer(MeterRegistry registry, String name, String description) {
+        return Timer.builder(name).description(description).publishPercentileHistogram().register(registry);
+    }
+
+    private static void seatGauge(MeterRegistry registry, SeatAvailabilityIndex availabilityIndex, ReservedStatus status,
+                                  String tag) {
+        Gauge.builder("ticketservice.seats", availabilityIndex, index -> index.count(status))
+                .description("Seats by status").tag("status", tag).register(registry);
+    }
+
+    /**
+     * Record the time since a call started
+     *
+     * @param startNanos {@link System#nanoTime()} when the call started
+     */
+    static void record(Timer timer, long startNanos) {
+        timer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+}
@@ -0,0 +1,293 @@
+package com.rentastage.ticketservice;
+
+import com.rentastage.ticketservice.model.Seat;
+import com.rentastage.ticketservice.model.SeatHold;
+import com.rentastage.ticketservice.model.SeatStateVersions;
+import com.rentastage.ticketservice.model.SeatStore;
+import com.rentastage.ticketservice.model.Venue;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.server.RouterFunction;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.springframework.util.Assert.notNull;
+import static org.springframework.web.reactive.function.server.RequestPredicates.GET;
+import static org.springframework.web.reactive.function.server.RequestPredicates.POST;
+import static org.springframework.web.reactive.function.server.RouterFunctions.route;
+
+/**
+ * HTTP API for the web front end, served by the embedded Netty event loop next to the shell.
+ * <p>
+ * Holds and reservations are handed to {@link AsyncTicketService}, so an event loop thread never waits for a seat
+ * search or a journal flush and no thread is tied up per request. Seat counts and the seat map are read from the
+ * latest version of the seat state, which never shows a hold half made and is cheap enough to read on the event
+ * loop.
+ * <ul>
+ * <li>{@code GET /seats/available}</li>
+ * <li>{@code GET /seats}, the seat map</li>
+ * <li>{@code GET /seats/changes}, the seat map as a stream of the seats that changed, see {@link SeatMapStream}</li>
+ * <li>{@code POST /holds} with {@code numSeats} and {@code customerEmail}</li>
+ * <li>{@code POST /holds/{seatHoldId}/reservation} with {@code customerEmail}</li>
+ * </ul>
+ * The seat map is one character per seat in JSON ({@code .} free, {@code H} on hold, {@code R} reserved), or
+ * 2 bits per seat when {@code application/octet-stream} is asked for by name: the number of rows and seats per row as ints, followed by
+ * the status words of the seat store as longs, 32 seats to a word starting from the lowest bits. Ticket service
+ * errors are answered with 409, invalid requests with 400.
+ * <p>
+ * Instead of polling the seat map, a front end can read {@code GET /seats/changes}. Changes are collected from the
+ * {@link SeatChangeFeed} every {@link #CHANGES_INTERVAL} and sent as one frame. A client that does not keep up
+ * skips ticks rather than holding up the feed, and gets a fresh snapshot when it fell too far behind.
+ */
+public class TicketServiceRoutes {
+
+    private static final char[] STATUS_CODES = {'.', 'H', 'R'};
+
+    static final Duration CHANGES_INTERVAL = Duration.ofMillis(100);
+
+    //Most changes sent in one frame, the rest follow in the next
+    private static final int MAX_CHANGES_PER_FRAME = 65536;
+
+    private final AsyncTicketService asyncTicketService;
+
+    private final TicketService ticketService;
+
+    private final SeatStore seatStore;
+
+    private final SeatStateVersions seatStateVersions;
+
+    private final SeatChangeFeed seatChangeFeed;
+
+    public TicketServiceRoutes(AsyncTicketService asyncTicketService, TicketService ticketService, Venue venue,
+                               SeatChangeFeed seatChangeFeed) {
+        notNull(asyncTicketService, "Async ticket service cannot be null");
+        notNull(ticketService, "Ticket service cannot be null");
+        notNull(venue, "Venue cannot be null");
+        notNull(seatChangeFeed, "Seat change feed cannot be null");
+        this.asyncTicketService = asyncTicketService;
+        this.ticketService = ticketService;
+        this.seatStore = venue.getSeatStore();
+        this.seatStateVersions = venue.getSeatStateVersions();
+        this.seatChangeFeed = seatChangeFeed;
+    }
+
+    public RouterFunction<ServerResponse> routes() {
+        return route(GET("/seats/available"), request -> json(HttpStatus.OK, new Availability(ticketService.numSeatsAvailable())))
+                .andRoute(GET("/seats/changes"), request -> seatMapChanges())
+                .andRoute(GET("/seats").and(TicketServiceRoutes::asksForPackedSeatMap), request -> packedSeatMap())
+                .andRoute(GET("/seats"), request -> json(HttpStatus.OK, seatMap()))
+                .andRoute(POST("/holds"), this::findAndHoldSeats)
+                .andRoute(POST("/holds/{seatHoldId}/reservation"), this::reserveSeats);
+    }
+
+    /**
+     * @return true when the client names {@code application/octet-stream}. Wildcards and a missing Accept header
+     * get JSON, so browsers and plain curl see the readable seat map
+     */
+    private static boolean asksForPackedSeatMap(ServerRequest request) {
+        return request.headers().accept().stream()
+                .anyMatch(mediaType -> !mediaType.isWildcardType() && !mediaType.isWildcardSubtype()
+                        && mediaType.isCompatibleWith(MediaType.APPLICATION_OCTET_STREAM));
+    }
+
+    private Mono<ServerResponse> findAndHoldSeats(ServerRequest request) {
+        return respond(request.bodyToMono(HoldBody.class).flatMap(body -> {
+            notNull(body.getCustomerEmail(), "Customer Email cannot be null");
+            return asyncTicketService.findAndHoldSeats(body.getNumSeats(), body.getCustomerEmail());
+        }).map(Hold::new));
+    }
+
+    private Mono<ServerResponse> reserveSeats(ServerRequest request) {
+        return respond(request.bodyToMono(ReserveBody.class).flatMap(body -> {
+            notNull(body.getCustomerEmail(), "Customer Email cannot be null");
+            int seatHoldId = Integer.parseInt(request.pathVariable("seatHoldId"));
+            return asyncTicketService.reserveSeats(seatHoldId, body.getCustomerEmail());
+        }).map(Confirmation::new));
+    }
+
+    private SeatMap seatMap() {
+        long[] words = copyStatusWords();
+        char[] seats = new char[seatStore.size()];
+        for (int offset = 0; offset < seats.length; offset++) {
+            seats[offset] = STATUS_CODES[(int) (words[offset / 32] >>> (offset % 32 * 2)) & 3];
+        }
+        List<String> rowNames = new ArrayList<>(seatStore.getNoOfRows());
+        for (int row = 0; row < seatStore.getNoOfRows(); row++) {
+            rowNames.add(seatStore.getRowName(row));
+        }
+        return new SeatMap(rowNames, seatStore.getSeatsPerRow(), new String(seats));
+    }
+
+    private Mono<ServerResponse> packedSeatMap() {
+        long[] words = copyStatusWords();
+        ByteBuffer seatMap = ByteBuffer.allocate(4 + 4 + 8 * words.length);
+        seatMap.putInt(seatStore.getNoOfRows()).putInt(seatStore.getSeatsPerRow());
+        seatMap.asLongBuffer().put(words);
+        return ServerResponse.ok().contentType(MediaType.APPLICATION_OCTET_STREAM).syncBody(seatMap.array());
+    }
+
+    private Mono<ServerResponse> seatMapChanges() {
+        Flux<byte[]> frames = Flux.defer(() -> {
+            SeatMapStream stream = new SeatMapStream(seatChangeFeed, seatStore, MAX_CHANGES_PER_FRAME);
+            return Flux.interval(Duration.ZERO, CHANGES_INTERVAL)
+                    .onBackpressureDrop()
+                    .concatMap(tick -> Mono.justOrEmpty(stream.nextFrame()));
+        });
+        //Flushed frame by frame, an octet stream would otherwise be buffered until it completes
+        return ServerResponse.ok().contentType(MediaType.APPLICATION_OCTET_STREAM).body((response, context) ->
+                response.writeAndFlushWith(frames.map(frame -> Mono.just(response.bufferFactory().wrap(frame)))));
+    }
+
+    private long[] copyStatusWords() {
+        return seatStateVersions.read(state -> state.copyStatusWords(seatStore.size()));
+    }
+
+    /**
+     * @return 201 with the result, or the error status of a failed call
+     */
+    private static Mono<ServerResponse> respond(Mono<?> result) {
+        return result.flatMap(body -> json(HttpStatus.CREATED, body))
+                .onErrorResume(TicketServiceException.class, e -> json(HttpStatus.CONFLICT, new Error(e.getMessage())))
+                .onErrorResume(IllegalArgumentException.class, e -> json(HttpStatus.BAD_REQUEST, new Error(e.getMessage())));
+    }
+
+    private static Mono<ServerResponse> json(HttpStatus status, Object body) {
+        return ServerResponse.status(status).contentType(MediaType.APPLICATION_JSON).syncBody(body);
+    }
+
+    public static final class HoldBody {
+        private int numSeats;
+        private String customerEmail;
+
+        public int getNumSeats() {
+            return numSeats;
+        }
+
+        public void setNumSeats(int numSeats) {
+            this.numSeats = numSeats;
+        }
+
+        public String getCustomerEmail() {
+            return customerEmail;
+        }
+
+        public void setCustomerEmail(String customerEmail) {
+            this.customerEmail = customerEmail;
+        }
+    }
+
+    public static final class ReserveBody {
+        private String customerEmail;
+
+        public String getCustomerEmail() {
+            return customerEmail;
+        }
+
+        public void setCustomerEmail(String customerEmail) {
+            this.customerEmail = customerEmail;
+        }
+    }
+
+    public static final class Availability {
+        private final int available;
+
+        Availability(int available) {
+            this.available = available;
+        }
+
+        public int getAvailable() {
+            return available;
+        }
+    }
+
+    public static final class SeatMap {
+        private final List<String> rows;
+        private final int seatsPerRow;
+        private final String seats;
+
+        SeatMap(List<String> rows, int seatsPerRow, String seats) {
+            this.rows = rows;
+            this.seatsPerRow = seatsPerRow;
+            this.seats = seats;
+        }
+
+        public List<String> getRows() {
+            return rows;
+        }
+
+        public int getSeatsPerRow() {
+            return seatsPerRow;
+        }
+
+        /**
+         * @return one status character per seat, row after row
+         */
+        public String getSeats() {
+            return seats;
+        }
+    }
+
+    public static final class Hold {
+        private final int id;
+        private final String customerEmail;
+        private final long heldAt;
+        private final List<String> seats;
+
+        Hold(SeatHold seatHold) {
+            this.id = seatHold.getId();
+            this.customerEmail = seatHold.getCustomerEmail();
+            this.heldAt = seatHold.getHeldAt().getTime();
+            this.seats = new ArrayList<>(seatHold.getHolds().size());
+            for (Seat seat : seatHold.getHolds()) {
+                seats.add(seat.toString());
+            }
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        public String getCustomerEmail() {
+            return customerEmail;
+        }
+
+        public long getHeldAt() {
+            return heldAt;
+        }
+
+        public List<String> getSeats() {
+            return seats;
+        }
+    }
+
+    public static final class Confirmation {
+        private final String confirmationCode;
+
+        Confirmation(String confirmationCode) {
+            this.confirmationCode = confirmationCode;
+        }
+
+        public String getConfirmationCode() {
+            return confirmationCode;
+        }
+    }
+
+    public static final class Error {
+        private final String message;
+
+        Error(String message) {
+            this.message = message;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+    }
+}
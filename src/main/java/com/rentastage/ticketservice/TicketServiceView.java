@@ -0,0 +1,123 @@
+package com.rentastage.ticketservice;
+
+import com.rentastage.ticketservice.model.Reservation;
+import com.rentastage.ticketservice.model.RowVersions;
+import com.rentastage.ticketservice.model.SeatHold;
+import com.rentastage.ticketservice.model.SeatStore;
+import com.rentastage.ticketservice.model.Venue;
+import org.springframework.shell.table.*;
+
+import java.util.Collection;
+import java.util.stream.Collectors;
+
+import static org.springframework.shell.table.CellMatchers.at;
+import static org.springframework.util.Assert.isTrue;
+import static org.springframework.util.Assert.notNull;
+
+/**
+ * Renders the seat map, seat holds and reservations of a ticket service for display in the shell.
+ * <p>
+ * Every row of the seat map is kept as rendered and only rendered again once a seat in it changed. Seat holds and
+ * reservations are listed a page at a time, so a venue with thousands of holds still renders quickly.
+ */
+class TicketServiceView {
+
+    static final int PAGE_SIZE = 50;
+
+    private final SeatStore seatStore;
+
+    private final RowVersions rowVersions;
+
+    //Guarded by this
+    private final String[] rowViews;
+
+    //Version of every row when it was rendered, guarded by this
+    private final int[] renderedVersions;
+
+    TicketServiceView(Venue venue) {
+        notNull(venue, "Venue cannot be null");
+        this.seatStore = venue.getSeatStore();
+        this.rowVersions = venue.getRowVersions();
+        this.rowViews = new String[seatStore.getNoOfRows()];
+        this.renderedVersions = new int[seatStore.getNoOfRows()];
+    }
+
+    /**
+     * @param page the page of seat holds and reservations to list, from 1
+     */
+    String render(Collection<SeatHold> seatHolds, Collection<Reservation> reservations, int numSeatsAvailable, int page) {
+        isTrue(page > 0, "Page must be > 0");
+        String[][] data = new String[1][3];
+        TableModel model = new ArrayTableModel(data);
+        TableBuilder tableBuilder = new TableBuilder(model);
+
+        data[0][0] = getSeatLayoutView(numSeatsAvailable);
+        tableBuilder.on(at(0, 0)).addAligner(SimpleHorizontalAligner.values()[0]);
+        tableBuilder.on(at(0, 0)).addAligner(SimpleVerticalAligner.values()[0]);
+
+        data[0][1] = getPageView(seatHolds, page, "holds");
+        tableBuilder.on(at(0, 1)).addAligner(SimpleHorizontalAligner.values()[0]);
+        tableBuilder.on(at(0, 1)).addAligner(SimpleVerticalAligner.values()[0]);
+
+        data[0][2] = getPageView(reservations, page, "reservations");
+        tableBuilder.on(at(0, 2)).addAligner(SimpleHorizontalAligner.values()[0]);
+        tableBuilder.on(at(0, 2)).addAligner(SimpleVerticalAligner.values()[0]);
+
+        return tableBuilder.addFullBorder(BorderStyle.fancy_light).build().render(120);
+    }
+
+    /**
+     * List one page of entries, followed by the page count when they do not fit on one page
+     */
+    private static String getPageView(Collection<?> entries, int page, String name) {
+        int size = entries.size();
+        String view = entries.stream().skip((long) (page - 1) * PAGE_SIZE).limit(PAGE_SIZE).map(Object::toString)
+                .collect(Collectors.joining("\n"));
+        if (size <= PAGE_SIZE) {
+            return view;
+        }
+        int pages = (size + PAGE_SIZE - 1) / PAGE_SIZE;
+        return view + (view.isEmpty() ? "" : "\n") + "Page " + page + " of " + pages + ", " + size + " " + name;
+    }
+
+    private synchronized String getSeatLayoutView(int numSeatsAvailable) {
+        StringBuilder stringBuilder = new StringBuilder();
+        //print stage, width 15
+        stringBuilder.append("||||||||||||________________||||||||||\n");
+
+        for (int row = 0; row < rowViews.length; row++) {
+            //Read the version first, a seat that changes while the row is rendered marks it again
+            int version = rowVersions.version(row);
+            if (rowViews[row] == null || renderedVersions[row] != version) {
+                rowViews[row] = getRowView(row);
+                renderedVersions[row] = version;
+            }
+            stringBuilder.append(rowViews[row]);
+        }
+        stringBuilder.append("Number Of Seats Available: ").append(numSeatsAvailable);
+        return stringBuilder.toString();
+    }
+
+    private String getRowView(int row) {
+        StringBuilder stringBuilder = new StringBuilder(seatStore.getSeatsPerRow() + 8);
+        String rowName = seatStore.getRowName(row);
+        //Print row id
+        stringBuilder.append(rowName).append(" ");
+        for (int col = 0; col < seatStore.getSeatsPerRow(); col++) {
+            String symbol = "-";
+            switch (seatStore.getStatus(seatStore.offset(row, col))) {
+                case ON_HOLD:
+                    symbol = "h";
+                    break;
+                case UNRESERVED:
+                    symbol = "-";
+                    break;
+                case RESERVED:
+                    symbol = "R";
+                    break;
+            }
+            stringBuilder.append(symbol);
+        }
+        return stringBuilder.append(" ").append(rowName).append("\n").toString();
+    }
+}
@@ -0,0 +1,288 @@
+package com.rentastage.ticketservice;
+
+import com.rentastage.ticketservice.model.Reservation;
+import com.rentastage.ticketservice.model.Seat;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.NonTransientDataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Collectors;
+
+import static org.springframework.util.Assert.isTrue;
+import static org.springframework.util.Assert.notNull;
+
+/**
+ * Writes reservations and their seats to the database from a background thread.
+ * <p>
+ * Reservations are put on a bounded queue and the writer thread inserts them in JDBC batches of up to the batch
+ * size, one transaction per batch, so the caller never waits for the database. When the database falls behind
+ * and the queue is full, callers wait for room on the queue. Closing the store writes what is still queued.
+ * <p>
+ * A batch that fails because the database is unavailable is retried with a growing delay. A batch the database
+ * rejects, such as one with a duplicate reservation, is written again one reservation at a time, so only the
+ * reservations it rejects are lost. A reservation that still cannot be written after the last attempt is dropped
+ * and logged at ERROR with its confirmation code. Dropped reservations are not written again later: the journal
+ * does not restore them to the database, so the log is the only record of them there.
+ * <p>
+ * Storing never fails the caller, whose reservation is made already. When the store is closed or the writer
+ * thread stopped on an unexpected error, the reservation is dropped and logged at once instead of waiting for room.
+ */
+class WriteBehindReservationStore implements ReservationStore {
+    private static final org.slf4j.Logger logger = LoggerFactory.getLogger(WriteBehindReservationStore.class);
+
+    private static final String INSERT_RESERVATION =
+            "INSERT INTO reservation (id, event_id, confirmation_code, customer_email, reserved_at) VALUES (?, ?, ?, ?, ?)";
+
+    private static final String INSERT_SEAT =
+            "INSERT INTO reserved_seat (reservation_id, seat_offset, row_name, seat_number) VALUES (?, ?, ?, ?)";
+
+    //How long the writer waits for reservations before it checks whether the store was closed
+    private static final long POLL_MILLIS = 100;
+
+    //Event id of the reservations of the venue served by the TicketService bean, catalog events start at 1
+    static final int DEFAULT_EVENT_ID = 0;
+
+    //Longest delay between two attempts to write a batch
+    private static final long MAX_RETRY_MILLIS = 5000;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final BlockingQueue<Queued> queue;
+
+    private final int batchSize;
+
+    private final int maxAttempts;
+
+    //Delay before the second attempt to write a batch, doubled for every further attempt
+    private final long retryMillis;
+
+    private final Thread writer;
+
+    private final AtomicLong stored = new AtomicLong();
+
+    //Reservations the writer is done with, written or dropped
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    private volatile boolean running = true;
+
+    /**
+     * @param jdbcTemplate template of the database holding the reservation and reserved_seat tables
+     * @param queueCapacity number of reservations that can wait to be written
+     * @param batchSize maximum number of reservations inserted in one batch
+     */
+    WriteBehindReservationStore(JdbcTemplate jdbcTemplate, int queueCapacity, int batchSize) {
+        this(jdbcTemplate, queueCapacity, batchSize, 8, 100);
+    }
+
+    /**
+     * @param maxAttempts number of times a batch is written before its reservations are dropped
+     * @param retryMillis delay before the second attempt, doubled for every further attempt
+     */
+    WriteBehindReservationStore(JdbcTemplate jdbcTemplate, int queueCapacity, int batchSize, int maxAttempts,
+                                long retryMillis) {
+        notNull(jdbcTemplate, "Jdbc template cannot be null");
+        isTrue(queueCapacity > 0, "Queue capacity must be > 0");
+        isTrue(batchSize > 0, "Batch size must be > 0");
+        isTrue(maxAttempts > 0, "Max attempts must be > 0");
+        isTrue(retryMillis >= 0, "Retry delay cannot be negative");
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(jdbcTemplate.getDataSource()));
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.batchSize = batchSize;
+        this.maxAttempts = maxAttempts;
+        this.retryMillis = retryMillis;
+        this.writer = new Thread(this::run, "reservation-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Queue a reservation to be written. The reservation was made already, so a reservation that cannot be queued
+     * is logged and counted as dropped instead of failing the caller
+     */
+    @Override
+    public void store(Reservation reservation) {
+        store(DEFAULT_EVENT_ID, reservation);
+    }
+
+    /**
+     * @return a view of this store that writes the reservations with the id of a catalog event. Closing the view
+     * does nothing, the store is closed once for all events
+     */
+    @Override
+    public ReservationStore forEvent(int eventId) {
+        return new ReservationStore() {
+            @Override
+            public void store(Reservation reservation) {
+                WriteBehindReservationStore.this.store(eventId, reservation);
+            }
+        };
+    }
+
+    private void store(int eventId, Reservation reservation) {
+        if (!running) {
+            drop(reservation, "Reservation store is closed");
+            return;
+        }
+        try {
+            //Waits for room while the writer is alive, a queue nobody empties would block callers for good
+            while (!queue.offer(new Queued(eventId, reservation), POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                if (!writer.isAlive()) {
+                    drop(reservation, "Reservation writer has stopped");
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            drop(reservation, "Interrupted while waiting for the reservation store");
+            return;
+        }
+        stored.incrementAndGet();
+    }
+
+    private void drop(Reservation reservation, String reason) {
+        logger.error(String.format("Dropped reservation %s: %s", reservation.getConfirmationCode(), reason));
+        dropped.incrementAndGet();
+    }
+
+    /**
+     * Wait until every reservation stored so far was written or dropped
+     */
+    void flush() {
+        long target = stored.get();
+        while (written.get() + dropped.get() < target && writer.isAlive()) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+    }
+
+    long getWritten() {
+        return written.get();
+    }
+
+    long getDropped() {
+        return dropped.get();
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        List<Queued> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                Queued first = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+            } catch (InterruptedException e) {
+                logger.warn("Reservation writer interrupted");
+                break;
+            }
+            queue.drainTo(batch, batchSize - 1);
+            try {
+                write(batch);
+            } catch (RuntimeException e) {
+                logger.error(String.format("Dropped a batch of %d reservations: %s", batch.size(), codes(batch)), e);
+                dropped.addAndGet(batch.size());
+            }
+            batch.clear();
+        }
+    }
+
+    /**
+     * Write a batch, retrying while the database is unavailable. A batch the database rejects is written one
+     * reservation at a time
+     */
+    private void write(List<Queued> batch) {
+        long delay = retryMillis;
+        for (int attempt = 1; ; attempt++) {
+            try {
+                insert(batch);
+                written.addAndGet(batch.size());
+                return;
+            } catch (NonTransientDataAccessException e) {
+                if (batch.size() > 1) {
+                    for (Queued queued : batch) {
+                        List<Queued> single = Collections.singletonList(queued);
+                        try {
+                            write(single);
+                        } catch (RuntimeException singleFailure) {
+                            //Only this reservation is lost, the rest of the batch is still written
+                            logger.error("Dropped a reservation that could not be written: " + codes(single), singleFailure);
+                            dropped.incrementAndGet();
+                        }
+                    }
+                    return;
+                }
+                logger.error("Dropped a reservation the database rejected: " + codes(batch), e);
+                dropped.incrementAndGet();
+                return;
+            } catch (RuntimeException e) {
+                if (attempt >= maxAttempts) {
+                    throw e;
+                }
+                logger.warn(String.format("Could not write %d reservations, attempt %d of %d", batch.size(),
+                        attempt, maxAttempts), e);
+            }
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(delay));
+            delay = Math.min(delay * 2, MAX_RETRY_MILLIS);
+        }
+    }
+
+    private static String codes(List<Queued> batch) {
+        return batch.stream().map(queued -> queued.reservation.getConfirmationCode()).collect(Collectors.joining(", "));
+    }
+
+    private void insert(List<Queued> batch) {
+        List<Object[]> reservations = new ArrayList<>(batch.size());
+        List<Object[]> seats = new ArrayList<>();
+        for (Queued queued : batch) {
+            Reservation reservation = queued.reservation;
+            reservations.add(new Object[]{reservation.getId(), queued.eventId, reservation.getConfirmationCode(),
+                    reservation.getCustomerEmail(), new Timestamp(reservation.getReservedAt().getTime())});
+            for (Seat seat : reservation.getReserves()) {
+                seats.add(new Object[]{reservation.getId(), seat.getOffset(), seat.getRowName(), seat.getNumber()});
+            }
+        }
+        transactionTemplate.execute(status -> {
+            jdbcTemplate.batchUpdate(INSERT_RESERVATION, reservations);
+            jdbcTemplate.batchUpdate(INSERT_SEAT, seats);
+            return null;
+        });
+    }
+
+    /**
+     * A reservation waiting to be written, with the event it belongs to
+     */
+    private static final class Queued {
+        private final int eventId;
+        private final Reservation reservation;
+
+        private Queued(int eventId, Reservation reservation) {
+            this.eventId = eventId;
+            this.reservation = reservation;
+        }
+    }
+}
@@ -0,0 +1,269 @@
+package com.rentastage.ticketservice.model;
+
+import org.springframework.util.Assert;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Tracks the runs of adjacent UNRESERVED seats in every row of a venue.
+ * <p>
+ * Each row keeps a segment tree of the longest free run, the free prefix and the free suffix of every range of
+ * seats, so the leftmost run of a given length in a row is found in O(log seatsPerRow). A max tree over the rows
+ * finds the row nearest the stage that has such a run in O(log rows).
+ * <p>
+ * Row trees are guarded by their own lock, so transitions in different rows never contend. The row tree reads
+ * the status of the seat while holding the lock, so the last update always reflects the latest status. The tree
+ * over the rows is updated without locks and converges once the rows stop changing. Lookups are hints and must
+ * be confirmed by claiming the seats.
+ */
+public class FreeRunIndex implements SeatStatusListener {
+
+  private final int seatsPerRow;
+
+  private final RowTree[] rows;
+
+  private final int rowLeaves;
+
+  //Longest free run per node of the tree over the rows, leaves start at rowLeaves
+  private final AtomicIntegerArray rowBest;
+
+  //Number of separate runs of free seats in the venue, a measure of how fragmented the free seats are
+  private final AtomicInteger freeRunCount;
+
+  /**
+   * Create an index where all seats are UNRESERVED
+   *
+   * @param noOfRows number of rows
+   * @param seatsPerRow number of seats in each row
+   */
+  public FreeRunIndex(int noOfRows, int seatsPerRow) {
+    Assert.state(noOfRows > 0, "Number of rows must be > 0");
+    Assert.state(seatsPerRow > 0 && seatsPerRow <= Short.MAX_VALUE, "Number of seats per row must be > 0 and fit in a short");
+    this.seatsPerRow = seatsPerRow;
+    this.rows = new RowTree[noOfRows];
+    this.rowLeaves = Integer.highestOneBit(noOfRows * 2 - 1);
+    this.rowBest = new AtomicIntegerArray(rowLeaves * 2);
+    for (int row = 0; row < noOfRows; row++) {
+      rows[row] = new RowTree(seatsPerRow);
+      rowBest.set(rowLeaves + row, seatsPerRow);
+    }
+    this.freeRunCount = new AtomicInteger(noOfRows);
+    for (int node = rowLeaves - 1; node > 0; node--) {
+      rowBest.set(node, Math.max(rowBest.get(node * 2), rowBest.get(node * 2 + 1)));
+    }
+  }
+
+  public int getNoOfRows() {
+    return rows.length;
+  }
+
+  public int getSeatsPerRow() {
+    return seatsPerRow;
+  }
+
+  /**
+   * @return the number of separate runs of free seats in the venue
+   */
+  public int freeRunCount() {
+    return freeRunCount.get();
+  }
+
+  /**
+   * @return the length of the longest run of free seats in the venue
+   */
+  public int longestRun() {
+    return rowBest.get(1);
+  }
+
+  /**
+   * @param row the row index
+   * @return the length of the longest run of free seats in the row
+   */
+  public int longestRun(int row) {
+    return rows[row].longestRun();
+  }
+
+  /**
+   * Find the row nearest the stage that has a run of at least the given number of free seats
+   *
+   * @param runLength the number of adjacent seats needed
+   * @return the row index or -1 when no row has such a run
+   */
+  public int findRow(int runLength) {
+    if (runLength <= 0 || rowBest.get(1) < runLength) {
+      return -1;
+    }
+    int node = 1;
+    while (node < rowLeaves) {
+      node = rowBest.get(node * 2) >= runLength ? node * 2 : node * 2 + 1;
+      if (rowBest.get(node) < runLength) {
+        //the tree changed underneath us
+        return -1;
+      }
+    }
+    int row = node - rowLeaves;
+    return row < rows.length ? row : -1;
+  }
+
+  /**
+   * @param fromRow first row of the range
+   * @param toRow row after the range
+   * @return the length of the longest run of free seats in a range of rows
+   */
+  public int longestRun(int fromRow, int toRow) {
+    int best = 0;
+    for (int row = fromRow; row < toRow; row++) {
+      best = Math.max(best, rowBest.get(rowLeaves + row));
+    }
+    return best;
+  }
+
+  /**
+   * Find the row nearest the stage within a range of rows that has a run of at least the given number of free
+   * seats. The rows of the range are looked at one by one, ranges are expected to be a section of the venue
+   *
+   * @param runLength the number of adjacent seats needed
+   * @param fromRow first row of the range
+   * @param toRow row after the range
+   * @return the row index or -1 when no row in the range has such a run
+   */
+  public int findRow(int runLength, int fromRow, int toRow) {
+    if (runLength <= 0) {
+      return -1;
+    }
+    for (int row = fromRow; row < toRow; row++) {
+      if (rowBest.get(rowLeaves + row) >= runLength) {
+        return row;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Find the leftmost run of at least the given number of free seats in a row
+   *
+   * @param row the row index
+   * @param runLength the number of adjacent seats needed
+   * @return the index of the first seat of the run in the row or -1 when the row has no such run
+   */
+  public int findRun(int row, int runLength) {
+    return rows[row].findRun(runLength);
+  }
+
+  @Override
+  public void onStatusChange(SeatStore store, int offset, ReservedStatus from, ReservedStatus to) {
+    if (from != ReservedStatus.UNRESERVED && to != ReservedStatus.UNRESERVED) {
+      return;
+    }
+    int row = offset / seatsPerRow;
+    RowTree rowTree = rows[row];
+    freeRunCount.addAndGet(rowTree.update(offset % seatsPerRow, store, offset));
+    int best;
+    do {
+      best = rowTree.longestRun();
+      updateRowBest(row, best);
+    } while (best != rowTree.longestRun());
+  }
+
+  private void updateRowBest(int row, int best) {
+    int node = rowLeaves + row;
+    rowBest.set(node, best);
+    for (node >>= 1; node > 0; node >>= 1) {
+      //recompute from the children until no other thread changed them in the meantime
+      while (true) {
+        int current = rowBest.get(node);
+        int computed = Math.max(rowBest.get(node * 2), rowBest.get(node * 2 + 1));
+        if (current == computed || rowBest.compareAndSet(node, current, computed)) {
+          break;
+        }
+      }
+    }
+  }
+
+  /**
+   * Segment tree over the seats of one row
+   */
+  private static final class RowTree {
+    private final int size;
+    private final int leaves;
+    //longest free run, free prefix and free suffix of every node
+    private final short[] best;
+    private final short[] prefix;
+    private final short[] suffix;
+
+    private RowTree(int size) {
+      this.size = size;
+      this.leaves = Integer.highestOneBit(size * 2 - 1);
+      this.best = new short[leaves * 2];
+      this.prefix = new short[leaves * 2];
+      this.suffix = new short[leaves * 2];
+      for (int col = 0; col < size; col++) {
+        best[leaves + col] = prefix[leaves + col] = suffix[leaves + col] = 1;
+      }
+      for (int node = leaves - 1; node > 0; node--) {
+        recompute(node, width(node));
+      }
+    }
+
+    private synchronized int longestRun() {
+      return best[1];
+    }
+
+    /**
+     * @return the change in the number of free runs in the row
+     */
+    private synchronized int update(int col, SeatStore store, int offset) {
+      int node = leaves + col;
+      short free = (short) (store.getStatus(offset) == ReservedStatus.UNRESERVED ? 1 : 0);
+      if (best[node] == free) {
+        return 0;
+      }
+      //a freed seat starts a run, extends one or joins two
+      int neighbours = (col > 0 ? best[node - 1] : 0) + (col < size - 1 ? best[node + 1] : 0);
+      int runs = free == 1 ? 1 - neighbours : neighbours - 1;
+      best[node] = prefix[node] = suffix[node] = free;
+      for (node >>= 1; node > 0; node >>= 1) {
+        recompute(node, width(node));
+      }
+      return runs;
+    }
+
+    private synchronized int findRun(int runLength) {
+      if (runLength <= 0 || best[1] < runLength) {
+        return -1;
+      }
+      int node = 1;
+      int start = 0;
+      int width = leaves;
+      while (node < leaves) {
+        int left = node * 2;
+        int right = left + 1;
+        width >>= 1;
+        if (best[left] >= runLength) {
+          node = left;
+        } else if (suffix[left] + prefix[right] >= runLength) {
+          //the run spans both halves
+          return start + width - suffix[left];
+        } else {
+          node = right;
+          start += width;
+        }
+      }
+      return start < size ? start : -1;
+    }
+
+    private void recompute(int node, int width) {
+      int left = node * 2;
+      int right = left + 1;
+      int half = width >> 1;
+      prefix[node] = (short) (prefix[left] == half ? half + prefix[right] : prefix[left]);
+      suffix[node] = (short) (suffix[right] == half ? half + suffix[left] : suffix[right]);
+      best[node] = (short) Math.max(Math.max(best[left], best[right]), suffix[left] + prefix[right]);
+    }
+
+    private int width(int node) {
+      return leaves / Integer.highestOneBit(node);
+    }
+  }
+}
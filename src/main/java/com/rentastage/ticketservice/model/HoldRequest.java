@@ -0,0 +1,56 @@
+package com.rentastage.ticketservice.model;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.springframework.util.Assert.isTrue;
+import static org.springframework.util.Assert.notNull;
+
+/**
+ * One group of a batch of holds, such as a school group or a corporate block
+ */
+public final class HoldRequest {
+  private final int numSeats;
+
+  private final String customerEmail;
+
+  public HoldRequest(int numSeats, String customerEmail) {
+    isTrue(numSeats > 0, "Number of seats must be > 0");
+    notNull(customerEmail, "Customer Email cannot be null");
+    this.numSeats = numSeats;
+    this.customerEmail = customerEmail;
+  }
+
+  public int getNumSeats() {
+    return numSeats;
+  }
+
+  public String getCustomerEmail() {
+    return customerEmail;
+  }
+
+  /**
+   * The order the requests of a batch are placed in. With best fit the largest groups go first, so they get
+   * adjacent seats before the small groups break up the rows. Groups of the same size keep their order
+   *
+   * @param requests the requests of a batch
+   * @param bestFit true to place the largest groups first, false for the order of the batch
+   * @return indexes into the requests
+   */
+  public static Integer[] placementOrder(List<HoldRequest> requests, boolean bestFit) {
+    Integer[] order = new Integer[requests.size()];
+    for (int i = 0; i < order.length; i++) {
+      order[i] = i;
+    }
+    if (bestFit) {
+      Arrays.sort(order, Comparator.comparingInt((Integer i) -> requests.get(i).numSeats).reversed());
+    }
+    return order;
+  }
+
+  @Override
+  public String toString() {
+    return numSeats + " seats for " + customerEmail;
+  }
+}
@@ -0,0 +1,58 @@
+package com.rentastage.ticketservice.model;
+
+import static org.springframework.util.Assert.notNull;
+
+/**
+ * The outcome of one request of a batch of holds: the seat hold, or why the group could not be held
+ */
+public final class HoldResult {
+  private final HoldRequest request;
+
+  private final SeatHold seatHold;
+
+  private final String failure;
+
+  private HoldResult(HoldRequest request, SeatHold seatHold, String failure) {
+    notNull(request, "Request cannot be null");
+    this.request = request;
+    this.seatHold = seatHold;
+    this.failure = failure;
+  }
+
+  public static HoldResult held(HoldRequest request, SeatHold seatHold) {
+    notNull(seatHold, "Seat hold cannot be null");
+    return new HoldResult(request, seatHold, null);
+  }
+
+  public static HoldResult failed(HoldRequest request, String failure) {
+    notNull(failure, "Failure cannot be null");
+    return new HoldResult(request, null, failure);
+  }
+
+  public HoldRequest getRequest() {
+    return request;
+  }
+
+  public boolean isHeld() {
+    return seatHold != null;
+  }
+
+  /**
+   * @return the seat hold, or null when the group could not be held
+   */
+  public SeatHold getSeatHold() {
+    return seatHold;
+  }
+
+  /**
+   * @return why the group could not be held, or null when it was held
+   */
+  public String getFailure() {
+    return failure;
+  }
+
+  @Override
+  public String toString() {
+    return isHeld() ? seatHold.toString() : request + ": " + failure;
+  }
+}
@@ -0,0 +1,28 @@
+package com.rentastage.ticketservice.model;
+
+/**
+ * Generates the ids of seat holds and reservations.
+ * <p>
+ * Ids must be unique across all ticket service processes that share customers, so that a hold or reservation
+ * never replaces another one in a map.
+ */
+public interface IdGenerator {
+
+  /**
+   * @return a new positive seat hold id
+   */
+  int nextHoldId();
+
+  /**
+   * @return a new positive reservation id
+   */
+  long nextReservationId();
+
+  /**
+   * Called with the ids found when state is restored, so that ids handed out afterwards are not reused
+   *
+   * @param seatHoldId a restored seat hold id
+   * @param reservationId a restored reservation id, or 0
+   */
+  void restored(int seatHoldId, long reservationId);
+}
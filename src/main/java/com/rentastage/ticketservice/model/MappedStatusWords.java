@@ -0,0 +1,346 @@
+package com.rentastage.ticketservice.model;
+
+import org.springframework.util.Assert;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Status words kept in a memory mapped file, so several processes on one host can hold and reserve the seats of
+ * one venue.
+ * <p>
+ * The file starts with a header of the venue dimensions and a byte for every process slot, followed by the words
+ * and a byte for every seat. Every process maps the same pages, so a compare and set made by one process is seen by
+ * all of them at once, and the words take no space on the heap. The words live outside the heap, so they are read
+ * and changed through {@link OffHeapLongs}.
+ * <p>
+ * Holds live in the process that made them, so the seats a process holds when it dies would stay ON_HOLD. Every
+ * process locks a slot of its own in the file while it runs, which the OS releases when the process ends, however
+ * it ends, and a held seat records the slot of the process holding it. When a process syncs and can lock the slot
+ * of a process that has stopped, it releases the seats held in that slot, so a dead process does not keep its seats
+ * while others keep running. A process that dies between claiming a seat and recording its slot leaves that one
+ * seat ON_HOLD; those are released by the first process to open the file while no other process has it open.
+ * <p>
+ * The point of the file is sharing the seats between processes: holds and seat objects are still on the heap, and
+ * {@code SharedSeatStoreBenchmark} shows no less allocation or collection than with the words on the heap.
+ */
+public class MappedStatusWords implements StatusWords {
+
+  private static final long MAGIC = 0x5345415453544154L;
+
+  private static final int FORMAT = 2;
+
+  //Magic, format, rows and seats per row, padded so the slots start on a cache line
+  private static final int HEADER_BYTES = 64;
+
+  //Locked in the header padding by a process opening the file, so processes open it one at a time
+  private static final long OPENING_LOCK = 48;
+
+  //Locked shared by every process that has the file open, the OS releases it when the process ends
+  private static final long OPEN_LOCK = 56;
+
+  //Number of processes that can have the file open at once
+  private static final int SLOTS = 64;
+
+  //A byte for every slot, 1 while a process uses it, locked by that process
+  private static final int SLOTS_OFFSET = HEADER_BYTES;
+
+  private static final int WORDS_OFFSET = SLOTS_OFFSET + SLOTS;
+
+  //The low bit of every seat that is ON_HOLD, 01 in its 2 bits
+  private static final long LOW_BITS = 0x5555555555555555L;
+
+  //Every file this process opened, by file key, kept open so its locks are held. Closing any channel of a file
+  //drops every lock the process holds on it, so a file is opened only once
+  private static final Map<Object, OpenFile> OPEN_FILES = new HashMap<>();
+
+  //Slots are locked on this thread only: an interrupt during a lock call closes the channel, and with it every lock
+  //of the process on the file
+  private static final ExecutorService SLOT_LOCKER = Executors.newSingleThreadExecutor(runnable -> {
+    Thread thread = new Thread(runnable, "seat-store-slots");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  private final Path file;
+
+  private final int length;
+
+  private final OpenFile openFile;
+
+  //Kept so the mapping is not released while the words are in use
+  private final MappedByteBuffer mapping;
+
+  //Address of the first word
+  private final long address;
+
+  //Offset of the byte of the first seat, the slot holding the seat plus 1, or 0
+  private final int ownersOffset;
+
+  private MappedStatusWords(Path file, int length, OpenFile openFile, MappedByteBuffer mapping) {
+    this.file = file;
+    this.length = length;
+    this.openFile = openFile;
+    this.mapping = mapping;
+    this.address = OffHeapLongs.addressOf(mapping) + WORDS_OFFSET;
+    this.ownersOffset = WORDS_OFFSET + length * 8;
+  }
+
+  /**
+   * Map the status words of a venue, creating the file with all seats UNRESERVED if it does not exist yet
+   *
+   * @param file the file shared by the processes selling the venue
+   * @param noOfRows number of rows of the venue
+   * @param seatsPerRow number of seats in each row
+   * @return the mapped words
+   */
+  public static MappedStatusWords open(Path file, int noOfRows, int seatsPerRow) {
+    Assert.notNull(file, "File cannot be null");
+    Assert.state(noOfRows > 0 && seatsPerRow > 0, "Venue must have seats");
+    int length = (int) (((long) noOfRows * seatsPerRow + 31) / 32);
+    Assert.state(length <= (Integer.MAX_VALUE - WORDS_OFFSET) / 40, "Venue is too large for a seat state file");
+    //A file lock is held by the process, so threads of one process take turns
+    synchronized (MappedStatusWords.class) {
+      try {
+        Object fileKey = fileKey(file);
+        OpenFile openFile = OPEN_FILES.get(fileKey);
+        boolean firstOpen = openFile == null;
+        FileChannel channel = firstOpen
+            ? FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE) : openFile.channel;
+        try (FileLock ignored = channel.lock(OPENING_LOCK, 8, false)) {
+          ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.nativeOrder());
+          if (channel.size() == 0) {
+            header.putLong(MAGIC).putInt(FORMAT).putInt(noOfRows).putInt(seatsPerRow).clear();
+            channel.write(header, 0);
+          } else {
+            channel.read(header, 0);
+            header.flip();
+            Assert.state(header.remaining() == HEADER_BYTES && header.getLong() == MAGIC && header.getInt() == FORMAT,
+                "Not a seat state file: " + file);
+            int rows = header.getInt();
+            int seats = header.getInt();
+            Assert.state(rows == noOfRows && seats == seatsPerRow, String.format(
+                "Seat state file %s is for a venue of %dx%d seats, not %dx%d", file, rows, seats, noOfRows, seatsPerRow));
+          }
+          //Mapping past the end grows the file with zeros, so new seats are UNRESERVED and held by no one
+          MappedByteBuffer mapping = channel.map(FileChannel.MapMode.READ_WRITE, 0, WORDS_OFFSET + length * 40L);
+          if (firstOpen) {
+            //Not given out, this process has no slot yet
+            MappedStatusWords opening = new MappedStatusWords(file, length, null, mapping);
+            try (FileLock alone = channel.tryLock(OPEN_LOCK, 8, false)) {
+              if (alone != null) {
+                //No other process has the file open, so no hold is still alive
+                opening.releaseHolds();
+              }
+            }
+            channel.lock(OPEN_LOCK, 8, true);
+            openFile = opening.claimSlot(channel);
+            OPEN_FILES.put(fileKey, openFile);
+          }
+          return new MappedStatusWords(file, length, openFile, mapping);
+        } catch (IOException | RuntimeException e) {
+          if (firstOpen) {
+            channel.close();
+          }
+          throw e;
+        }
+      } catch (IOException e) {
+        throw new UncheckedIOException("Cannot map seat state file " + file, e);
+      }
+    }
+  }
+
+  /**
+   * @return the key of the file, created empty if it does not exist yet
+   */
+  private static Object fileKey(Path file) throws IOException {
+    try {
+      Files.createFile(file);
+    } catch (FileAlreadyExistsException e) {
+      //Opened before, by this process or another one
+    }
+    Object fileKey = Files.readAttributes(file, BasicFileAttributes.class).fileKey();
+    return fileKey != null ? fileKey : file.toAbsolutePath().normalize();
+  }
+
+  /**
+   * Set every seat that is ON_HOLD back to UNRESERVED and free every slot, only while no other process has the
+   * file open
+   */
+  private void releaseHolds() {
+    for (int index = 0; index < length; index++) {
+      long word;
+      long held;
+      do {
+        word = get(index);
+        held = word & ~(word >>> 1) & LOW_BITS;
+      } while (held != 0 && !compareAndSet(index, word, word & ~held));
+    }
+    for (int seat = 0; seat < length * 32; seat++) {
+      mapping.put(ownersOffset + seat, (byte) 0);
+    }
+    for (int slot = 0; slot < SLOTS; slot++) {
+      mapping.put(SLOTS_OFFSET + slot, (byte) 0);
+    }
+  }
+
+  /**
+   * Lock the first free slot for this process, releasing the seats still held in it by a process that has stopped
+   *
+   * @return the file opened with the slot
+   */
+  private OpenFile claimSlot(FileChannel channel) throws IOException {
+    for (int slot = 0; slot < SLOTS; slot++) {
+      FileLock lock = channel.tryLock(SLOTS_OFFSET + slot, 1, false);
+      if (lock != null) {
+        if (mapping.get(SLOTS_OFFSET + slot) != 0) {
+          releaseHoldsOf(slot);
+        }
+        mapping.put(SLOTS_OFFSET + slot, (byte) 1);
+        return new OpenFile(channel, slot, lock);
+      }
+    }
+    throw new IllegalStateException(String.format("More than %d processes have seat state file %s open", SLOTS, file));
+  }
+
+  /**
+   * Set the seats held in a slot back to UNRESERVED and free the slot. The slot must be locked by this process
+   *
+   * @return the number of seats released
+   */
+  private int releaseHoldsOf(int slot) {
+    byte owner = (byte) (slot + 1);
+    int released = 0;
+    for (int seat = 0; seat < length * 32; seat++) {
+      if (mapping.get(ownersOffset + seat) == owner) {
+        //Cleared first, a seat that is UNRESERVED again can be held by another process at once
+        mapping.put(ownersOffset + seat, (byte) 0);
+        int index = seat / 32;
+        long heldBit = 1L << ((seat % 32) * 2);
+        long word;
+        do {
+          word = get(index);
+        } while ((word & (heldBit | heldBit << 1)) == heldBit && !compareAndSet(index, word, word & ~heldBit));
+        if ((word & (heldBit | heldBit << 1)) == heldBit) {
+          released++;
+        }
+      }
+    }
+    mapping.put(SLOTS_OFFSET + slot, (byte) 0);
+    return released;
+  }
+
+  public Path getFile() {
+    return file;
+  }
+
+  @Override
+  public int length() {
+    return length;
+  }
+
+  @Override
+  public long get(int index) {
+    return OffHeapLongs.getVolatile(addressOf(index));
+  }
+
+  @Override
+  public boolean compareAndSet(int index, long expected, long word) {
+    return OffHeapLongs.compareAndSet(addressOf(index), expected, word);
+  }
+
+  @Override
+  public boolean isShared() {
+    return true;
+  }
+
+  @Override
+  public void held(int seat) {
+    mapping.put(ownerOffsetOf(seat), (byte) (openFile.slot + 1));
+  }
+
+  @Override
+  public void releasing(int seat) {
+    mapping.put(ownerOffsetOf(seat), (byte) 0);
+  }
+
+  @Override
+  public int releaseAbandonedHolds() {
+    boolean otherSlotsInUse = false;
+    for (int slot = 0; slot < SLOTS && !otherSlotsInUse; slot++) {
+      otherSlotsInUse = slot != openFile.slot && mapping.get(SLOTS_OFFSET + slot) != 0;
+    }
+    if (!otherSlotsInUse) {
+      return 0;
+    }
+    //join() does not give up when this thread is interrupted, so the lock thread always finishes the sweep
+    return CompletableFuture.supplyAsync(this::releaseHoldsOfStoppedProcesses, SLOT_LOCKER).join();
+  }
+
+  private int releaseHoldsOfStoppedProcesses() {
+    int released = 0;
+    for (int slot = 0; slot < SLOTS; slot++) {
+      if (slot == openFile.slot || mapping.get(SLOTS_OFFSET + slot) == 0) {
+        continue;
+      }
+      try (FileLock stopped = openFile.channel.tryLock(SLOTS_OFFSET + slot, 1, false)) {
+        //Another process may have released the slot before this one got the lock
+        if (stopped != null && mapping.get(SLOTS_OFFSET + slot) != 0) {
+          released += releaseHoldsOf(slot);
+        }
+      } catch (IOException e) {
+        throw new UncheckedIOException("Cannot lock a slot of seat state file " + file, e);
+      }
+    }
+    return released;
+  }
+
+  private int ownerOffsetOf(int seat) {
+    if (seat < 0 || seat >= length * 32) {
+      throw new IndexOutOfBoundsException("Seat " + seat + " of " + length * 32);
+    }
+    return ownersOffset + seat;
+  }
+
+  private long addressOf(int index) {
+    //Memory outside the heap has no bounds checks of its own
+    if (index < 0 || index >= length) {
+      throw new IndexOutOfBoundsException("Status word " + index + " of " + length);
+    }
+    return address + index * 8L;
+  }
+
+  /**
+   * The channel of a file opened by this process and the slot it locked in it
+   */
+  private static final class OpenFile {
+
+    private final FileChannel channel;
+
+    private final int slot;
+
+    //Kept with the channel, the slot stays locked until the process ends
+    private final FileLock slotLock;
+
+    private OpenFile(FileChannel channel, int slot, FileLock slotLock) {
+      this.channel = channel;
+      this.slot = slot;
+      this.slotLock = slotLock;
+    }
+  }
+}
@@ -0,0 +1,52 @@
+package com.rentastage.ticketservice.model;
+
+import sun.misc.Unsafe;
+
+import java.lang.reflect.Field;
+import java.nio.Buffer;
+import java.nio.MappedByteBuffer;
+
+/**
+ * Volatile reads and compare and sets of longs in memory outside the heap, the only thing {@link MappedStatusWords}
+ * needs that Java 8 has no public API for. A lock in the JVM would not stop another process, and a file lock for
+ * every compare and set would cost a system call, so the compare and set must be the atomic instruction of the CPU.
+ * <p>
+ * This is the only class that uses {@code sun.misc.Unsafe}, so javac warns that it is internal proprietary API,
+ * for this class only. The warning is expected; the class goes once the build moves to Java 9 or later and
+ * {@code MethodHandles.byteBufferViewVarHandle} can compare and set the mapped words.
+ */
+final class OffHeapLongs {
+
+  private static final Unsafe UNSAFE;
+
+  private static final long ADDRESS_OFFSET;
+
+  static {
+    try {
+      Field field = Unsafe.class.getDeclaredField("theUnsafe");
+      field.setAccessible(true);
+      UNSAFE = (Unsafe) field.get(null);
+      ADDRESS_OFFSET = UNSAFE.objectFieldOffset(Buffer.class.getDeclaredField("address"));
+    } catch (ReflectiveOperationException e) {
+      throw new ExceptionInInitializerError(e);
+    }
+  }
+
+  private OffHeapLongs() {
+  }
+
+  /**
+   * @return the address of the first byte of the mapping, valid while the mapping is reachable
+   */
+  static long addressOf(MappedByteBuffer mapping) {
+    return UNSAFE.getLong(mapping, ADDRESS_OFFSET);
+  }
+
+  static long getVolatile(long address) {
+    return UNSAFE.getLongVolatile(null, address);
+  }
+
+  static boolean compareAndSet(long address, long expected, long value) {
+    return UNSAFE.compareAndSwapLong(null, address, expected, value);
+  }
+}
@@ -2,7 +2,6 @@ package com.rentastage.ticketservice.model;
 
 import java.util.Date;
 import java.util.List;
-import java.util.concurrent.ThreadLocalRandom;
 
 import static org.springframework.util.Assert.isTrue;
 import static org.springframework.util.Assert.notEmpty;
@@ -12,7 +11,7 @@ import static org.springframework.util.Assert.notNull;
  * Represents a hold on one or more seats
  */
 public class Reservation {
-  private final int id;
+  private final long id;
 
   private final List<Seat> reserves;
 
@@ -20,11 +19,14 @@ public class Reservation {
 
   private final String customerEmail;
 
+  //Rendered on first use. A reservation never changes, so a race only renders it twice
+  private String display;
+
   private Reservation(Builder builder) {
     this.reserves = builder.reserves;
-    this.reservedAt = new Date();
+    this.reservedAt = builder.reservedAt != null ? builder.reservedAt : new Date();
     this.customerEmail = builder.customerEmail;
-    id = ThreadLocalRandom.current().nextInt(Integer.MAX_VALUE);
+    this.id = builder.id != 0 ? builder.id : SnowflakeIdGenerator.LOCAL.nextReservationId();
   }
 
   public static Builder newReservation() {
@@ -35,19 +37,32 @@ public class Reservation {
     return reserves;
   }
 
-  public int getId() {
+  public long getId() {
     return id;
   }
 
+  /**
+   * @return the code given to the customer to confirm the reservation
+   */
+  public String getConfirmationCode() {
+    return Utils.confirmationCode(id);
+  }
+
   Date getHeldAt() {
     return reservedAt;
   }
 
+  public Date getReservedAt() {
+    return reservedAt;
+  }
+
   public String getCustomerEmail() {
     return customerEmail;
   }
 
   public static final class Builder {
+    private long id;
+    private Date reservedAt;
     private List<Seat> reserves;
     private String customerEmail;
 
@@ -58,12 +73,30 @@ public class Reservation {
       return new Reservation(this);
     }
 
+    /**
+     * @param id id from the ticket service's {@link IdGenerator}. A local id is generated when not set
+     */
+    public Builder id(long id) {
+      isTrue(id > 0, "Id must be > 0");
+      this.id = id;
+      return this;
+    }
+
+    /**
+     * @param reservedAt time of a reservation that is being restored. Defaults to now
+     */
+    public Builder reservedAt(Date reservedAt) {
+      notNull(reservedAt, "Reserved at cannot be null");
+      this.reservedAt = reservedAt;
+      return this;
+    }
+
     public Builder reserves(List<Seat> reserves) {
       notNull(reserves, "Holds cannot be null");
       notEmpty(reserves, "Holds cannot be empty");
       reserves.stream()
               .forEach(seat -> isTrue(seat.getStatus() == ReservedStatus.RESERVED, "Seat status should be set to RESERVED"));
-      this.reserves = reserves;
+      this.reserves = SeatList.copyOf(reserves);
       return this;
     }
 
@@ -76,6 +109,11 @@ public class Reservation {
 
   @Override
   public String toString() {
-    return String.format("Reserved|%d|%s|%s|%s", id, reserves, Utils.formatDate(reservedAt), customerEmail);
+    String display = this.display;
+    if (display == null) {
+      display = String.format("Reserved|%s|%s|%s|%s", getConfirmationCode(), reserves, Utils.formatDate(reservedAt), customerEmail);
+      this.display = display;
+    }
+    return display;
   }
 }
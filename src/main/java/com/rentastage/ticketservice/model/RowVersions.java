@@ -0,0 +1,34 @@
+package com.rentastage.ticketservice.model;
+
+import org.springframework.util.Assert;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Counts the status changes in every row of a venue, so a view of the seat map can tell which rows changed since
+ * it last rendered them
+ */
+public class RowVersions implements SeatStatusListener {
+  private final int seatsPerRow;
+
+  private final AtomicIntegerArray versions;
+
+  public RowVersions(int noOfRows, int seatsPerRow) {
+    Assert.state(noOfRows > 0, "Number of rows must be > 0");
+    Assert.state(seatsPerRow > 0, "Number of seats per row must be > 0");
+    this.seatsPerRow = seatsPerRow;
+    this.versions = new AtomicIntegerArray(noOfRows);
+  }
+
+  /**
+   * @return a number that changes every time the status of a seat in the row changes
+   */
+  public int version(int row) {
+    return versions.get(row);
+  }
+
+  @Override
+  public void onStatusChange(SeatStore store, int offset, ReservedStatus from, ReservedStatus to) {
+    versions.incrementAndGet(offset / seatsPerRow);
+  }
+}
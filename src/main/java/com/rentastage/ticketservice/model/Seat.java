@@ -2,65 +2,89 @@ package com.rentastage.ticketservice.model;
 
 import org.springframework.util.Assert;
 
-import java.util.UUID;
-
 /**
  * Represents a seat that can be reserved
+ * <p>
+ * A seat is a lightweight view of one entry in a {@link SeatStore}. Two views of the same seat are equal
  */
 public class Seat {
 
   private static final String DISPLAY_TEMPLATE = "%s%d";
-  /**
-   * Unique Seat ID
-   */
-  private final String id;
 
   /**
-   * Row Name
+   * Store holding the row name and status of the seat
    */
-  private final String rowName;
+  private final SeatStore store;
 
   /**
-   * Seat Number
+   * Position of the seat in the store
    */
-  private final int number;
+  private final int offset;
+
+  Seat(SeatStore store, int offset) {
+    this.store = store;
+    this.offset = offset;
+  }
 
   /**
-   * Status of Seat
+   * A seat created with the builder does not belong to a venue and is backed by a store of its own
    */
-  private volatile ReservedStatus status = ReservedStatus.UNRESERVED;
-
   private Seat(Builder builder) {
-    this.rowName = builder.rowName;
-    this.number = builder.number;
-    id = UUID.randomUUID().toString();
+    this(new SeatStore(new String[]{builder.rowName}, 1, builder.number, null), 0);
   }
 
   public static Builder newSeat() {
     return new Builder();
   }
 
+  /**
+   * @return the row name and seat number, unique within a venue
+   */
   public String getId() {
-    return id;
+    return toString();
   }
 
-  public String getRowName() {
-    return rowName;
+  /**
+   * @return the row index in the upper 16 bits and the column index in the lower 16 bits
+   */
+  public int getCode() {
+    return (store.row(offset) << 16) | store.col(offset);
   }
 
+  public String getRowName() {
+    return store.getRowName(store.row(offset));
+  }
 
   public int getNumber() {
-    return number;
+    return store.number(offset);
   }
 
   public ReservedStatus getStatus() {
-    return status;
+    return store.getStatus(offset);
   }
 
   public void setStatus(ReservedStatus status) {
-    this.status = status;
+    store.getAndSetStatus(offset, status);
   }
 
+  /**
+   * Atomically change the status of the seat if it is still in the expected status
+   *
+   * @param expected the status the seat must be in
+   * @param status the new status
+   * @return true if the status was changed
+   */
+  public boolean compareAndSetStatus(ReservedStatus expected, ReservedStatus status) {
+    return store.compareAndSetStatus(offset, expected, status);
+  }
+
+  public int getOffset() {
+    return offset;
+  }
+
+  SeatStore getStore() {
+    return store;
+  }
 
   public static final class Builder {
     private String rowName;
@@ -86,13 +110,29 @@ public class Seat {
     }
   }
 
+  @Override
+  public boolean equals(Object other) {
+    if (this == other) {
+      return true;
+    }
+    if (!(other instanceof Seat)) {
+      return false;
+    }
+    Seat seat = (Seat) other;
+    return store == seat.store && offset == seat.offset;
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * System.identityHashCode(store) + offset;
+  }
+
   /**
    * This method is used to display seat data in the shell
    * @return
    */
   @Override
   public String toString() {
-    return String.format(DISPLAY_TEMPLATE, rowName, number);
+    return String.format(DISPLAY_TEMPLATE, getRowName(), getNumber());
   }
 }
-
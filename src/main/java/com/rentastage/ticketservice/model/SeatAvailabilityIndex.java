@@ -0,0 +1,139 @@
+package com.rentastage.ticketservice.model;
+
+import org.springframework.util.Assert;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Maintains a bitset per reserved status and a counter per reserved status for all seats in a venue.
+ * <p>
+ * Counters are updated from the transitions reported by the seats and are always exact. The bitsets are
+ * refreshed from the current status of the seat after every transition, so a concurrent reader may briefly
+ * see a seat in a stale set. Lookups are therefore hints and must be confirmed against the seat itself.
+ */
+public class SeatAvailabilityIndex implements SeatStatusListener {
+  private static final ReservedStatus[] STATUSES = ReservedStatus.values();
+
+  private final int size;
+
+  private final AtomicLongArray[] bits = new AtomicLongArray[STATUSES.length];
+
+  private final AtomicInteger[] counts = new AtomicInteger[STATUSES.length];
+
+  /**
+   * Create an index where all seats are UNRESERVED
+   *
+   * @param size the number of seats in the venue
+   */
+  public SeatAvailabilityIndex(int size) {
+    Assert.state(size >= 0, "Size cannot be negative");
+    this.size = size;
+    int words = (size + 63) >>> 6;
+    for (ReservedStatus status : STATUSES) {
+      bits[status.ordinal()] = new AtomicLongArray(words);
+      counts[status.ordinal()] = new AtomicInteger();
+    }
+    AtomicLongArray unreserved = bits[ReservedStatus.UNRESERVED.ordinal()];
+    for (int word = 0; word < words; word++) {
+      int remaining = size - (word << 6);
+      unreserved.set(word, remaining >= 64 ? -1L : (1L << remaining) - 1);
+    }
+    counts[ReservedStatus.UNRESERVED.ordinal()].set(size);
+  }
+
+  public int size() {
+    return size;
+  }
+
+  /**
+   * @param status the reserved status
+   * @return the number of seats in the given status
+   */
+  public int count(ReservedStatus status) {
+    return counts[status.ordinal()].get();
+  }
+
+  /**
+   * Count the seats in a range of offsets that are in the given status, from the bits rather than the counters
+   *
+   * @param status the reserved status
+   * @param fromOffset first offset of the range
+   * @param toOffset offset after the range
+   * @return the number of seats in the range in the given status
+   */
+  public int count(ReservedStatus status, int fromOffset, int toOffset) {
+    Assert.isTrue(0 <= fromOffset && fromOffset <= toOffset && toOffset <= size, "Invalid seat range");
+    AtomicLongArray words = bits[status.ordinal()];
+    int count = 0;
+    for (int wordIndex = fromOffset >>> 6; wordIndex << 6 < toOffset; wordIndex++) {
+      long word = words.get(wordIndex);
+      int first = wordIndex << 6;
+      if (first < fromOffset) {
+        word &= -1L << fromOffset;
+      }
+      if (toOffset - first < 64) {
+        word &= (1L << toOffset) - 1;
+      }
+      count += Long.bitCount(word);
+    }
+    return count;
+  }
+
+  /**
+   * Find the first seat at or after the given offset that is in the given status
+   *
+   * @param status the reserved status
+   * @param fromOffset the offset to start searching from
+   * @return the offset of the seat or -1 when there is none
+   */
+  public int nextSeat(ReservedStatus status, int fromOffset) {
+    if (fromOffset < 0 || fromOffset >= size) {
+      return -1;
+    }
+    AtomicLongArray words = bits[status.ordinal()];
+    int wordIndex = fromOffset >>> 6;
+    long word = words.get(wordIndex) & (-1L << fromOffset);
+    while (true) {
+      if (word != 0) {
+        return (wordIndex << 6) + Long.numberOfTrailingZeros(word);
+      }
+      if (++wordIndex == words.length()) {
+        return -1;
+      }
+      word = words.get(wordIndex);
+    }
+  }
+
+  @Override
+  public void onStatusChange(SeatStore store, int offset, ReservedStatus from, ReservedStatus to) {
+    counts[from.ordinal()].decrementAndGet();
+    counts[to.ordinal()].incrementAndGet();
+    refresh(store, offset);
+  }
+
+  /**
+   * Make the bits of the seat match its status. Repeats until the status did not change while the bits were
+   * being written, so the last transition of a seat always wins
+   */
+  private void refresh(SeatStore store, int offset) {
+    ReservedStatus status;
+    do {
+      status = store.getStatus(offset);
+      for (ReservedStatus candidate : STATUSES) {
+        setBit(bits[candidate.ordinal()], offset, candidate == status);
+      }
+    } while (status != store.getStatus(offset));
+  }
+
+  private static void setBit(AtomicLongArray words, int offset, boolean value) {
+    int wordIndex = offset >>> 6;
+    long mask = 1L << offset;
+    long current;
+    long updated;
+    do {
+      current = words.get(wordIndex);
+      updated = value ? current | mask : current & ~mask;
+    } while (current != updated && !words.compareAndSet(wordIndex, current, updated));
+  }
+}
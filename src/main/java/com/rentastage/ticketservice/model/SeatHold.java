@@ -2,7 +2,6 @@ package com.rentastage.ticketservice.model;
 
 import java.util.Date;
 import java.util.List;
-import java.util.concurrent.ThreadLocalRandom;
 
 import static org.springframework.util.Assert.isTrue;
 import static org.springframework.util.Assert.notEmpty;
@@ -21,11 +20,21 @@ public class SeatHold {
 
   private final String customerEmail;
 
+  //Rendered on first use. A hold never changes, so a race only renders it twice
+  private String display;
+
   private SeatHold(Builder builder) {
     this.holds = builder.holds;
-    this.heldAt = new Date();
+    this.heldAt = builder.heldAt != null ? builder.heldAt : new Date();
     this.customerEmail = builder.customerEmail;
-    id = ThreadLocalRandom.current().nextInt(Integer.MAX_VALUE);
+    this.id = builder.id != 0 ? builder.id : SnowflakeIdGenerator.LOCAL.nextHoldId();
+  }
+
+  private SeatHold(SeatHold original, List<Seat> holds) {
+    this.holds = holds;
+    this.heldAt = original.heldAt;
+    this.customerEmail = original.customerEmail;
+    this.id = original.id;
   }
 
   public static Builder newSeatHold() {
@@ -48,7 +57,27 @@ public class SeatHold {
     return customerEmail;
   }
 
+  /**
+   * Move this hold to other seats. The id, hold time and customer stay the same
+   *
+   * @param holds the new seats, all ON_HOLD
+   * @return the relocated hold
+   */
+  public SeatHold relocate(List<Seat> holds) {
+    return new SeatHold(this, new Builder().holds(holds).holds);
+  }
+
+  /**
+   * @param other another seat hold
+   * @return true if the other hold is this hold, possibly relocated to other seats
+   */
+  public boolean isSameHold(SeatHold other) {
+    return other != null && id == other.id && heldAt.equals(other.heldAt);
+  }
+
   public static final class Builder {
+    private int id;
+    private Date heldAt;
     private List<Seat> holds;
     private String customerEmail;
 
@@ -59,11 +88,30 @@ public class SeatHold {
       return new SeatHold(this);
     }
 
+    /**
+     * @param id id from the ticket service's {@link IdGenerator}. A local id is generated when not set
+     */
+    public Builder id(int id) {
+      isTrue(id > 0, "Id must be > 0");
+      this.id = id;
+      return this;
+    }
+
+    /**
+     * @param heldAt time of a hold that is being restored. Defaults to now
+     */
+    public Builder heldAt(Date heldAt) {
+      notNull(heldAt, "Held at cannot be null");
+      this.heldAt = heldAt;
+      return this;
+    }
+
     public Builder holds(List<Seat> holds) {
       notNull(holds, "Holds cannot be null");
       notEmpty(holds, "Holds cannot be empty");
       holds.stream()
-              .forEach(seat -> isTrue(seat.getStatus() == ReservedStatus.ON_HOLD, "Seat status should be set to ON_HOLD"));      this.holds = holds;
+              .forEach(seat -> isTrue(seat.getStatus() == ReservedStatus.ON_HOLD, "Seat status should be set to ON_HOLD"));
+      this.holds = SeatList.copyOf(holds);
       return this;
     }
 
@@ -80,7 +128,12 @@ public class SeatHold {
    */
   @Override
   public String toString() {
-    return String.format(DISPLAY_TEMPLATE, id, holds, Utils.formatDate(heldAt), customerEmail);
+    String display = this.display;
+    if (display == null) {
+      display = String.format(DISPLAY_TEMPLATE, id, holds, Utils.formatDate(heldAt), customerEmail);
+      this.display = display;
+    }
+    return display;
   }
 
 }
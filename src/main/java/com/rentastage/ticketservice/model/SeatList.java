@@ -0,0 +1,51 @@
+package com.rentastage.ticketservice.model;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Immutable list of seats kept as offsets into their store. Seats are created as they are read.
+ * Seats that do not share a store, such as seats created with the builder, are kept as they are.
+ */
+final class SeatList extends AbstractList<Seat> implements RandomAccess {
+
+  //null when the seats do not share a store
+  private final SeatStore store;
+
+  private final int[] offsets;
+
+  private final Seat[] seats;
+
+  private SeatList(SeatStore store, int[] offsets, Seat[] seats) {
+    this.store = store;
+    this.offsets = offsets;
+    this.seats = seats;
+  }
+
+  static SeatList copyOf(List<Seat> seats) {
+    if (seats instanceof SeatList) {
+      return (SeatList) seats;
+    }
+    SeatStore store = seats.get(0).getStore();
+    int[] offsets = new int[seats.size()];
+    for (int i = 0; i < offsets.length; i++) {
+      Seat seat = seats.get(i);
+      if (seat.getStore() != store) {
+        return new SeatList(null, null, seats.toArray(new Seat[0]));
+      }
+      offsets[i] = seat.getOffset();
+    }
+    return new SeatList(store, offsets, null);
+  }
+
+  @Override
+  public Seat get(int index) {
+    return store != null ? store.seat(offsets[index]) : seats[index];
+  }
+
+  @Override
+  public int size() {
+    return store != null ? offsets.length : seats.length;
+  }
+}
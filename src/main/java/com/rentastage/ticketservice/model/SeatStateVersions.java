@@ -0,0 +1,409 @@
+package com.rentastage.ticketservice.model;
+
+import org.springframework.util.Assert;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+/**
+ * Immutable, numbered versions of the seat state of a venue, so readers always see whole holds and never hold up
+ * a writer.
+ * <p>
+ * Writers wrap every change of several seats, such as claiming the seats of a hold, in {@link #beginWrite()} and
+ * {@link #endWrite()}. The last writer to finish publishes a new version with a single reference swap. A version
+ * is copied on write in pages of 2048 seats: only the pages that changed since the previous version are copied,
+ * the others are shared. A version is only published when no write overlapped the copy, otherwise the writer that
+ * overlapped publishes when it finishes, so a version always shows the seats between two writes.
+ * <p>
+ * Other processes change the seats of a shared store without a write of this process, so pages are copied from
+ * the statuses the store last told its listeners of. A version of a shared store shows the seats as of the last
+ * {@link Venue#syncSharedSeats()}, which reports the changes of other processes in a write, and agrees with its
+ * seat counts.
+ * <p>
+ * Writes are counted in padded stripes picked by thread, so writers on different cores do not share a cache line.
+ * When writes overlap for longer than the maximum lag, new writes wait at {@link #beginWrite()} until the running
+ * ones finished and a version was published, so readers are never more than about the maximum lag behind.
+ * <p>
+ * Readers announce the epoch of the version they read in one of a fixed number of padded slots, which costs no
+ * write to a line shared with writers. Pages and page tables replaced by a newer version are reused once no slot
+ * announces an epoch that can still see them, so once the pools are warm publishing a version only allocates the
+ * small version object.
+ */
+public class SeatStateVersions implements SeatStatusListener {
+  private static final ReservedStatus[] STATUSES = ReservedStatus.values();
+
+  private static final int SEATS_PER_WORD = 32;
+
+  //Status words of a page, 2048 seats
+  private static final int PAGE_WORDS = 64;
+
+  private static final int PAGE_SHIFT = 6;
+
+  //Longs between two counters or slots, so every one has a cache line of its own
+  private static final int PADDING = 16;
+
+  //Slot value of a reader slot that is free
+  private static final long IDLE = Long.MAX_VALUE;
+
+  private static final long DEFAULT_MAX_LAG_MILLIS = 10;
+
+  private final SeatStore seatStore;
+
+  private final SeatAvailabilityIndex availabilityIndex;
+
+  private final int words;
+
+  private final long maxLagNanos;
+
+  //Number of changes of every page, compared with the changes a version copied
+  private final AtomicIntegerArray pageChanges;
+
+  //Writes started and finished per stripe, started at stripe * PADDING * 2 and finished PADDING after it
+  private final AtomicLongArray writes;
+
+  private final int stripeMask;
+
+  //The stripe and write depth of every writing thread
+  private final ThreadLocal<Writer> writer;
+
+  //Closed when writes overlapped for longer than the maximum lag, until the next version is published
+  private volatile boolean gateClosed;
+
+  private volatile long publishedNanos = System.nanoTime();
+
+  private final AtomicBoolean publishing = new AtomicBoolean();
+
+  //Set by a writer that finished while another thread was publishing, so that thread publishes again
+  private final AtomicBoolean publishPending = new AtomicBoolean();
+
+  private final AtomicReference<SeatState> current = new AtomicReference<>();
+
+  //The epoch every reader reads, at slot * PADDING
+  private final AtomicLongArray readerSlots;
+
+  private final int readerSlotMask;
+
+  //Only used by the publishing thread
+  private final int[] copiedChanges;
+  private final int[] changedPages;
+  private final int[] changedPageChanges;
+  //Replaced versions, oldest first
+  private final ArrayDeque<SeatState> retired = new ArrayDeque<>();
+  private final ArrayDeque<long[]> freePages = new ArrayDeque<>();
+  private final ArrayDeque<long[][]> freeTables = new ArrayDeque<>();
+
+  /**
+   * @param seatStore the seats, all UNRESERVED
+   * @param availabilityIndex counts the seats by status
+   */
+  public SeatStateVersions(SeatStore seatStore, SeatAvailabilityIndex availabilityIndex) {
+    this(seatStore, availabilityIndex, DEFAULT_MAX_LAG_MILLIS);
+  }
+
+  /**
+   * @param seatStore the seats, all UNRESERVED
+   * @param availabilityIndex counts the seats by status
+   * @param maxLagMillis how long writes may overlap before new writes wait for a version to be published
+   */
+  public SeatStateVersions(SeatStore seatStore, SeatAvailabilityIndex availabilityIndex, long maxLagMillis) {
+    Assert.notNull(seatStore, "Seat store cannot be null");
+    Assert.notNull(availabilityIndex, "Availability index cannot be null");
+    Assert.isTrue(maxLagMillis > 0, "Max lag must be > 0");
+    this.seatStore = seatStore;
+    this.availabilityIndex = availabilityIndex;
+    this.maxLagNanos = TimeUnit.MILLISECONDS.toNanos(maxLagMillis);
+    this.words = (seatStore.size() + SEATS_PER_WORD - 1) / SEATS_PER_WORD;
+    int pages = (words + PAGE_WORDS - 1) / PAGE_WORDS;
+    this.pageChanges = new AtomicIntegerArray(pages);
+    this.copiedChanges = new int[pages];
+    this.changedPages = new int[pages];
+    this.changedPageChanges = new int[pages];
+    //A power of 2 of about twice the cores, so threads seldom share a stripe or wait for a reader slot
+    int stripes = Integer.highestOneBit(Math.max(4, Runtime.getRuntime().availableProcessors() * 2 - 1)) * 2;
+    this.writes = new AtomicLongArray(stripes * PADDING * 2);
+    this.stripeMask = stripes - 1;
+    this.writer = ThreadLocal.withInitial(() -> new Writer(mix(Thread.currentThread().getId()) & stripeMask));
+    this.readerSlots = new AtomicLongArray(stripes * PADDING);
+    this.readerSlotMask = stripes - 1;
+    for (int slot = 0; slot < stripes; slot++) {
+      readerSlots.set(slot * PADDING, IDLE);
+    }
+    long[][] table = new long[pages][];
+    for (int page = 0; page < pages; page++) {
+      table[page] = new long[PAGE_WORDS];
+    }
+    current.set(new SeatState(0, table, availabilityIndex));
+  }
+
+  @Override
+  public void onStatusChange(SeatStore store, int offset, ReservedStatus from, ReservedStatus to) {
+    pageChanges.incrementAndGet(offset / SEATS_PER_WORD >>> PAGE_SHIFT);
+  }
+
+  /**
+   * Start a change of one or more seats. Writes may overlap and nest. Waits while readers are too far behind and
+   * a version is about to be published, unless the thread is already writing
+   */
+  public void beginWrite() {
+    Writer threadWriter = writer.get();
+    if (threadWriter.depth++ == 0) {
+      while (gateClosed) {
+        Thread.yield();
+      }
+    }
+    writes.incrementAndGet(threadWriter.stripe * PADDING * 2);
+  }
+
+  /**
+   * Finish a change started with {@link #beginWrite()}, and publish a new version when no other write is running
+   */
+  public void endWrite() {
+    Writer threadWriter = writer.get();
+    Assert.state(threadWriter.depth > 0, "No write was started");
+    threadWriter.depth--;
+    writes.incrementAndGet(threadWriter.stripe * PADDING * 2 + PADDING);
+    if (writesStarted(true) >= 0) {
+      publish();
+    } else if (!gateClosed && System.nanoTime() - publishedNanos > maxLagNanos) {
+      //Writes kept overlapping, let the running ones finish so the next version can be published
+      gateClosed = true;
+      if (writesStarted(true) >= 0) {
+        publish();
+      }
+    }
+  }
+
+  /**
+   * @return the number of seats in the status in the latest version, read without waiting
+   */
+  public int count(ReservedStatus status) {
+    return current.get().count(status);
+  }
+
+  /**
+   * @return the epoch of the latest version, it goes up by one with every version
+   */
+  public long getEpoch() {
+    return current.get().epoch;
+  }
+
+  /**
+   * Read the latest version. The version stays unchanged while the reader runs, but must not be used after it
+   * returns
+   *
+   * @param reader reads the version
+   * @return the result of the reader
+   */
+  public <T> T read(Function<SeatState, T> reader) {
+    SeatState state = current.get();
+    int slot = acquireReaderSlot(state.epoch);
+    //The version may have been replaced before the slot announced it, its pages could then be reused already
+    SeatState latest;
+    while ((latest = current.get()) != state) {
+      state = latest;
+      readerSlots.set(slot, state.epoch);
+    }
+    try {
+      return reader.apply(state);
+    } finally {
+      readerSlots.set(slot, IDLE);
+    }
+  }
+
+  /**
+   * Claim a free reader slot, starting from the one of the thread's stripe
+   *
+   * @return the index of the slot
+   */
+  private int acquireReaderSlot(long epoch) {
+    int start = writer.get().stripe;
+    while (true) {
+      for (int i = 0; i <= readerSlotMask; i++) {
+        int slot = ((start + i) & readerSlotMask) * PADDING;
+        if (readerSlots.get(slot) == IDLE && readerSlots.compareAndSet(slot, IDLE, epoch)) {
+          return slot;
+        }
+      }
+      //More readers than slots, wait for one to finish
+      Thread.yield();
+    }
+  }
+
+  /**
+   * Sum the writes over the stripes. Finished writes are summed before started writes, so when the sums are equal
+   * there was a moment during the call when no write was running
+   *
+   * @param quietOnly return -1 instead of the sum when a write was running
+   * @return the number of writes started
+   */
+  private long writesStarted(boolean quietOnly) {
+    long finished = 0;
+    for (int stripe = 0; stripe <= stripeMask; stripe++) {
+      finished += writes.get(stripe * PADDING * 2 + PADDING);
+    }
+    long started = 0;
+    for (int stripe = 0; stripe <= stripeMask; stripe++) {
+      started += writes.get(stripe * PADDING * 2);
+    }
+    return quietOnly && started != finished ? -1 : started;
+  }
+
+  private void publish() {
+    publishPending.set(true);
+    while (publishPending.get() && publishing.compareAndSet(false, true)) {
+      try {
+        publishPending.set(false);
+        publishIfQuiet();
+      } finally {
+        publishing.set(false);
+      }
+    }
+  }
+
+  /**
+   * Copy the pages that changed into a new version, unless a write runs before the copy is done
+   */
+  private void publishIfQuiet() {
+    long started = writesStarted(true);
+    if (started < 0) {
+      return;
+    }
+    int changed = 0;
+    for (int page = 0; page < copiedChanges.length; page++) {
+      if (pageChanges.get(page) != copiedChanges[page]) {
+        changedPages[changed++] = page;
+      }
+    }
+    if (changed == 0) {
+      published();
+      return;
+    }
+    reclaim();
+    SeatState previous = current.get();
+    long[][] table = freeTables.isEmpty() ? new long[copiedChanges.length][] : freeTables.poll();
+    System.arraycopy(previous.table, 0, table, 0, table.length);
+    for (int i = 0; i < changed; i++) {
+      int page = changedPages[i];
+      //Read before the copy, a change made during the copy is picked up by the next version
+      changedPageChanges[i] = pageChanges.get(page);
+      long[] copy = freePages.isEmpty() ? new long[PAGE_WORDS] : freePages.poll();
+      int from = page << PAGE_SHIFT;
+      for (int word = from; word < Math.min(from + PAGE_WORDS, words); word++) {
+        //Not the live word, a shared store may have changes of other processes the counts do not have yet
+        copy[word - from] = seatStore.getNotifiedStatusWord(word);
+      }
+      table[page] = copy;
+    }
+    SeatState state = new SeatState(previous.epoch + 1, table, availabilityIndex);
+    if (writesStarted(false) != started) {
+      //A write overlapped the copy and publishes when it finishes
+      for (int i = 0; i < changed; i++) {
+        freePages.add(table[changedPages[i]]);
+      }
+      freeTables.add(table);
+      return;
+    }
+    for (int i = 0; i < changed; i++) {
+      copiedChanges[changedPages[i]] = changedPageChanges[i];
+    }
+    current.set(state);
+    retired.add(previous);
+    published();
+  }
+
+  private void published() {
+    publishedNanos = System.nanoTime();
+    if (gateClosed) {
+      gateClosed = false;
+    }
+  }
+
+  /**
+   * Put the pages and page tables of replaced versions that no reader can still see back in the pools. A version
+   * can no longer be read once every slot is idle or announces a later epoch
+   */
+  private void reclaim() {
+    long oldestRead = IDLE;
+    for (int slot = 0; slot <= readerSlotMask; slot++) {
+      oldestRead = Math.min(oldestRead, readerSlots.get(slot * PADDING));
+    }
+    while (!retired.isEmpty() && retired.peek().epoch < oldestRead) {
+      SeatState version = retired.poll();
+      SeatState next = retired.isEmpty() ? current.get() : retired.peek();
+      //Pages the next version shares are still in use
+      for (int page = 0; page < version.table.length; page++) {
+        if (version.table[page] != next.table[page]) {
+          freePages.add(version.table[page]);
+        }
+      }
+      freeTables.add(version.table);
+    }
+  }
+
+  //Spreads thread ids, which are handed out in sequence, over the stripes
+  private static int mix(long id) {
+    long h = id * 0x9E3779B97F4A7C15L;
+    return (int) (h ^ (h >>> 32));
+  }
+
+  /**
+   * One version of the seat state. Never changes while it can be read
+   */
+  public static final class SeatState {
+    private final long epoch;
+
+    private final long[][] table;
+
+    private final int[] counts = new int[STATUSES.length];
+
+    private SeatState(long epoch, long[][] table, SeatAvailabilityIndex availabilityIndex) {
+      this.epoch = epoch;
+      this.table = table;
+      for (ReservedStatus status : STATUSES) {
+        counts[status.ordinal()] = availabilityIndex.count(status);
+      }
+    }
+
+    public long getEpoch() {
+      return epoch;
+    }
+
+    public int count(ReservedStatus status) {
+      return counts[status.ordinal()];
+    }
+
+    public ReservedStatus getStatus(int offset) {
+      int word = offset / SEATS_PER_WORD;
+      return STATUSES[(int) (table[word >>> PAGE_SHIFT][word & (PAGE_WORDS - 1)] >>> (offset % SEATS_PER_WORD * 2)) & 3];
+    }
+
+    /**
+     * @return the status words of the version, in the layout of {@link SeatStore#copyStatusWords()}
+     */
+    public long[] copyStatusWords(int size) {
+      long[] words = new long[(size + SEATS_PER_WORD - 1) / SEATS_PER_WORD];
+      for (int word = 0; word < words.length; word += PAGE_WORDS) {
+        System.arraycopy(table[word >>> PAGE_SHIFT], 0, words, word, Math.min(PAGE_WORDS, words.length - word));
+      }
+      return words;
+    }
+  }
+
+  /**
+   * The stripe a thread counts its writes in, and how deep it is in nested writes
+   */
+  private static final class Writer {
+    final int stripe;
+
+    int depth;
+
+    Writer(int stripe) {
+      this.stripe = stripe;
+    }
+  }
+}
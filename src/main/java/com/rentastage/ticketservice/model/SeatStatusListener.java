@@ -0,0 +1,17 @@
+package com.rentastage.ticketservice.model;
+
+/**
+ * Receives notifications when the status of a seat changes
+ */
+public interface SeatStatusListener {
+
+  /**
+   * Called after the status of a seat has been changed
+   *
+   * @param store the store holding the seat
+   * @param offset the offset of the seat in the store
+   * @param from the previous status
+   * @param to the new status
+   */
+  void onStatusChange(SeatStore store, int offset, ReservedStatus from, ReservedStatus to);
+}
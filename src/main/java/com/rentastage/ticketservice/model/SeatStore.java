@@ -0,0 +1,320 @@
+package com.rentastage.ticketservice.model;
+
+import org.springframework.util.Assert;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Packed storage for the seats of a venue.
+ * <p>
+ * A seat is identified by its offset, {@code row * seatsPerRow + col}. The status of every seat is kept in 2 bits
+ * of a long array, 32 seats to a word, and changed with a compare and set on the word. Row names are shared by
+ * all seats of a row and seat numbers are derived from the column, so the store needs well under a byte per
+ * seat. {@link Seat} objects are lightweight views created on demand.
+ * <p>
+ * The words are kept on the heap, or in a file mapped by several processes (see {@link MappedStatusWords}). Seats
+ * of a shared store also change in the other processes, so the listener is only told of those changes when
+ * {@link #syncSharedChanges()} runs. The store remembers the status the listener was last told of for every seat,
+ * so every change is reported once, whether this process made it or not.
+ */
+public class SeatStore {
+  private static final ReservedStatus[] STATUSES = ReservedStatus.values();
+
+  private static final int SEATS_PER_WORD = 32;
+
+  private static final long STATUS_MASK = 3L;
+
+  private final String[] rowNames;
+
+  private final int seatsPerRow;
+
+  //Number of the first seat in every row
+  private final int firstNumber;
+
+  private final int size;
+
+  private final StatusWords statusWords;
+
+  //Status of every seat as the listener was last told, only kept for a shared store
+  private final AtomicLongArray notifiedWords;
+
+  //Notified on every status transition, may be null
+  private final SeatStatusListener listener;
+
+  /**
+   * Create a store where all seats are UNRESERVED
+   *
+   * @param rowNames the name of every row
+   * @param seatsPerRow number of seats in each row
+   * @param listener listener notified on every status transition
+   */
+  public SeatStore(String[] rowNames, int seatsPerRow, SeatStatusListener listener) {
+    this(rowNames, seatsPerRow, 1, null, listener);
+  }
+
+  /**
+   * Create a store on the given status words
+   *
+   * @param rowNames the name of every row
+   * @param seatsPerRow number of seats in each row
+   * @param statusWords the status words, all seats UNRESERVED unless they are shared
+   * @param listener listener notified on every status transition
+   */
+  public SeatStore(String[] rowNames, int seatsPerRow, StatusWords statusWords, SeatStatusListener listener) {
+    this(rowNames, seatsPerRow, 1, statusWords, listener);
+  }
+
+  SeatStore(String[] rowNames, int seatsPerRow, int firstNumber, SeatStatusListener listener) {
+    this(rowNames, seatsPerRow, firstNumber, null, listener);
+  }
+
+  private SeatStore(String[] rowNames, int seatsPerRow, int firstNumber, StatusWords statusWords,
+                    SeatStatusListener listener) {
+    Assert.notEmpty(rowNames, "Row names cannot be empty");
+    Assert.state(seatsPerRow > 0, "Number of seats per row must be > 0");
+    this.rowNames = rowNames.clone();
+    this.seatsPerRow = seatsPerRow;
+    this.firstNumber = firstNumber;
+    this.size = rowNames.length * seatsPerRow;
+    int words = (size + SEATS_PER_WORD - 1) / SEATS_PER_WORD;
+    //UNRESERVED is 0, so new words have all seats free
+    this.statusWords = statusWords == null ? StatusWords.onHeap(words) : statusWords;
+    Assert.state(this.statusWords.length() == words, "Status words do not match the number of seats");
+    //The listener starts out with all seats UNRESERVED
+    this.notifiedWords = this.statusWords.isShared() ? new AtomicLongArray(words) : null;
+    this.listener = listener;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  /**
+   * @return true when other processes change the seats too
+   */
+  public boolean isShared() {
+    return notifiedWords != null;
+  }
+
+  public int getNoOfRows() {
+    return rowNames.length;
+  }
+
+  public int getSeatsPerRow() {
+    return seatsPerRow;
+  }
+
+  public String getRowName(int row) {
+    return rowNames[row];
+  }
+
+  public int row(int offset) {
+    return offset / seatsPerRow;
+  }
+
+  public int col(int offset) {
+    return offset % seatsPerRow;
+  }
+
+  public int offset(int row, int col) {
+    return row * seatsPerRow + col;
+  }
+
+  /**
+   * @param offset the seat offset
+   * @return the seat number shown to customers
+   */
+  public int number(int offset) {
+    return col(offset) + firstNumber;
+  }
+
+  /**
+   * @param offset the seat offset
+   * @return a view of the seat
+   */
+  public Seat seat(int offset) {
+    Assert.state(offset >= 0 && offset < size, "Seat offset out of range");
+    return new Seat(this, offset);
+  }
+
+  /**
+   * @return all seats in venue order. Seats are created as they are read
+   */
+  public List<Seat> asList() {
+    return new SeatViews();
+  }
+
+  /**
+   * Copy the packed status of every seat, 32 seats to a word with the first seat in the lowest 2 bits. Every word
+   * is read atomically, but seats in different words may be read at different times
+   *
+   * @return the status words in seat order
+   */
+  public long[] copyStatusWords() {
+    long[] words = new long[statusWords.length()];
+    for (int i = 0; i < words.length; i++) {
+      words[i] = statusWords.get(i);
+    }
+    return words;
+  }
+
+  /**
+   * @param index the index of a status word, see {@link #copyStatusWords()}
+   * @return the status of the 32 seats of the word
+   */
+  public long getStatusWord(int index) {
+    return statusWords.get(index);
+  }
+
+  /**
+   * @param index the index of a status word, see {@link #copyStatusWords()}
+   * @return the status of the 32 seats of the word as the listener was last told. For a store that is not shared
+   * this is the status word, a shared store does not tell of the changes of other processes until it syncs
+   */
+  public long getNotifiedStatusWord(int index) {
+    return notifiedWords != null ? notifiedWords.get(index) : statusWords.get(index);
+  }
+
+  public ReservedStatus getStatus(int offset) {
+    return decode(statusWords.get(offset / SEATS_PER_WORD), offset);
+  }
+
+  /**
+   * Change the status of a seat
+   *
+   * @return the previous status
+   */
+  public ReservedStatus getAndSetStatus(int offset, ReservedStatus status) {
+    int wordIndex = offset / SEATS_PER_WORD;
+    long current;
+    ReservedStatus previous;
+    do {
+      current = statusWords.get(wordIndex);
+      previous = decode(current, offset);
+      if (previous == ReservedStatus.ON_HOLD && status != ReservedStatus.ON_HOLD) {
+        statusWords.releasing(offset);
+      }
+    } while (previous != status && !statusWords.compareAndSet(wordIndex, current, encode(current, offset, status)));
+    if (previous != status) {
+      if (status == ReservedStatus.ON_HOLD) {
+        statusWords.held(offset);
+      }
+      notifyChange(offset, previous, status);
+    }
+    return previous;
+  }
+
+  /**
+   * Change the status of a seat if it is still in the expected status
+   *
+   * @return true if the status was changed
+   */
+  public boolean compareAndSetStatus(int offset, ReservedStatus expected, ReservedStatus status) {
+    int wordIndex = offset / SEATS_PER_WORD;
+    long current;
+    do {
+      current = statusWords.get(wordIndex);
+      if (decode(current, offset) != expected) {
+        return false;
+      }
+      if (expected == ReservedStatus.ON_HOLD && status != ReservedStatus.ON_HOLD) {
+        statusWords.releasing(offset);
+      }
+      //retry when another seat in the same word changed
+    } while (expected != status && !statusWords.compareAndSet(wordIndex, current, encode(current, offset, status)));
+    if (expected != status) {
+      if (status == ReservedStatus.ON_HOLD) {
+        statusWords.held(offset);
+      }
+      notifyChange(offset, expected, status);
+    }
+    return true;
+  }
+
+  /**
+   * Tell the listener of the seats other processes changed since the last sync, after releasing the seats held by
+   * processes that have died. Does nothing for a store that is not shared
+   *
+   * @return the number of seat changes reported
+   */
+  public int syncSharedChanges() {
+    if (notifiedWords == null) {
+      return 0;
+    }
+    statusWords.releaseAbandonedHolds();
+    int changes = 0;
+    for (int wordIndex = 0; wordIndex < notifiedWords.length(); wordIndex++) {
+      long changedBits = notifiedWords.get(wordIndex) ^ statusWords.get(wordIndex);
+      while (changedBits != 0) {
+        int shift = Long.numberOfTrailingZeros(changedBits) & ~1;
+        changedBits &= ~(STATUS_MASK << shift);
+        int offset = wordIndex * SEATS_PER_WORD + shift / 2;
+        //Read before the seat, so a change this process made and reported meanwhile is not reported backwards
+        ReservedStatus from = decode(notifiedWords.get(wordIndex), offset);
+        ReservedStatus to = decode(statusWords.get(wordIndex), offset);
+        if (from != to && markNotified(offset, from, to)) {
+          if (listener != null) {
+            listener.onStatusChange(this, offset, from, to);
+          }
+          changes++;
+        }
+      }
+    }
+    return changes;
+  }
+
+  private void notifyChange(int offset, ReservedStatus from, ReservedStatus to) {
+    //A sync may have reported the change already, together with later changes of the seat
+    if (notifiedWords != null && !markNotified(offset, from, to)) {
+      return;
+    }
+    if (listener != null) {
+      listener.onStatusChange(this, offset, from, to);
+    }
+  }
+
+  /**
+   * Record that the listener is told of a change of a seat, unless it was last told of another status
+   *
+   * @return true if the listener is to be told
+   */
+  private boolean markNotified(int offset, ReservedStatus from, ReservedStatus to) {
+    int wordIndex = offset / SEATS_PER_WORD;
+    long current;
+    do {
+      current = notifiedWords.get(wordIndex);
+      if (decode(current, offset) != from) {
+        return false;
+      }
+    } while (!notifiedWords.compareAndSet(wordIndex, current, encode(current, offset, to)));
+    return true;
+  }
+
+  private static int shift(int offset) {
+    return (offset % SEATS_PER_WORD) * 2;
+  }
+
+  private static ReservedStatus decode(long word, int offset) {
+    return STATUSES[(int) ((word >>> shift(offset)) & STATUS_MASK)];
+  }
+
+  private static long encode(long word, int offset, ReservedStatus status) {
+    int shift = shift(offset);
+    return (word & ~(STATUS_MASK << shift)) | ((long) status.ordinal() << shift);
+  }
+
+  private final class SeatViews extends AbstractList<Seat> implements RandomAccess {
+    @Override
+    public Seat get(int index) {
+      return seat(index);
+    }
+
+    @Override
+    public int size() {
+      return size;
+    }
+  }
+}
@@ -0,0 +1,117 @@
+package com.rentastage.ticketservice.model;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.Assert;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Snowflake style id generator. Every process is given its own node id, so processes never hand out the same
+ * id and need no coordination.
+ * <p>
+ * A reservation id is made of 41 bits of milliseconds since 2024-01-01, 5 bits of node id and a 17 bit sequence
+ * within the millisecond. Ids only ever increase: when the sequence of a millisecond runs out, or the clock goes
+ * back, the next id borrows from the following millisecond.
+ * <p>
+ * A seat hold id has to fit a positive int, so it is made of 5 bits of node id and a 26 bit sequence. The
+ * sequence starts from the number of seconds since 2024-01-01 so that a restarted process does not reuse recent
+ * ids. Holds expire within minutes, so the sequence wrapping around after 67 million holds is harmless.
+ * <p>
+ * Both are lock free and allocation free.
+ */
+@Component
+public class SnowflakeIdGenerator implements IdGenerator {
+
+  public static final int MAX_NODE_ID = 31;
+
+  //Used when no generator is given, e.g. for holds and reservations built in tests
+  public static final SnowflakeIdGenerator LOCAL = new SnowflakeIdGenerator(0);
+
+  static final long EPOCH_MILLIS = 1704067200000L;
+
+  private static final int NODE_BITS = 5;
+
+  private static final int SEQUENCE_BITS = 17;
+
+  private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+
+  private static final int HOLD_SEQUENCE_BITS = 31 - NODE_BITS;
+
+  private static final int HOLD_SEQUENCE_MASK = (1 << HOLD_SEQUENCE_BITS) - 1;
+
+  private final int nodeId;
+
+  private final LongSupplier clock;
+
+  //Last reservation id without the node id: milliseconds since the epoch and sequence
+  private final AtomicLong lastReservation = new AtomicLong();
+
+  private final AtomicInteger holdSequence;
+
+  @Autowired
+  public SnowflakeIdGenerator(@Value("${ts.nodeId:0}") int nodeId) {
+    this(nodeId, System::currentTimeMillis);
+  }
+
+  SnowflakeIdGenerator(int nodeId, LongSupplier clock) {
+    Assert.state(nodeId >= 0 && nodeId <= MAX_NODE_ID, "Node id must be between 0 and " + MAX_NODE_ID);
+    this.nodeId = nodeId;
+    this.clock = clock;
+    this.holdSequence = new AtomicInteger((int) TimeUnit.MILLISECONDS.toSeconds(clock.getAsLong() - EPOCH_MILLIS));
+  }
+
+  public int getNodeId() {
+    return nodeId;
+  }
+
+  @Override
+  public int nextHoldId() {
+    int id;
+    do {
+      id = (nodeId << HOLD_SEQUENCE_BITS) | (holdSequence.incrementAndGet() & HOLD_SEQUENCE_MASK);
+      //0 is not a valid id, it only comes up on node 0 when the sequence wraps around
+    } while (id == 0);
+    return id;
+  }
+
+  @Override
+  public long nextReservationId() {
+    long now = (clock.getAsLong() - EPOCH_MILLIS) << SEQUENCE_BITS;
+    long last;
+    long next;
+    do {
+      last = lastReservation.get();
+      next = Math.max(last + 1, now);
+    } while (!lastReservation.compareAndSet(last, next));
+    return ((next >>> SEQUENCE_BITS) << (NODE_BITS + SEQUENCE_BITS)) | ((long) nodeId << SEQUENCE_BITS) | (next & SEQUENCE_MASK);
+  }
+
+  /**
+   * Ids of this node that were handed out before a restart move the sequences past them
+   */
+  @Override
+  public void restored(int seatHoldId, long reservationId) {
+    if (seatHoldId >>> HOLD_SEQUENCE_BITS == nodeId) {
+      int sequence = seatHoldId & HOLD_SEQUENCE_MASK;
+      holdSequence.accumulateAndGet(sequence, (current, restored) ->
+          ((current & HOLD_SEQUENCE_MASK) < restored) ? restored : current);
+    }
+    if (reservationId > 0 && nodeOf(reservationId) == nodeId) {
+      long restored = ((reservationId >>> (NODE_BITS + SEQUENCE_BITS)) << SEQUENCE_BITS) | (reservationId & SEQUENCE_MASK);
+      lastReservation.accumulateAndGet(restored, Math::max);
+    }
+  }
+
+  /**
+   * @param reservationId a reservation id
+   * @return the node that generated the id
+   */
+  public static int nodeOf(long reservationId) {
+    return (int) ((reservationId >>> SEQUENCE_BITS) & MAX_NODE_ID);
+  }
+}
@@ -0,0 +1,71 @@
+package com.rentastage.ticketservice.model;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The packed status words of a {@link SeatStore}, 32 seats to a word, changed only with a compare and set
+ */
+public interface StatusWords {
+
+  int length();
+
+  long get(int index);
+
+  boolean compareAndSet(int index, long expected, long word);
+
+  /**
+   * @return true when other processes change the words too, so the store must look for changes it did not make
+   */
+  default boolean isShared() {
+    return false;
+  }
+
+  /**
+   * Record that this process holds the seat, called once the seat was set ON_HOLD
+   *
+   * @param seat the seat offset
+   */
+  default void held(int seat) {
+  }
+
+  /**
+   * Record that this process lets go of its hold of the seat, called before the seat leaves ON_HOLD
+   *
+   * @param seat the seat offset
+   */
+  default void releasing(int seat) {
+  }
+
+  /**
+   * Set the seats held by processes that have died back to UNRESERVED
+   *
+   * @return the number of seats released
+   */
+  default int releaseAbandonedHolds() {
+    return 0;
+  }
+
+  /**
+   * @param length number of words
+   * @return words on the heap of this process, all 0
+   */
+  static StatusWords onHeap(int length) {
+    AtomicLongArray words = new AtomicLongArray(length);
+    return new StatusWords() {
+      @Override
+      public int length() {
+        return words.length();
+      }
+
+      @Override
+      public long get(int index) {
+        return words.get(index);
+      }
+
+      @Override
+      public boolean compareAndSet(int index, long expected, long word) {
+        return words.compareAndSet(index, expected, word);
+      }
+    };
+  }
+}
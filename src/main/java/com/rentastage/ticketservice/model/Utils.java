@@ -2,14 +2,42 @@ package com.rentastage.ticketservice.model;
 
 import org.springframework.util.Assert;
 
-import java.text.SimpleDateFormat;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 import java.util.Date;
 
 
 class Utils {
+  //Crockford's base 32 alphabet, leaves out I, L, O and U so codes are easy to read out and type
+  private static final char[] CODE_ALPHABET = "0123456789ABCDEFGHJKMNPQRSTVWXYZ".toCharArray();
+
+  //Immutable and thread safe, unlike SimpleDateFormat, so one instance is shared by every call
+  private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("MM/dd/yy hh:mm")
+      .withZone(ZoneId.systemDefault());
+
   public static String formatDate(Date date){
     Assert.notNull(date, "Date cannot be null");
-    SimpleDateFormat simpleDateFormat = new SimpleDateFormat("MM/dd/yy hh:mm");
-    return simpleDateFormat.format(date);
+    return DATE_FORMAT.format(date.toInstant());
+  }
+
+  /**
+   * Render a reservation id as a confirmation code, 13 base 32 characters in groups of 4, 4 and 5
+   *
+   * @param id a positive reservation id
+   * @return the confirmation code, e.g. 01J2-ZQ4M-3K7TD
+   */
+  public static String confirmationCode(long id) {
+    Assert.state(id >= 0, "Id cannot be negative");
+    char[] code = new char[15];
+    long remaining = id;
+    for (int i = code.length - 1; i >= 0; i--) {
+      if (i == 4 || i == 9) {
+        code[i] = '-';
+      } else {
+        code[i] = CODE_ALPHABET[(int) (remaining & 31)];
+        remaining >>>= 5;
+      }
+    }
+    return new String(code);
   }
 }
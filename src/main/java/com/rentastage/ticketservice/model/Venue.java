@@ -1,7 +1,13 @@
 package com.rentastage.ticketservice.model;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
+import org.springframework.util.Assert;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
 
 /**
  * Tickets are being reserved for an event at this Venue
@@ -9,43 +15,96 @@ import org.springframework.stereotype.Component;
  */
 @Component
 public class Venue {
-  //TODO: Make the following configurable
+  private final int noOfRows;
+
+  private final int noOfSeatsPerRow;
+
+  private final SeatStore seatStore;
+
+  private final SeatAvailabilityIndex availabilityIndex;
 
-  @Value("${ts.noOfRows ?: 10}")
-  private int noOfRows = 10;
+  private final FreeRunIndex freeRunIndex;
 
-  @Value("${ts.noOfSeatsPerRow ?: 34}")
-  private int noOfSeatsPerRow = 34;
+  private final RowVersions rowVersions;
 
-  private final Seat[][] seatLayout;
+  private final SeatStateVersions seatStateVersions;
+
+  //Listeners added once the venue exists, such as change feeds. Replaced on every add, read on every status change
+  private volatile SeatStatusListener[] statusListeners = new SeatStatusListener[0];
 
   public Venue() {
-    this.seatLayout = createSeatLayout(noOfRows, noOfSeatsPerRow);
+    this(10, 34);
   }
 
   /**
-   * Create seat layout of rows and seats. Row names are alphabetized
+   * Create the venue of the application, with its seats in a file shared with other processes when ts.seatStore.file
+   * is set
    *
-   * @param noOfRows
-   * @param noOfSeatsPerRow
-   * @return seat layout, a 2d array of seats
+   * @param noOfRows number of rows
+   * @param noOfSeatsPerRow number of seats in each row
+   * @param seatStoreFile the shared file, or empty to keep the seats on the heap
    */
-  static Seat[][] createSeatLayout(int noOfRows, int noOfSeatsPerRow) {
-    Seat[][] tmpLayout = new Seat[noOfRows][noOfSeatsPerRow];
+  @Autowired
+  public Venue(@Value("${ts.noOfRows:10}") int noOfRows, @Value("${ts.noOfSeatsPerRow:34}") int noOfSeatsPerRow,
+               @Value("${ts.seatStore.file:}") String seatStoreFile) {
+    this(noOfRows, noOfSeatsPerRow, seatStoreFile.isEmpty() ? null : Paths.get(seatStoreFile));
+  }
 
-    //Create and initialize the seatLayout
+  /**
+   * Create a venue with the given dimensions
+   *
+   * @param noOfRows number of rows
+   * @param noOfSeatsPerRow number of seats in each row
+   */
+  public Venue(int noOfRows, int noOfSeatsPerRow) {
+    this(noOfRows, noOfSeatsPerRow, (Path) null);
+  }
+
+  /**
+   * Create a venue with the given dimensions, with the status of its seats kept in a file that other processes
+   * selling the same venue map too. The seats already held or reserved in the file are loaded into the indexes
+   *
+   * @param noOfRows number of rows
+   * @param noOfSeatsPerRow number of seats in each row
+   * @param seatStoreFile the shared file, created if needed, or null to keep the seats on the heap
+   */
+  public Venue(int noOfRows, int noOfSeatsPerRow, Path seatStoreFile) {
+    Assert.state(noOfRows > 0, "Number of rows must be > 0");
+    Assert.state(noOfSeatsPerRow > 0, "Number of seats per row must be > 0");
+    this.noOfRows = noOfRows;
+    this.noOfSeatsPerRow = noOfSeatsPerRow;
+    this.availabilityIndex = new SeatAvailabilityIndex(noOfRows * noOfSeatsPerRow);
+    this.freeRunIndex = new FreeRunIndex(noOfRows, noOfSeatsPerRow);
+    this.rowVersions = new RowVersions(noOfRows, noOfSeatsPerRow);
+    StatusWords statusWords = seatStoreFile == null ? null
+        : MappedStatusWords.open(seatStoreFile, noOfRows, noOfSeatsPerRow);
+    this.seatStore = new SeatStore(createRowNames(noOfRows), noOfSeatsPerRow, statusWords, (store, offset, from, to) -> {
+      availabilityIndex.onStatusChange(store, offset, from, to);
+      freeRunIndex.onStatusChange(store, offset, from, to);
+      rowVersions.onStatusChange(store, offset, from, to);
+      for (SeatStatusListener listener : statusListeners) {
+        listener.onStatusChange(store, offset, from, to);
+      }
+    });
+    this.seatStateVersions = new SeatStateVersions(seatStore, availabilityIndex);
+    addStatusListener(seatStateVersions);
+    syncSharedSeats();
+  }
+
+  /**
+   * Create the row names. Row names are alphabetized
+   *
+   * @param noOfRows
+   * @return the name of every row
+   */
+  static String[] createRowNames(int noOfRows) {
+    String[] rowNames = new String[noOfRows];
     //Limitations: Rows are limited to ascii character range, need a better row generator scheme
     char rowName = 'A';
-
     for (int rowIndex = 0; rowIndex < noOfRows; rowIndex++, rowName++) {
-      for (int colIndex = 0; colIndex < noOfSeatsPerRow; colIndex++) {
-        tmpLayout[rowIndex][colIndex] = Seat.newSeat()
-            .rowName(String.valueOf(rowName))
-            .number(colIndex + 1)
-            .build();
-      }
+      rowNames[rowIndex] = String.valueOf(rowName);
     }
-    return tmpLayout;
+    return rowNames;
   }
 
   public int getNoOfRows() {
@@ -56,7 +115,70 @@ public class Venue {
     return noOfSeatsPerRow;
   }
 
+  /**
+   * Seats are created as views of the seat store on every call, use {@link #getSeatStore()} on hot paths
+   *
+   * @return seat layout, a 2d array of seats
+   */
   public Seat[][] getSeatLayout() {
+    Seat[][] seatLayout = new Seat[noOfRows][noOfSeatsPerRow];
+    for (int rowIndex = 0; rowIndex < noOfRows; rowIndex++) {
+      for (int colIndex = 0; colIndex < noOfSeatsPerRow; colIndex++) {
+        seatLayout[rowIndex][colIndex] = seatStore.seat(seatStore.offset(rowIndex, colIndex));
+      }
+    }
     return seatLayout;
   }
+
+  public SeatStore getSeatStore() {
+    return seatStore;
+  }
+
+  public SeatAvailabilityIndex getAvailabilityIndex() {
+    return availabilityIndex;
+  }
+
+  public FreeRunIndex getFreeRunIndex() {
+    return freeRunIndex;
+  }
+
+  public RowVersions getRowVersions() {
+    return rowVersions;
+  }
+
+  /**
+   * @return consistent versions of the seat state, for readers that must not see a hold half made
+   */
+  public SeatStateVersions getSeatStateVersions() {
+    return seatStateVersions;
+  }
+
+  /**
+   * Bring the indexes up to date with the seats other processes changed in a shared seat store
+   *
+   * @return the number of seat changes found
+   */
+  public int syncSharedSeats() {
+    if (!seatStore.isShared()) {
+      return 0;
+    }
+    seatStateVersions.beginWrite();
+    try {
+      return seatStore.syncSharedChanges();
+    } finally {
+      seatStateVersions.endWrite();
+    }
+  }
+
+  /**
+   * Notify a listener of every status change from now on, after the indexes of the venue were updated
+   *
+   * @param listener the listener to add
+   */
+  public synchronized void addStatusListener(SeatStatusListener listener) {
+    Assert.notNull(listener, "Listener cannot be null");
+    SeatStatusListener[] listeners = Arrays.copyOf(statusListeners, statusListeners.length + 1);
+    listeners[listeners.length - 1] = listener;
+    statusListeners = listeners;
+  }
 }
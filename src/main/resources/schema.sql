@@ -0,0 +1,16 @@
+CREATE TABLE IF NOT EXISTS reservation (
+  id BIGINT PRIMARY KEY,
+  -- 0 for the venue of the ticket service, the event id for catalog events
+  event_id INT NOT NULL,
+  confirmation_code VARCHAR(15) NOT NULL,
+  customer_email VARCHAR(255) NOT NULL,
+  reserved_at TIMESTAMP NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS reserved_seat (
+  reservation_id BIGINT NOT NULL,
+  seat_offset INT NOT NULL,
+  row_name VARCHAR(8) NOT NULL,
+  seat_number INT NOT NULL,
+  PRIMARY KEY (reservation_id, seat_offset)
+);
@@ -0,0 +1,161 @@
+package com.rentastage.ticketservice;
+
+import com.rentastage.ticketservice.model.HoldRequest;
+import com.rentastage.ticketservice.model.HoldResult;
+import com.rentastage.ticketservice.model.SeatHold;
+import com.rentastage.ticketservice.model.Venue;
+import org.junit.After;
+import org.junit.Test;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class AsyncTicketServiceTest {
+
+  Venue venue = new Venue();
+
+  int noOfSeats = venue.getNoOfRows() * venue.getNoOfSeatsPerRow();
+
+  CountDownLatch release = new CountDownLatch(1);
+
+  AtomicInteger calls = new AtomicInteger();
+
+  //Blocks every call until released, so requests pile up behind the workers
+  TicketService blocked = new TicketService() {
+    @Override
+    public int numSeatsAvailable() {
+      return await(noOfSeats);
+    }
+
+    @Override
+    public SeatHold findAndHoldSeats(int numSeats, String customerEmail) {
+      await(0);
+      return null;
+    }
+
+    @Override
+    public String reserveSeats(int seatHoldId, String customerEmail) {
+      return null;
+    }
+
+    private int await(int value) {
+      calls.incrementAndGet();
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      return value;
+    }
+  };
+
+  AsyncTicketService asyncTicketService;
+
+  @After
+  public void shutdown() {
+    release.countDown();
+    asyncTicketService.shutdown();
+  }
+
+  @Test
+  public void holdsAndReservesWithoutBlockingTheCaller() {
+    asyncTicketService = new AsyncTicketService(new DefaultTicketService(venue), 2, 16);
+    SeatHold seatHold = asyncTicketService.findAndHoldSeatsAsync(10, "a@b.com").join();
+    String confirmationCode = asyncTicketService.reserveSeats(seatHold.getId(), "a@b.com").block();
+    assertThat(asyncTicketService.reserveSeatsAsync(seatHold.getId(), "a@b.com").join(), is(confirmationCode));
+    assertThat(asyncTicketService.numSeatsAvailable().block(), is(noOfSeats - 10));
+
+    try {
+      asyncTicketService.findAndHoldSeats(noOfSeats, "a@b.com").block();
+      fail("Expected TicketService Exception");
+    } catch (TicketServiceException e) {
+      //Expected
+    }
+  }
+
+  @Test
+  public void concurrentReadsOfAvailableSeatsShareOneComputation() {
+    asyncTicketService = new AsyncTicketService(blocked, 2, 16);
+    List<CompletableFuture<Integer>> reads = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      reads.add(asyncTicketService.numSeatsAvailableAsync());
+    }
+    reads.get(0).cancel(false);
+    release.countDown();
+    for (int i = 1; i < reads.size(); i++) {
+      assertThat(reads.get(i).join(), is(noOfSeats));
+    }
+    assertThat(calls.get(), is(1));
+  }
+
+  @Test
+  public void fullQueueTurnsRequestsAwayAndCancelledHoldsAreNeverMade() throws InterruptedException {
+    asyncTicketService = new AsyncTicketService(blocked, 1, 1);
+    asyncTicketService.findAndHoldSeatsAsync(1, "a@b.com");
+    while (calls.get() == 0) {
+      Thread.sleep(1);
+    }
+    CompletableFuture<SeatHold> queued = asyncTicketService.findAndHoldSeatsAsync(1, "b@c.com");
+    try {
+      asyncTicketService.findAndHoldSeatsAsync(1, "c@d.com");
+      fail("Expected TicketService Exception");
+    } catch (TicketServiceException e) {
+      //Expected
+    }
+    queued.cancel(false);
+    release.countDown();
+    asyncTicketService.shutdown();
+    assertThat("the cancelled hold should not reach the engine", calls.get(), is(1));
+  }
+
+  @Test
+  public void streamOfHoldsPullsNoMoreThanTheWorkersCanTake() {
+    asyncTicketService = new AsyncTicketService(new DefaultTicketService(venue), 2, 16);
+    AtomicInteger requested = new AtomicInteger();
+    Flux<HoldRequest> requests = Flux.range(0, 100)
+        .map(i -> new HoldRequest(i == 1 ? noOfSeats + 1 : 2, "group" + i + "@example.com"))
+        .doOnRequest(n -> requested.accumulateAndGet((int) Math.min(n, Integer.MAX_VALUE), Math::max));
+
+    List<HoldResult> results = asyncTicketService.findAndHoldSeats(requests).collectList().block();
+    assertThat(results.size(), is(100));
+    assertThat(results.get(0).getRequest().getCustomerEmail(), is("group0@example.com"));
+    assertThat("a group that cannot be held does not end the stream", results.get(1).isHeld(), is(false));
+    assertThat(results.get(2).isHeld(), is(true));
+    assertThat(requested.get(), is(2));
+  }
+
+  @Test
+  public void anErrorOfTheEngineFailsTheCall() {
+    asyncTicketService = new AsyncTicketService(new TicketService() {
+      @Override
+      public int numSeatsAvailable() {
+        return 0;
+      }
+
+      @Override
+      public SeatHold findAndHoldSeats(int numSeats, String customerEmail) {
+        throw new StackOverflowError("Engine failed");
+      }
+
+      @Override
+      public String reserveSeats(int seatHoldId, String customerEmail) {
+        return null;
+      }
+    }, 1, 1);
+    try {
+      asyncTicketService.findAndHoldSeats(1, "a@b.com").block(Duration.ofSeconds(10));
+      fail("Expected the error of the engine");
+    } catch (StackOverflowError e) {
+      assertThat(e.getMessage(), is("Engine failed"));
+    }
+  }
+}
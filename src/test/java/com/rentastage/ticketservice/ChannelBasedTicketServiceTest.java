@@ -0,0 +1,239 @@
+package com.rentastage.ticketservice;
+
+import com.rentastage.ticketservice.model.HoldRequest;
+import com.rentastage.ticketservice.model.HoldResult;
+import com.rentastage.ticketservice.model.IdGenerator;
+import com.rentastage.ticketservice.model.Reservation;
+import com.rentastage.ticketservice.model.ReservedStatus;
+import com.rentastage.ticketservice.model.Seat;
+import com.rentastage.ticketservice.model.SeatHold;
+import com.rentastage.ticketservice.model.SnowflakeIdGenerator;
+import com.rentastage.ticketservice.model.Venue;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class ChannelBasedTicketServiceTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  Venue venue = new Venue();
+
+  int noOfSeats = venue.getNoOfRows() * venue.getNoOfSeatsPerRow();
+
+  ChannelBasedTicketService ticketService = new ChannelBasedTicketService(venue, 64, 5);
+
+  @After
+  public void shutdown() {
+    ticketService.shutdown();
+  }
+
+  @Test
+  public void findAndHoldSeats() {
+    assertThat(ticketService.numSeatsAvailable(), is(noOfSeats));
+
+    SeatHold seatHold = ticketService.findAndHoldSeats(10, "a@b.com");
+    assertThat(seatHold.getHolds().size(), is(10));
+    seatHold.getHolds().forEach(seat -> assertThat(seat.getStatus(), is(ReservedStatus.ON_HOLD)));
+    assertThat("callers read their own holds", ticketService.numSeatsAvailable(), is(noOfSeats - 10));
+
+    try {
+      ticketService.findAndHoldSeats(noOfSeats, "a@b.com");
+      fail("Expected TicketService Exception");
+    } catch (TicketServiceException e) {
+      //Expected
+    }
+  }
+
+  @Test
+  public void batchHoldIsAppliedAsOneCommand() {
+    List<HoldResult> results = ticketService.findAndHoldSeats(Arrays.asList(
+        new HoldRequest(4, "a@b.com"), new HoldRequest(noOfSeats + 1, "b@c.com"), new HoldRequest(10, "c@d.com")), true);
+    assertThat(results.get(0).getSeatHold().getHolds().size(), is(4));
+    assertThat(results.get(1).isHeld(), is(false));
+    assertThat("the larger group is seated first", results.get(2).getSeatHold().getHolds().get(0).toString(), is("A1"));
+    assertThat(ticketService.numSeatsAvailable(), is(noOfSeats - 14));
+  }
+
+  @Test
+  public void reserveSeats() {
+    SeatHold seatHold = ticketService.findAndHoldSeats(10, "a@b.com");
+    ticketService.reserveSeats(seatHold.getId(), "A@B.com");
+    seatHold.getHolds().forEach(seat -> assertThat(seat.getStatus(), is(ReservedStatus.RESERVED)));
+    assertThat(ticketService.numSeatsAvailable(), is(noOfSeats - 10));
+  }
+
+  @Test
+  public void duplicateReserveReturnsSameCode() {
+    SeatHold seatHold = ticketService.findAndHoldSeats(10, "a@b.com");
+    String first = ticketService.reserveSeats(seatHold.getId(), "a@b.com");
+    assertThat(ticketService.reserveSeats(seatHold.getId(), "a@b.com"), is(first));
+    assertThat(ticketService.numSeatsAvailable(), is(noOfSeats - 10));
+  }
+
+  @Test(expected = TicketServiceException.class)
+  public void reservedHoldIsForgottenWhenItsExpiryWindowCloses() {
+    SeatHold seatHold = ticketService.findAndHoldSeats(10, "a@b.com");
+    ticketService.reserveSeats(seatHold.getId(), "a@b.com");
+    ticketService.expireSeatHoldsAsync(seatHold.getHeldAt().getTime() + TimeUnit.MINUTES.toMillis(5)).join();
+    ticketService.reserveSeats(seatHold.getId(), "a@b.com");
+  }
+
+  @Test(expected = TicketServiceException.class)
+  public void invalidSeatHoldIdReserveSeats() {
+    ticketService.reserveSeats(1, "test");
+  }
+
+  @Test(expected = TicketServiceException.class)
+  public void invalidEmailIdReserveSeats() {
+    SeatHold seatHold = ticketService.findAndHoldSeats(10, "a@b.com");
+    ticketService.reserveSeats(seatHold.getId(), "test");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void invalidNumSeatsFindAndHoldSeats() {
+    ticketService.findAndHoldSeats(0, "a@b.com");
+  }
+
+  @Test
+  public void asyncHoldsNeverShareSeats() {
+    List<CompletableFuture<SeatHold>> futures = new ArrayList<>();
+    for (int i = 0; i < noOfSeats / 4 + 1; i++) {
+      futures.add(ticketService.findAndHoldSeatsAsync(4, "a@b.com"));
+    }
+    Set<Seat> heldSeats = new HashSet<>();
+    int failures = 0;
+    for (CompletableFuture<SeatHold> future : futures) {
+      try {
+        future.join().getHolds().forEach(seat -> assertThat(heldSeats.add(seat), is(true)));
+      } catch (CompletionException e) {
+        assertThat(e.getCause(), instanceOf(TicketServiceException.class));
+        failures++;
+      }
+    }
+    assertThat(heldSeats.size(), is(noOfSeats));
+    assertThat(failures, is(1));
+    assertThat(ticketService.numSeatsAvailable(), is(0));
+  }
+
+  @Test
+  public void expiredHoldsAreReleased() throws InterruptedException {
+    ChannelBasedTicketService expiringService = new ChannelBasedTicketService(new Venue(), 64, 0);
+    try {
+      SeatHold seatHold = expiringService.findAndHoldSeats(10, "a@b.com");
+      long deadline = System.currentTimeMillis() + 5000;
+      while (expiringService.numSeatsAvailable() < noOfSeats && System.currentTimeMillis() < deadline) {
+        Thread.sleep(20);
+      }
+      assertThat(expiringService.numSeatsAvailable(), is(noOfSeats));
+      seatHold.getHolds().forEach(seat -> assertThat(seat.getStatus(), is(ReservedStatus.UNRESERVED)));
+    } finally {
+      expiringService.shutdown();
+    }
+  }
+
+  @Test(expected = TicketServiceException.class)
+  public void commandsAfterShutdownAreRejected() {
+    ticketService.shutdown();
+    ticketService.findAndHoldSeats(1, "a@b.com");
+  }
+
+  @Test
+  public void anErrorFailsOnlyItsCommand() {
+    IdGenerator failingIds = new IdGenerator() {
+      @Override
+      public int nextHoldId() {
+        return SnowflakeIdGenerator.LOCAL.nextHoldId();
+      }
+
+      @Override
+      public long nextReservationId() {
+        throw new AssertionError("No reservation id");
+      }
+
+      @Override
+      public void restored(int seatHoldId, long reservationId) {
+      }
+    };
+    ChannelBasedTicketService failingService = new ChannelBasedTicketService(new Venue(), 64, 5, failingIds);
+    try {
+      SeatHold seatHold = failingService.findAndHoldSeats(2, "a@b.com");
+      try {
+        failingService.reserveSeats(seatHold.getId(), "a@b.com");
+        fail("Expected the error of the id generator");
+      } catch (AssertionError e) {
+        assertThat(e.getMessage(), is("No reservation id"));
+      }
+      assertThat("the owner thread carries on", failingService.findAndHoldSeats(2, "a@b.com").getHolds().size(), is(2));
+    } finally {
+      failingService.shutdown();
+    }
+  }
+
+  @Test
+  public void aSlowReservationStoreDoesNotHoldUpTheOwnerThread() throws Exception {
+    CountDownLatch databaseBack = new CountDownLatch(1);
+    List<Reservation> stored = new CopyOnWriteArrayList<>();
+    ReservationStore slowStore = new ReservationStore() {
+      @Override
+      public void store(Reservation reservation) {
+        try {
+          databaseBack.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        stored.add(reservation);
+      }
+    };
+    ChannelBasedTicketService slowService = new ChannelBasedTicketService(new Venue(), 64, 5,
+        SnowflakeIdGenerator.LOCAL, slowStore);
+    try {
+      SeatHold seatHold = slowService.findAndHoldSeats(2, "a@b.com");
+      CompletableFuture<String> reserved = slowService.reserveSeatsAsync(seatHold.getId(), "a@b.com");
+      assertThat("holds go on while the store waits", slowService.findAndHoldSeats(2, "b@c.com").getHolds().size(), is(2));
+      assertThat(reserved.isDone(), is(false));
+      databaseBack.countDown();
+      assertThat(reserved.get(10, TimeUnit.SECONDS), is(stored.get(0).getConfirmationCode()));
+      assertThat("a duplicate is not stored again", slowService.reserveSeats(seatHold.getId(), "a@b.com"),
+          is(stored.get(0).getConfirmationCode()));
+      assertThat(stored.size(), is(1));
+    } finally {
+      databaseBack.countDown();
+      slowService.shutdown();
+    }
+  }
+
+  @Test(expected = TicketServiceException.class)
+  public void holdFailsWhenAnotherProcessTookTheSeats() throws IOException {
+    Path file = folder.newFolder().toPath().resolve("seats.bin");
+    ChannelBasedTicketService sharedService = new ChannelBasedTicketService(new Venue(1, 10, file), 64, 5);
+    try {
+      //Taken in the other process after this one counted the seats
+      Venue otherProcess = new Venue(1, 10, file);
+      new DefaultTicketService(otherProcess).findAndHoldSeats(8, "c@d.com");
+      sharedService.findAndHoldSeats(4, "a@b.com");
+    } finally {
+      sharedService.shutdown();
+    }
+  }
+}
@@ -1,9 +1,29 @@
 package com.rentastage.ticketservice;
 
+import com.rentastage.ticketservice.model.HoldRequest;
+import com.rentastage.ticketservice.model.HoldResult;
 import com.rentastage.ticketservice.model.ReservedStatus;
 import com.rentastage.ticketservice.model.SeatHold;
+import com.rentastage.ticketservice.model.SnowflakeIdGenerator;
 import com.rentastage.ticketservice.model.Venue;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import static org.hamcrest.Matchers.is;
 import static org.junit.Assert.assertThat;
@@ -11,6 +31,9 @@ import static org.junit.Assert.fail;
 
 public class DefaultTicketServiceTest {
 
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
   Venue venue = new Venue();
 
   DefaultTicketService defaultTicketService = new DefaultTicketService(venue);
@@ -104,6 +127,375 @@ public class DefaultTicketServiceTest {
     defaultTicketService.reserveSeats(seatHold.getId(), "test");
   }
 
+  @Test
+  public void duplicateReserveReturnsSameCode() {
+    SeatHold seatHold = defaultTicketService.findAndHoldSeats(10, "a@b.com");
+    String first = defaultTicketService.reserveSeats(seatHold.getId(), "a@b.com");
+    String second = defaultTicketService.reserveSeats(seatHold.getId(), "A@B.com");
+    assertThat(second, is(first));
+    assertThat(defaultTicketService.reservationMap.size(), is(1));
+  }
+
+  @Test
+  public void reservedHoldIsForgottenWhenItsExpiryWindowCloses() {
+    SeatHold seatHold = defaultTicketService.findAndHoldSeats(10, "a@b.com");
+    defaultTicketService.reserveSeats(seatHold.getId(), "a@b.com");
+    defaultTicketService.expireSeatHolds(seatHold.getHeldAt().getTime() + TimeUnit.MINUTES.toMillis(5) + 100);
+
+    assertThat(defaultTicketService.reservedHolds.isEmpty(), is(true));
+    assertThat(defaultTicketService.reservationMap.size(), is(1));
+    try {
+      defaultTicketService.reserveSeats(seatHold.getId(), "a@b.com");
+      fail("Expected TicketService Exception");
+    } catch (TicketServiceException e) {
+      //The hold id may belong to a new hold by now
+    }
+  }
+
+  @Test(expected = TicketServiceException.class)
+  public void duplicateReserveChecksEmail() {
+    SeatHold seatHold = defaultTicketService.findAndHoldSeats(10, "a@b.com");
+    defaultTicketService.reserveSeats(seatHold.getId(), "a@b.com");
+    defaultTicketService.reserveSeats(seatHold.getId(), "test");
+  }
+
+  @Test
+  public void concurrentReservesOfSameHoldReserveOnce() throws InterruptedException {
+    int threads = 8;
+    SeatHold seatHold = defaultTicketService.findAndHoldSeats(10, "a@b.com");
+    Set<String> codes = Collections.synchronizedSet(new HashSet<>());
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    CountDownLatch start = new CountDownLatch(1);
+    for (int t = 0; t < threads; t++) {
+      executor.execute(() -> {
+        try {
+          start.await();
+          codes.add(defaultTicketService.reserveSeats(seatHold.getId(), "a@b.com"));
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      });
+    }
+    start.countDown();
+    executor.shutdown();
+    assertThat(executor.awaitTermination(30, TimeUnit.SECONDS), is(true));
+
+    assertThat(codes.size(), is(1));
+    assertThat(defaultTicketService.reservationMap.size(), is(1));
+    seatHold.getHolds().forEach(seat -> assertThat(seat.getStatus(), is(ReservedStatus.RESERVED)));
+  }
+
+  @Test
+  public void recoversHoldsAndReservationsFromJournal() throws IOException {
+    Path directory = folder.newFolder().toPath();
+    SeatHold reserved;
+    SeatHold open;
+    String confirmationCode;
+    try (MappedJournal journal = new MappedJournal(directory, 1 << 16, MappedJournal.FsyncPolicy.SYNC, 0)) {
+      DefaultTicketService ticketService = new DefaultTicketService(new Venue(), SnowflakeIdGenerator.LOCAL, journal);
+      ticketService.recover();
+      reserved = ticketService.findAndHoldSeats(10, "a@b.com");
+      confirmationCode = ticketService.reserveSeats(reserved.getId(), "a@b.com");
+      open = ticketService.findAndHoldSeats(4, "c@d.com");
+      SeatHold expired = ticketService.findAndHoldSeats(3, "e@f.com");
+      ticketService.expireSeatHold(expired);
+    }
+
+    try (MappedJournal journal = new MappedJournal(directory, 1 << 16, MappedJournal.FsyncPolicy.SYNC, 0)) {
+      Venue recoveredVenue = new Venue();
+      DefaultTicketService recovered = new DefaultTicketService(recoveredVenue, SnowflakeIdGenerator.LOCAL, journal);
+      assertThat(recovered.recover(), is(5));
+      assertThat(recovered.numSeatsAvailable(), is(venue.getNoOfRows() * venue.getNoOfSeatsPerRow() - 14));
+      assertThat(recovered.seatHoldMap.get(open.getId()).getHolds().toString(), is(open.getHolds().toString()));
+      assertThat(recovered.seatHoldMap.get(open.getId()).getHeldAt(), is(open.getHeldAt()));
+      assertThat("reserving again returns the original code",
+          recovered.reserveSeats(reserved.getId(), "a@b.com"), is(confirmationCode));
+      recovered.reserveSeats(open.getId(), "c@d.com");
+      assertThat(recovered.numSeatsAvailable(), is(venue.getNoOfRows() * venue.getNoOfSeatsPerRow() - 14));
+      recovered.expireSeatHolds(System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(5) + 100);
+      assertThat("reserved holds are forgotten once their expiry window closed", recovered.reservedHolds.isEmpty(), is(true));
+    }
+  }
+
+  @Test
+  public void groupsAreSeatedTogether() {
+    int seatsPerRow = venue.getNoOfSeatsPerRow();
+    SeatHold first = defaultTicketService.findAndHoldSeats(seatsPerRow - 4, "a@b.com");
+    SeatHold second = defaultTicketService.findAndHoldSeats(10, "a@b.com");
+    SeatHold third = defaultTicketService.findAndHoldSeats(4, "a@b.com");
+
+    assertThat(first.getHolds().get(0).toString(), is("A1"));
+    assertThat("group that does not fit in row A goes to row B", second.getHolds().get(0).toString(), is("B1"));
+    assertThat(second.getHolds().get(9).toString(), is("B10"));
+    assertThat("small group fills the gap in row A", third.getHolds().get(0).toString(), is("A" + (seatsPerRow - 3)));
+  }
+
+  @Test
+  public void groupsAreSplitOnlyWhenNoRowHasRoom() {
+    int seatsPerRow = venue.getNoOfSeatsPerRow();
+    SeatHold seatHold = defaultTicketService.findAndHoldSeats(seatsPerRow + 2, "a@b.com");
+    assertThat(seatHold.getHolds().size(), is(seatsPerRow + 2));
+    assertThat(seatHold.getHolds().get(0).toString(), is("A1"));
+    assertThat(seatHold.getHolds().get(seatsPerRow).toString(), is("B1"));
+  }
+
+  @Test
+  public void batchHoldReturnsResultsInRequestOrder() {
+    int noOfSeats = venue.getNoOfRows() * venue.getNoOfSeatsPerRow();
+    defaultTicketService.maxSeatsPerCustomer = 10;
+    List<HoldResult> results = defaultTicketService.findAndHoldSeats(Arrays.asList(
+        new HoldRequest(4, "a@b.com"), new HoldRequest(11, "b@c.com"), new HoldRequest(10, "c@d.com")), false);
+
+    assertThat(results.get(0).getSeatHold().getHolds().get(0).toString(), is("A1"));
+    assertThat("over the customer limit", results.get(1).isHeld(), is(false));
+    assertThat(results.get(2).getSeatHold().getHolds().get(0).toString(), is("A5"));
+    assertThat(defaultTicketService.seatHoldMap.size(), is(2));
+    assertThat(defaultTicketService.numSeatsAvailable(), is(noOfSeats - 14));
+    assertThat(defaultTicketService.customerIndex.getHeldSeats("b@c.com"), is(0));
+  }
+
+  @Test
+  public void bestFitBatchSeatsLargestGroupsFirst() {
+    List<HoldRequest> requests = Arrays.asList(new HoldRequest(3, "a@b.com"), new HoldRequest(3, "a@b.com"),
+        new HoldRequest(7, "a@b.com"), new HoldRequest(7, "a@b.com"));
+
+    Venue smallVenue = new Venue(2, 10);
+    SeatAllocator seatAllocator = new SeatAllocator(smallVenue);
+    List<HoldResult> results = new DefaultTicketService(smallVenue).findAndHoldSeats(requests, false);
+    assertThat("the last group is split when seated in order", seatAllocator.isAdjacent(results.get(3).getSeatHold().getHolds()), is(false));
+
+    DefaultTicketService bestFit = new DefaultTicketService(new Venue(2, 10));
+    results = bestFit.findAndHoldSeats(requests, true);
+    results.forEach(result -> assertThat(seatAllocator.isAdjacent(result.getSeatHold().getHolds()), is(true)));
+    assertThat(results.get(2).getSeatHold().getHolds().get(0).toString(), is("A1"));
+    assertThat(results.get(0).getSeatHold().getHolds().get(0).toString(), is("A8"));
+    assertThat(bestFit.numSeatsAvailable(), is(0));
+  }
+
+  @Test
+  public void concurrentHoldsNeverShareSeats() throws InterruptedException {
+    int threads = 8;
+    int seatsPerHold = 3;
+    List<SeatHold> holds = Collections.synchronizedList(new ArrayList<>());
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    CountDownLatch start = new CountDownLatch(1);
+    for (int t = 0; t < threads; t++) {
+      executor.execute(() -> {
+        try {
+          start.await();
+          while (true) {
+            holds.add(defaultTicketService.findAndHoldSeats(seatsPerHold, "a@b.com"));
+          }
+        } catch (TicketServiceException | InterruptedException e) {
+          //Sold out
+        }
+      });
+    }
+    start.countDown();
+    executor.shutdown();
+    assertThat(executor.awaitTermination(30, TimeUnit.SECONDS), is(true));
+
+    Set<String> heldSeatIds = new HashSet<>();
+    holds.forEach(seatHold -> seatHold.getHolds().forEach(seat ->
+        assertThat("seat held twice: " + seat, heldSeatIds.add(seat.getId()), is(true))));
+    int noOfSeats = venue.getNoOfRows() * venue.getNoOfSeatsPerRow();
+    assertThat(heldSeatIds.size(), is(holds.size() * seatsPerHold));
+    assertThat(defaultTicketService.numSeatsAvailable(), is(noOfSeats - heldSeatIds.size()));
+    assertThat("all but a partial hold should be sold", defaultTicketService.numSeatsAvailable() < seatsPerHold, is(true));
+  }
+
+  @Test
+  public void expireSeatHolds() {
+    int noOfSeats = venue.getNoOfRows() * venue.getNoOfSeatsPerRow();
+    SeatHold seatHold = defaultTicketService.findAndHoldSeats(10, "a@b.com");
+    long heldAt = seatHold.getHeldAt().getTime();
+
+    defaultTicketService.expireSeatHolds(heldAt + TimeUnit.MINUTES.toMillis(4));
+    assertThat("hold should not expire early", defaultTicketService.seatHoldMap.size(), is(1));
+
+    //holds expire within one 100ms tick of their deadline
+    defaultTicketService.expireSeatHolds(heldAt + TimeUnit.MINUTES.toMillis(5) + 100);
+    assertThat(defaultTicketService.seatHoldMap.size(), is(0));
+    assertThat("expired seats should be released", defaultTicketService.numSeatsAvailable(), is(noOfSeats));
+    seatHold.getHolds().forEach(seat -> assertThat(seat.getStatus(), is(ReservedStatus.UNRESERVED)));
+  }
+
+  @Test(expected = TicketServiceException.class)
+  public void expiredHoldCannotBeReserved() {
+    SeatHold seatHold = defaultTicketService.findAndHoldSeats(10, "a@b.com");
+    defaultTicketService.expireSeatHolds(seatHold.getHeldAt().getTime() + TimeUnit.MINUTES.toMillis(5) + 100);
+    defaultTicketService.reserveSeats(seatHold.getId(), "a@b.com");
+  }
+
+  @Test
+  public void reservedHoldDoesNotExpire() {
+    SeatHold seatHold = defaultTicketService.findAndHoldSeats(10, "a@b.com");
+    defaultTicketService.reserveSeats(seatHold.getId(), "a@b.com");
+    defaultTicketService.expireSeatHolds(seatHold.getHeldAt().getTime() + TimeUnit.MINUTES.toMillis(5) + 100);
+    seatHold.getHolds().forEach(seat -> assertThat(seat.getStatus(), is(ReservedStatus.RESERVED)));
+  }
+
+  @Test
+  public void customerLookupFollowsHoldsAndReservations() {
+    SeatHold reserved = defaultTicketService.findAndHoldSeats(2, "a@b.com");
+    SeatHold expired = defaultTicketService.findAndHoldSeats(3, "A@B.com ");
+    SeatHold open = defaultTicketService.findAndHoldSeats(4, "a@b.com");
+    defaultTicketService.findAndHoldSeats(1, "c@d.com");
+    defaultTicketService.reserveSeats(reserved.getId(), "a@b.com");
+    defaultTicketService.expireSeatHold(expired);
+
+    assertThat(defaultTicketService.getSeatHolds("a@b.com"), is(Collections.singletonList(open)));
+    assertThat(defaultTicketService.getReservations("a@b.com").size(), is(1));
+    assertThat(defaultTicketService.getReservations("a@b.com").get(0).getReserves(), is(reserved.getHolds()));
+    assertThat(defaultTicketService.customerIndex.getHeldSeats("a@b.com"), is(4));
+    assertThat(defaultTicketService.customerIndex.getReservedSeats("a@b.com"), is(2));
+    assertThat(defaultTicketService.getSeatHolds("x@y.com").size(), is(0));
+  }
+
+  @Test
+  public void customerLimitCountsHeldAndReservedSeats() {
+    int noOfSeats = venue.getNoOfRows() * venue.getNoOfSeatsPerRow();
+    defaultTicketService.maxSeatsPerCustomer = 6;
+    SeatHold seatHold = defaultTicketService.findAndHoldSeats(4, "a@b.com");
+    defaultTicketService.reserveSeats(seatHold.getId(), "a@b.com");
+    try {
+      defaultTicketService.findAndHoldSeats(3, "A@b.com");
+      fail("Expected TicketService Exception");
+    } catch (TicketServiceException e) {
+      //Expected
+    }
+    assertThat("a refused hold should not claim seats", defaultTicketService.numSeatsAvailable(), is(noOfSeats - 4));
+    defaultTicketService.findAndHoldSeats(2, "a@b.com");
+    defaultTicketService.findAndHoldSeats(6, "c@d.com");
+  }
+
+  @Test
+  public void expiredSeatsCountNoLongerAgainstCustomerLimit() {
+    defaultTicketService.maxSeatsPerCustomer = 4;
+    SeatHold seatHold = defaultTicketService.findAndHoldSeats(4, "a@b.com");
+    defaultTicketService.expireSeatHold(seatHold);
+    defaultTicketService.findAndHoldSeats(4, "a@b.com");
+  }
+
+  @Test
+  public void metricsFollowHoldsReservationsAndExpiry() {
+    MeterRegistry registry = new SimpleMeterRegistry();
+    Venue venue = new Venue(2, 10);
+    DefaultTicketService ticketService = new DefaultTicketService(venue, SnowflakeIdGenerator.LOCAL, Journal.NONE,
+        ReservationStore.NONE, "1", registry);
+    SeatHold reserved = ticketService.findAndHoldSeats(3, "a@b.com");
+    SeatHold expired = ticketService.findAndHoldSeats(2, "a@b.com");
+    ticketService.findAndHoldSeats(4, "a@b.com");
+    try {
+      ticketService.findAndHoldSeats(20, "a@b.com");
+      fail("Expected TicketService Exception");
+    } catch (TicketServiceException e) {
+      //Expected
+    }
+    ticketService.reserveSeats(reserved.getId(), "a@b.com");
+    ticketService.expireSeatHolds(expired.getHeldAt().getTime() + TimeUnit.MINUTES.toMillis(5) + 100);
+
+    assertThat(registry.get("ticketservice.hold").timer().count(), is(4L));
+    assertThat(registry.get("ticketservice.reserve").timer().count(), is(1L));
+    assertThat(registry.get("ticketservice.expiry").timer().count(), is(1L));
+    assertThat(registry.get("ticketservice.hold.failures").counter().count(), is(1.0));
+    assertThat(registry.get("ticketservice.holds.reserved").counter().count(), is(1.0));
+    assertThat("both open holds expire", registry.get("ticketservice.holds.expired").counter().count(), is(2.0));
+    assertThat(registry.get("ticketservice.holds.active").gauge().value(), is(0.0));
+    assertThat(registry.get("ticketservice.seats").tag("status", "free").gauge().value(), is(17.0));
+    assertThat(registry.get("ticketservice.seats").tag("status", "reserved").gauge().value(), is(3.0));
+  }
+
+  @Test
+  public void servicesSharingASeatStoreNeverHoldASeatTwice() throws Exception {
+    //Two venues mapping one file stand in for two processes
+    Path file = folder.newFolder().toPath().resolve("seats.bin");
+    Venue[] venues = {new Venue(4, 25, file), new Venue(4, 25, file)};
+    ExecutorService executor = Executors.newFixedThreadPool(venues.length);
+    List<SeatHold> seatHolds = Collections.synchronizedList(new ArrayList<>());
+    try {
+      for (Venue sharedVenue : venues) {
+        DefaultTicketService ticketService = new DefaultTicketService(sharedVenue);
+        executor.submit(() -> {
+          while (true) {
+            try {
+              seatHolds.add(ticketService.findAndHoldSeats(3, "a@b.com"));
+            } catch (TicketServiceException e) {
+              return;
+            }
+          }
+        });
+      }
+    } finally {
+      executor.shutdown();
+      assertThat(executor.awaitTermination(10, TimeUnit.SECONDS), is(true));
+    }
+
+    Set<String> heldSeats = new HashSet<>();
+    seatHolds.forEach(seatHold -> seatHold.getHolds().forEach(seat -> assertThat(heldSeats.add(seat.toString()), is(true))));
+    assertThat("every seat but the last group of 3", heldSeats.size(), is(99));
+    for (Venue sharedVenue : venues) {
+      sharedVenue.syncSharedSeats();
+      assertThat(sharedVenue.getSeatStateVersions().count(ReservedStatus.ON_HOLD), is(99));
+    }
+    Venue restarted = new Venue(4, 25, file);
+    assertThat(new DefaultTicketService(restarted).numSeatsAvailable(), is(1));
+  }
+
+  @Test
+  public void holdIsAdmittedOnTheLiveCountWhileTheVersionLags() throws Exception {
+    Venue smallVenue = new Venue(1, 10);
+    DefaultTicketService ticketService = new DefaultTicketService(smallVenue);
+    SeatHold seatHold = ticketService.findAndHoldSeats(10, "a@b.com");
+    CountDownLatch writing = new CountDownLatch(1);
+    CountDownLatch finish = new CountDownLatch(1);
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      //A write of another thread keeps the next version from being published
+      executor.submit(() -> {
+        smallVenue.getSeatStateVersions().beginWrite();
+        writing.countDown();
+        finish.await();
+        smallVenue.getSeatStateVersions().endWrite();
+        return null;
+      });
+      writing.await();
+      ticketService.expireSeatHold(seatHold);
+      assertThat("the version lags", ticketService.numSeatsAvailable(), is(0));
+      //Lets the hold through once the version has been too far behind for too long
+      executor.submit(() -> {
+        Thread.sleep(200);
+        finish.countDown();
+        return null;
+      });
+      assertThat(ticketService.findAndHoldSeats(10, "b@c.com").getHolds().size(), is(10));
+    } finally {
+      finish.countDown();
+      executor.shutdown();
+      assertThat(executor.awaitTermination(10, TimeUnit.SECONDS), is(true));
+    }
+  }
+
+  @Test
+  public void aFailedReservePutsTheHoldBack() {
+    SeatHold seatHold = defaultTicketService.findAndHoldSeats(3, "a@b.com");
+    //A seat of the hold that is no longer on hold fails the reserve after the first seat was reserved
+    seatHold.getHolds().get(1).setStatus(ReservedStatus.UNRESERVED);
+    try {
+      defaultTicketService.reserveSeats(seatHold.getId(), "a@b.com");
+      fail("Expected the reserve to fail");
+    } catch (IllegalStateException e) {
+      assertThat(e.getMessage(), is(String.format("Seat %s is not on hold", seatHold.getHolds().get(1))));
+    }
+    assertThat(defaultTicketService.seatHoldMap.get(seatHold.getId()), is(seatHold));
+    assertThat(seatHold.getHolds().get(0).getStatus(), is(ReservedStatus.ON_HOLD));
+    assertThat(seatHold.getHolds().get(2).getStatus(), is(ReservedStatus.ON_HOLD));
+
+    defaultTicketService.expireSeatHold(seatHold);
+    assertThat("expiry still frees the seats", defaultTicketService.numSeatsAvailable(),
+        is(venue.getNoOfRows() * venue.getNoOfSeatsPerRow()));
+  }
+
   @Test
   public void testToString() {
   }
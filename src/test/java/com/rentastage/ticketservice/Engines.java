@@ -0,0 +1,49 @@
+package com.rentastage.ticketservice;
+
+import com.rentastage.ticketservice.model.Venue;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Creates ticket service engines for harnesses outside this package and drives their hold expiry
+ */
+public final class Engines {
+
+  public static final String[] NAMES = {"default", "channel"};
+
+  private Engines() {
+  }
+
+  /**
+   * @param engine default or channel, the values of ts.engine
+   */
+  public static TicketService create(String engine, Venue venue) {
+    switch (engine) {
+      case "default":
+        return new DefaultTicketService(venue);
+      case "channel":
+        return new ChannelBasedTicketService(venue, 4096, 5);
+      default:
+        throw new IllegalArgumentException("Unknown engine " + engine);
+    }
+  }
+
+  /**
+   * Expire every hold created up to now, as if the hold expiry time had passed
+   */
+  public static void expireAllSeatHolds(TicketService ticketService) {
+    //holds expire within one 100ms tick of their deadline
+    long expiresAt = System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(5) + 100;
+    if (ticketService instanceof DefaultTicketService) {
+      ((DefaultTicketService) ticketService).expireSeatHolds(expiresAt);
+    } else if (ticketService instanceof ChannelBasedTicketService) {
+      ((ChannelBasedTicketService) ticketService).expireSeatHoldsAsync(expiresAt).join();
+    }
+  }
+
+  public static void shutdown(TicketService ticketService) {
+    if (ticketService instanceof ChannelBasedTicketService) {
+      ((ChannelBasedTicketService) ticketService).shutdown();
+    }
+  }
+}
@@ -0,0 +1,70 @@
+package com.rentastage.ticketservice;
+
+import com.rentastage.ticketservice.EventCatalog.EventStats;
+import com.rentastage.ticketservice.model.SeatHold;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class EventCatalogTest {
+
+  EventCatalog eventCatalog = new EventCatalog(2, 64);
+
+  @After
+  public void shutdown() {
+    eventCatalog.shutdown();
+  }
+
+  @Test
+  public void eventsHaveTheirOwnSeats() {
+    int concert = eventCatalog.createEvent("concert", 10, 34);
+    int play = eventCatalog.createEvent("play", 5, 10);
+
+    SeatHold seatHold = eventCatalog.findAndHoldSeats(concert, 10, "a@b.com");
+    assertThat(eventCatalog.numSeatsAvailable(concert), is(330));
+    assertThat(eventCatalog.numSeatsAvailable(play), is(50));
+
+    //A hold of one event cannot be reserved through another
+    try {
+      eventCatalog.reserveSeats(play, seatHold.getId(), "a@b.com");
+      fail("Reserved a hold of another event");
+    } catch (TicketServiceException e) {
+      assertThat(e.getMessage(), is(String.format("The seat hold id %d is not available", seatHold.getId())));
+    }
+    assertThat(eventCatalog.reserveSeats(concert, seatHold.getId(), "a@b.com").length(), is(15));
+  }
+
+  @Test
+  public void placesEventsOnTheShardWithFewestSeats() {
+    eventCatalog.createEvent("stadium", 20, 100);
+    eventCatalog.createEvent("club", 2, 10);
+    eventCatalog.createEvent("theatre", 10, 20);
+
+    List<EventStats> events = eventCatalog.getEvents();
+    assertThat(events.get(1).getShard(), is(not(events.get(0).getShard())));
+    assertThat(events.get(2).getShard(), is(events.get(1).getShard()));
+  }
+
+  @Test
+  public void accountsMemoryPerEvent() {
+    int concert = eventCatalog.createEvent("concert", 10, 34);
+    eventCatalog.findAndHoldSeats(concert, 4, "a@b.com");
+
+    EventStats stats = eventCatalog.getEvents().get(0);
+    assertThat(stats.getSeats(), is(340));
+    assertThat(stats.getSeatsAvailable(), is(336));
+    assertThat(stats.getOpenHolds(), is(1));
+    assertThat(stats.getEstimatedBytes(), is(340 * EventCatalog.BYTES_PER_SEAT + EventCatalog.BYTES_PER_HOLD));
+  }
+
+  @Test(expected = TicketServiceException.class)
+  public void rejectsUnknownEvent() {
+    eventCatalog.findAndHoldSeats(42, 1, "a@b.com");
+  }
+}
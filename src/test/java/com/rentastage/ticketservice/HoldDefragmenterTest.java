@@ -0,0 +1,83 @@
+package com.rentastage.ticketservice;
+
+import com.rentastage.ticketservice.model.ReservedStatus;
+import com.rentastage.ticketservice.model.Seat;
+import com.rentastage.ticketservice.model.SeatHold;
+import com.rentastage.ticketservice.model.Venue;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class HoldDefragmenterTest {
+
+  private final Venue venue = new Venue(3, 10);
+
+  private final Seat[][] seats = venue.getSeatLayout();
+
+  private final Map<Integer, SeatHold> seatHoldMap = new ConcurrentHashMap<>();
+
+  private final SeatAllocator seatAllocator = new SeatAllocator(venue);
+
+  private final HoldDefragmenter defragmenter = new HoldDefragmenter(seatHoldMap, seatAllocator);
+
+  private void setStatus(int row, int fromCol, int toCol, ReservedStatus status) {
+    for (int col = fromCol; col < toCol; col++) {
+      seats[row][col].setStatus(status);
+    }
+  }
+
+  private SeatHold hold(int numSeats) {
+    List<Seat> claimed = seatAllocator.claim(numSeats);
+    SeatHold seatHold = SeatHold.newSeatHold().holds(claimed).customerEmail("a@b.com").build();
+    seatHoldMap.put(seatHold.getId(), seatHold);
+    defragmenter.holdCreated(seatHold);
+    return seatHold;
+  }
+
+  @Test
+  public void movesSplitHoldToReleasedRun() {
+    //every row has 3 free seats at the end
+    setStatus(0, 0, 7, ReservedStatus.RESERVED);
+    setStatus(1, 0, 7, ReservedStatus.RESERVED);
+    setStatus(2, 0, 7, ReservedStatus.RESERVED);
+    SeatHold seatHold = hold(5);
+    assertThat(seatAllocator.isAdjacent(seatHold.getHolds()), is(false));
+    assertThat(defragmenter.getFragmentationScore(), is(1));
+
+    //nothing to move to yet
+    assertThat(defragmenter.defragment(10), is(0));
+
+    setStatus(2, 0, 5, ReservedStatus.UNRESERVED);
+    defragmenter.seatsReleased();
+    assertThat(defragmenter.defragment(10), is(1));
+
+    SeatHold relocated = seatHoldMap.get(seatHold.getId());
+    assertThat(relocated.isSameHold(seatHold), is(true));
+    assertThat(seatAllocator.isAdjacent(relocated.getHolds()), is(true));
+    relocated.getHolds().forEach(seat -> assertThat(seat.getStatus(), is(ReservedStatus.ON_HOLD)));
+    seatHold.getHolds().forEach(seat -> assertThat("old seats are released", seat.getStatus(), is(ReservedStatus.UNRESERVED)));
+    assertThat(defragmenter.getFragmentationScore(), is(0));
+  }
+
+  @Test
+  public void reservedSeatsAreNeverMoved() {
+    setStatus(0, 0, 7, ReservedStatus.RESERVED);
+    setStatus(1, 0, 7, ReservedStatus.RESERVED);
+    setStatus(2, 0, 7, ReservedStatus.RESERVED);
+    SeatHold seatHold = hold(5);
+    //the hold is reserved before the pass runs
+    seatHoldMap.remove(seatHold.getId());
+    seatHold.getHolds().forEach(seat -> seat.setStatus(ReservedStatus.RESERVED));
+    defragmenter.holdClosed(seatHold);
+
+    setStatus(2, 0, 5, ReservedStatus.UNRESERVED);
+    defragmenter.seatsReleased();
+    assertThat(defragmenter.defragment(10), is(0));
+    seatHold.getHolds().forEach(seat -> assertThat(seat.getStatus(), is(ReservedStatus.RESERVED)));
+  }
+}
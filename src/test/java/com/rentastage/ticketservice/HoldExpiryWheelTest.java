@@ -0,0 +1,75 @@
+package com.rentastage.ticketservice;
+
+import com.rentastage.ticketservice.model.ReservedStatus;
+import com.rentastage.ticketservice.model.Seat;
+import com.rentastage.ticketservice.model.SeatHold;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.junit.Assert.assertThat;
+
+public class HoldExpiryWheelTest {
+
+  private static final long NOW = 1_000_000L;
+
+  private final HoldExpiryWheel wheel = new HoldExpiryWheel(100, 16);
+
+  private final List<SeatHold> expired = new ArrayList<>();
+
+  private static SeatHold newSeatHold() {
+    Seat seat = Seat.newSeat().rowName("A").number(1).build();
+    seat.setStatus(ReservedStatus.ON_HOLD);
+    return SeatHold.newSeatHold().holds(Collections.singletonList(seat)).customerEmail("a@b.com").build();
+  }
+
+  @Test
+  public void expiresOnlyDueHolds() {
+    SeatHold first = newSeatHold();
+    SeatHold second = newSeatHold();
+    wheel.schedule(first, NOW + 250);
+    wheel.schedule(second, NOW + 1000);
+
+    wheel.advance(NOW, expired::add);
+    assertThat(expired, empty());
+
+    wheel.advance(NOW + 249, expired::add);
+    assertThat(expired, empty());
+
+    wheel.advance(NOW + 300, expired::add);
+    assertThat(expired, contains(first));
+
+    wheel.advance(NOW + 1000, expired::add);
+    assertThat(expired, contains(first, second));
+  }
+
+  @Test
+  public void expiresHoldsBeyondOneRotation() {
+    SeatHold seatHold = newSeatHold();
+    wheel.advance(NOW, expired::add);
+    //the wheel spans 1.6 seconds
+    wheel.schedule(seatHold, NOW + 5000);
+
+    for (long now = NOW; now < NOW + 5000; now += 100) {
+      wheel.advance(now, expired::add);
+    }
+    assertThat(expired, empty());
+
+    wheel.advance(NOW + 5000, expired::add);
+    assertThat(expired, contains(seatHold));
+  }
+
+  @Test
+  public void expiresHoldsAlreadyPastDeadline() {
+    SeatHold seatHold = newSeatHold();
+    wheel.advance(NOW, expired::add);
+    wheel.schedule(seatHold, NOW - 10_000);
+
+    wheel.advance(NOW + 100, expired::add);
+    assertThat(expired, contains(seatHold));
+  }
+}
@@ -0,0 +1,187 @@
+package com.rentastage.ticketservice;
+
+import com.rentastage.ticketservice.model.Reservation;
+import com.rentastage.ticketservice.model.ReservedStatus;
+import com.rentastage.ticketservice.model.Seat;
+import com.rentastage.ticketservice.model.SeatHold;
+import com.rentastage.ticketservice.model.Venue;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class MappedJournalTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private final Venue venue = new Venue(3, 10);
+
+  private final SeatAllocator seatAllocator = new SeatAllocator(venue);
+
+  private MappedJournal open(Path directory, int segmentBytes) {
+    return new MappedJournal(directory, segmentBytes, MappedJournal.FsyncPolicy.SYNC, 0);
+  }
+
+  private SeatHold hold(int numSeats) {
+    return SeatHold.newSeatHold().holds(seatAllocator.claim(numSeats)).customerEmail("a@b.com").build();
+  }
+
+  private static List<String> replay(MappedJournal journal) {
+    List<String> events = new ArrayList<>();
+    journal.replay(new JournalListener() {
+      @Override
+      public void onHold(int seatHoldId, long heldAtMillis, String customerEmail, int[] offsets) {
+        events.add("hold " + seatHoldId + " " + customerEmail + " " + Arrays.toString(offsets));
+      }
+
+      @Override
+      public void onRelocate(int seatHoldId, int[] offsets) {
+        events.add("relocate " + seatHoldId + " " + Arrays.toString(offsets));
+      }
+
+      @Override
+      public void onReserve(int seatHoldId, long reservationId, long reservedAtMillis, String customerEmail, int[] offsets) {
+        events.add("reserve " + seatHoldId + " " + reservationId + " " + Arrays.toString(offsets));
+      }
+
+      @Override
+      public void onExpire(int seatHoldId, int[] offsets) {
+        events.add("expire " + seatHoldId + " " + Arrays.toString(offsets));
+      }
+    });
+    return events;
+  }
+
+  @Test
+  public void replaysEventsInOrder() throws IOException {
+    Path directory = folder.newFolder().toPath();
+    SeatHold reserved = hold(2);
+    SeatHold expired = hold(1);
+    try (MappedJournal journal = open(directory, 4096)) {
+      journal.sync(journal.hold(reserved));
+      journal.hold(expired);
+      seatAllocator.reserve(reserved.getHolds());
+      Reservation reservation = Reservation.newReservation().id(42).reserves(reserved.getHolds()).customerEmail("a@b.com").build();
+      journal.sync(journal.reserve(reserved, reservation));
+      journal.expire(expired);
+    }
+
+    assertThat(replay(open(directory, 4096)), is(Arrays.asList(
+        "hold " + reserved.getId() + " a@b.com [0, 1]",
+        "hold " + expired.getId() + " a@b.com [2]",
+        "reserve " + reserved.getId() + " 42 [0, 1]",
+        "expire " + expired.getId() + " [2]")));
+  }
+
+  @Test
+  public void rollsOverToNewSegments() throws IOException {
+    Path directory = folder.newFolder().toPath();
+    List<SeatHold> holds = new ArrayList<>();
+    try (MappedJournal journal = open(directory, 64)) {
+      for (int i = 0; i < 10; i++) {
+        SeatHold seatHold = hold(1);
+        holds.add(seatHold);
+        journal.hold(seatHold);
+      }
+    }
+    assertThat(directory.toFile().list().length, is(10));
+
+    MappedJournal reopened = open(directory, 64);
+    SeatHold appended = hold(1);
+    reopened.hold(appended);
+    List<String> events = replay(reopened);
+    assertThat(events.size(), is(11));
+    assertThat(events.get(10), is("hold " + appended.getId() + " a@b.com [10]"));
+  }
+
+  @Test
+  public void recoversFromSnapshotAndEventsAfterIt() throws IOException {
+    Path directory = folder.newFolder().toPath();
+    List<SeatHold> holds = new ArrayList<>();
+    SeatHold appended;
+    try (MappedJournal journal = open(directory, 64)) {
+      for (int i = 0; i < 4; i++) {
+        SeatHold seatHold = hold(2);
+        holds.add(seatHold);
+        journal.hold(seatHold);
+      }
+      seatAllocator.reserve(holds.get(0).getHolds());
+      journal.reserve(holds.get(0), Reservation.newReservation().id(42).reserves(holds.get(0).getHolds()).customerEmail("a@b.com").build());
+      seatAllocator.release(holds.get(1).getHolds());
+      journal.expire(holds.get(1));
+
+      assertThat(journal.snapshot(30), is(6));
+      //Only the segment the snapshot ends in is kept
+      assertThat(directory.resolve("journal-00000001.log").toFile().exists(), is(false));
+      assertThat(journal.snapshot(30), is(0));
+
+      appended = hold(1);
+      journal.hold(appended);
+    }
+
+    JournalRecovery recovery = new JournalRecovery(30);
+    open(directory, 64).recover(recovery);
+    Venue recovered = new Venue(3, 10);
+    recovery.apply(recovered.getSeatStore());
+
+    assertThat(recovery.getEvents(), is(1));
+    List<Integer> openHolds = new ArrayList<>();
+    recovery.getOpenHolds(recovered.getSeatStore()).forEach(seatHold -> openHolds.add(seatHold.getId()));
+    assertThat(openHolds, is(Arrays.asList(holds.get(2).getId(), holds.get(3).getId(), appended.getId())));
+    assertThat(recovery.getReservations(recovered.getSeatStore()).get(holds.get(0).getId()).getId(), is(42L));
+    for (int offset = 0; offset < 30; offset++) {
+      assertThat(recovered.getSeatStore().getStatus(offset), is(venue.getSeatStore().getStatus(offset)));
+    }
+  }
+
+  @Test
+  public void dropsTornRecordAndContinuesAfterLastValidOne() throws IOException {
+    Path directory = folder.newFolder().toPath();
+    SeatHold first = hold(1);
+    SeatHold torn = hold(1);
+    long tornAt;
+    try (MappedJournal journal = open(directory, 4096)) {
+      tornAt = journal.hold(first);
+      journal.hold(torn);
+    }
+    //Corrupt the last byte of the second record, as a crash in the middle of writing it would
+    try (RandomAccessFile file = new RandomAccessFile(directory.resolve("journal-00000001.log").toFile(), "rw")) {
+      long end = (int) tornAt + 8 + 1 + 4 + 8 + 2 + "a@b.com".length() + 4 + 4;
+      file.seek(end - 1);
+      file.write(0x7F);
+    }
+
+    MappedJournal reopened = open(directory, 4096);
+    SeatHold appended = hold(1);
+    reopened.hold(appended);
+    assertThat(replay(reopened), is(Arrays.asList(
+        "hold " + first.getId() + " a@b.com [0]",
+        "hold " + appended.getId() + " a@b.com [2]")));
+  }
+
+  @Test
+  public void recoveryAppliesRelocationWrittenAfterReserve() {
+    JournalRecovery recovery = new JournalRecovery(venue.getSeatStore().size());
+    recovery.onHold(1, 0, "a@b.com", new int[]{0, 10});
+    recovery.onReserve(1, 7, 0, "a@b.com", new int[]{20, 21});
+    recovery.onRelocate(1, new int[]{20, 21});
+    recovery.apply(venue.getSeatStore());
+
+    assertThat(recovery.getOpenHolds(venue.getSeatStore()).size(), is(0));
+    assertThat(venue.getSeatStore().getStatus(0), is(ReservedStatus.UNRESERVED));
+    assertThat(venue.getSeatStore().getStatus(10), is(ReservedStatus.UNRESERVED));
+    assertThat(venue.getSeatStore().getStatus(20), is(ReservedStatus.RESERVED));
+    assertThat(venue.getSeatStore().getStatus(21), is(ReservedStatus.RESERVED));
+    assertThat(venue.getAvailabilityIndex().count(ReservedStatus.UNRESERVED), is(28));
+  }
+}
@@ -0,0 +1,82 @@
+package com.rentastage.ticketservice;
+
+import com.rentastage.ticketservice.model.ReservedStatus;
+import com.rentastage.ticketservice.model.Seat;
+import com.rentastage.ticketservice.model.Venue;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class SeatAllocatorTest {
+
+  private final Venue venue = new Venue(4, 10);
+
+  @Test
+  public void parsesSections() {
+    assertThat(SeatAllocator.sectionRows("1", 10), is(new int[]{0}));
+    assertThat(SeatAllocator.sectionRows("3", 10), is(new int[]{0, 3, 6}));
+    assertThat(SeatAllocator.sectionRows("0-1, 2-6,7-9", 10), is(new int[]{0, 2, 7}));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsSectionsWithGaps() {
+    SeatAllocator.sectionRows("0-1,3-9", 10);
+  }
+
+  @Test
+  public void splitsGroupWithinOneSectionBeforeCrossingSections() {
+    SeatAllocator seatAllocator = new SeatAllocator(venue, new int[]{0, 2});
+    //leave runs of 6 in rows 0 and 1, and in rows 2 and 3
+    for (int row = 0; row < 4; row++) {
+      venue.getSeatStore().getAndSetStatus(row * 10 + 6, ReservedStatus.RESERVED);
+    }
+
+    List<Seat> seats = seatAllocator.claim(12);
+    assertThat(seats.size(), is(12));
+    assertThat(seats.get(seats.size() - 1).getOffset() < 20, is(true));
+  }
+
+  @Test
+  public void crossesSectionsWhenNoSectionCanSeatTheGroup() {
+    SeatAllocator seatAllocator = new SeatAllocator(venue, new int[]{0, 2});
+
+    List<Seat> seats = seatAllocator.claim(25);
+    assertThat(seats.size(), is(25));
+    assertThat(seats.get(seats.size() - 1).getOffset() >= 20, is(true));
+    assertThat(venue.getAvailabilityIndex().count(ReservedStatus.UNRESERVED), is(15));
+  }
+
+  @Test
+  public void concurrentClaimsNeverShareSeats() throws InterruptedException {
+    Venue largeVenue = new Venue(40, 50);
+    SeatAllocator seatAllocator = new SeatAllocator(largeVenue, SeatAllocator.sectionRows("4", 40));
+    List<Seat> claimed = Collections.synchronizedList(new ArrayList<>());
+    List<Thread> threads = new ArrayList<>();
+    for (int i = 0; i < 8; i++) {
+      threads.add(new Thread(() -> {
+        List<Seat> seats;
+        while ((seats = seatAllocator.claim(3)) != null) {
+          claimed.addAll(seats);
+        }
+      }));
+    }
+    threads.forEach(Thread::start);
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    Set<Integer> offsets = new HashSet<>();
+    claimed.forEach(seat -> offsets.add(seat.getOffset()));
+    assertThat(offsets.size(), is(claimed.size()));
+    assertThat(largeVenue.getAvailabilityIndex().count(ReservedStatus.ON_HOLD), is(claimed.size()));
+    assertThat(largeVenue.getAvailabilityIndex().count(ReservedStatus.UNRESERVED), is(2000 - claimed.size()));
+    assertThat(largeVenue.getAvailabilityIndex().count(ReservedStatus.UNRESERVED) < 3, is(true));
+  }
+}
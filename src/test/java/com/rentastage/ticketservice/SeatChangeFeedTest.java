@@ -0,0 +1,87 @@
+package com.rentastage.ticketservice;
+
+import com.rentastage.ticketservice.model.ReservedStatus;
+import com.rentastage.ticketservice.model.SeatHold;
+import com.rentastage.ticketservice.model.SeatStore;
+import com.rentastage.ticketservice.model.Venue;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class SeatChangeFeedTest {
+
+  Venue venue = new Venue(2, 10);
+
+  SeatStore seatStore = venue.getSeatStore();
+
+  SeatChangeFeed feed = new SeatChangeFeed(venue, 8);
+
+  DefaultTicketService ticketService = new DefaultTicketService(venue);
+
+  @Test
+  public void subscribersReadChangesInOrderAtTheirOwnPace() {
+    SeatChangeFeed.Cursor fast = feed.subscribe();
+    SeatChangeFeed.Cursor slow = feed.subscribe();
+    SeatHold seatHold = ticketService.findAndHoldSeats(2, "a@b.com");
+    ticketService.reserveSeats(seatHold.getId(), "a@b.com");
+
+    List<String> changes = new ArrayList<>();
+    assertThat(fast.poll((sequence, offset, from, to) -> changes.add(sequence + ":" + seatStore.seat(offset) + ":" + from + ">" + to), 10), is(4));
+    assertThat(changes.get(0), is("0:A1:UNRESERVED>ON_HOLD"));
+    assertThat(changes.get(1), is("1:A2:UNRESERVED>ON_HOLD"));
+    assertThat(changes.get(3), is("3:A2:ON_HOLD>RESERVED"));
+    assertThat("nothing new to read", fast.poll((sequence, offset, from, to) -> changes.add("none"), 10), is(0));
+
+    assertThat(slow.poll((sequence, offset, from, to) -> { }, 1), is(1));
+    assertThat(slow.getSequence(), is(1L));
+  }
+
+  @Test
+  public void subscriberThatFallsBehindResyncsFromTheSeatMap() {
+    SeatChangeFeed.Cursor cursor = feed.subscribe();
+    for (int i = 0; i < 5; i++) {
+      ticketService.findAndHoldSeats(2, "a@b.com");
+    }
+    assertThat(cursor.poll((sequence, offset, from, to) -> { }, 100), is(SeatChangeFeed.RESYNC));
+
+    long[] words = cursor.resync();
+    assertThat(cursor.getSequence(), is(10L));
+    assertThat("10 seats on hold", words[0], is(0x55555L));
+    ticketService.findAndHoldSeats(1, "a@b.com");
+    assertThat(cursor.poll((sequence, offset, from, to) -> assertThat(offset, is(10)), 100), is(1));
+  }
+
+  @Test
+  public void seatMapStreamSendsASnapshotAndThenTheSeatsThatChanged() {
+    SeatMapStream stream = new SeatMapStream(feed, seatStore, 100);
+    ticketService.findAndHoldSeats(1, "a@b.com");
+    ByteBuffer snapshot = ByteBuffer.wrap(stream.nextFrame());
+    assertThat(snapshot.getInt(), is(snapshot.remaining()));
+    assertThat(snapshot.get(), is(SeatMapStream.SNAPSHOT));
+    assertThat(snapshot.getLong(), is(1L));
+    assertThat(snapshot.getInt(), is(2));
+    assertThat(snapshot.getInt(), is(10));
+    assertThat(snapshot.getLong(), is(0b01L));
+    assertThat(stream.nextFrame(), nullValue());
+
+    //A1 stays on hold, A2 and A3 are held and reserved, B5 changes twice and ends up free
+    ticketService.reserveSeats(ticketService.findAndHoldSeats(2, "a@b.com").getId(), "a@b.com");
+    seatStore.getAndSetStatus(14, ReservedStatus.ON_HOLD);
+    seatStore.getAndSetStatus(14, ReservedStatus.UNRESERVED);
+    ByteBuffer delta = ByteBuffer.wrap(stream.nextFrame());
+    assertThat(delta.getInt(), is(delta.remaining()));
+    assertThat(delta.get(), is(SeatMapStream.DELTA));
+    assertThat(delta.getLong(), is(7L));
+    assertThat(delta.getInt(), is(3));
+    assertThat("A2 reserved", delta.get(), is((byte) (1 << 2 | 2)));
+    assertThat("A3 reserved", delta.get(), is((byte) (1 << 2 | 2)));
+    assertThat("B5 free", delta.get(), is((byte) (12 << 2)));
+    assertThat(delta.remaining(), is(0));
+  }
+}
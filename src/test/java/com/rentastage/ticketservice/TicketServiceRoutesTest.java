@@ -0,0 +1,120 @@
+package com.rentastage.ticketservice;
+
+import com.rentastage.ticketservice.model.Venue;
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import java.nio.ByteBuffer;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class TicketServiceRoutesTest {
+
+  Venue venue = new Venue(2, 10);
+
+  DefaultTicketService ticketService = new DefaultTicketService(venue);
+
+  AsyncTicketService asyncTicketService = new AsyncTicketService(ticketService, 2, 16);
+
+  WebTestClient client = WebTestClient.bindToRouterFunction(new TicketServiceRoutes(asyncTicketService, ticketService, venue,
+      new SeatChangeFeed(venue, 64)).routes()).build();
+
+  @After
+  public void shutdown() {
+    asyncTicketService.shutdown();
+  }
+
+  @Test
+  public void holdAndReserveSeats() {
+    client.post().uri("/holds").contentType(MediaType.APPLICATION_JSON)
+        .syncBody("{\"numSeats\":3,\"customerEmail\":\"a@b.com\"}")
+        .exchange()
+        .expectStatus().isCreated()
+        .expectBody()
+        .jsonPath("$.seats.length()").isEqualTo(3)
+        .jsonPath("$.seats[0]").isEqualTo("A1");
+    int seatHoldId = ticketService.seatHoldMap.keySet().iterator().next();
+
+    client.post().uri("/holds/{id}/reservation", seatHoldId).contentType(MediaType.APPLICATION_JSON)
+        .syncBody("{\"customerEmail\":\"A@B.com\"}")
+        .exchange()
+        .expectStatus().isCreated()
+        .expectBody()
+        .jsonPath("$.confirmationCode").isEqualTo(ticketService.reservationMap.values().iterator().next().getConfirmationCode());
+
+    client.get().uri("/seats/available").exchange()
+        .expectStatus().isOk()
+        .expectBody().jsonPath("$.available").isEqualTo(17);
+  }
+
+  @Test
+  public void errorsAreConflictsOrBadRequests() {
+    client.post().uri("/holds").contentType(MediaType.APPLICATION_JSON)
+        .syncBody("{\"numSeats\":21,\"customerEmail\":\"a@b.com\"}")
+        .exchange()
+        .expectStatus().isEqualTo(409)
+        .expectBody().jsonPath("$.message").isEqualTo("Cannot hold 21 seats! 20 seats available");
+
+    client.post().uri("/holds/{id}/reservation", 1).contentType(MediaType.APPLICATION_JSON)
+        .syncBody("{\"customerEmail\":\"a@b.com\"}")
+        .exchange()
+        .expectStatus().isEqualTo(409);
+
+    client.post().uri("/holds").contentType(MediaType.APPLICATION_JSON)
+        .syncBody("{\"numSeats\":2}")
+        .exchange()
+        .expectStatus().isBadRequest();
+  }
+
+  @Test
+  public void seatMapInJsonAndPacked() {
+    ticketService.findAndHoldSeats(2, "a@b.com");
+    ticketService.reserveSeats(ticketService.findAndHoldSeats(1, "a@b.com").getId(), "a@b.com");
+
+    client.get().uri("/seats").accept(MediaType.APPLICATION_JSON).exchange()
+        .expectStatus().isOk()
+        .expectBody()
+        .jsonPath("$.rows[1]").isEqualTo("B")
+        .jsonPath("$.seatsPerRow").isEqualTo(10)
+        .jsonPath("$.seats").isEqualTo("HHR.................");
+
+    byte[] packed = client.get().uri("/seats").accept(MediaType.APPLICATION_OCTET_STREAM).exchange()
+        .expectStatus().isOk()
+        .expectBody(byte[].class).returnResult().getResponseBody();
+    ByteBuffer seatMap = ByteBuffer.wrap(packed);
+    assertThat(seatMap.getInt(), is(2));
+    assertThat(seatMap.getInt(), is(10));
+    assertThat(seatMap.getLong(), is(0b100101L));
+    assertThat(seatMap.remaining(), is(0));
+  }
+
+  @Test
+  public void seatMapIsJsonUnlessPackedIsAskedFor() {
+    client.get().uri("/seats").exchange()
+        .expectStatus().isOk()
+        .expectHeader().contentTypeCompatibleWith(MediaType.APPLICATION_JSON)
+        .expectBody().jsonPath("$.seats").isEqualTo("....................");
+
+    client.get().uri("/seats").accept(MediaType.ALL).exchange()
+        .expectStatus().isOk()
+        .expectHeader().contentTypeCompatibleWith(MediaType.APPLICATION_JSON);
+  }
+
+  @Test
+  public void seatMapChangesStartWithASnapshot() {
+    ticketService.findAndHoldSeats(2, "a@b.com");
+    byte[] frame = client.get().uri("/seats/changes").exchange()
+        .expectStatus().isOk()
+        .returnResult(byte[].class).getResponseBody().blockFirst();
+    ByteBuffer snapshot = ByteBuffer.wrap(frame);
+    assertThat(snapshot.getInt(), is(snapshot.remaining()));
+    assertThat(snapshot.get(), is(SeatMapStream.SNAPSHOT));
+    assertThat(snapshot.getLong(), is(2L));
+    snapshot.getInt();
+    snapshot.getInt();
+    assertThat(snapshot.getLong(), is(0b0101L));
+  }
+}
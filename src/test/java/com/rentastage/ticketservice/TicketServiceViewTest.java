@@ -0,0 +1,41 @@
+package com.rentastage.ticketservice;
+
+import com.rentastage.ticketservice.model.SeatHold;
+import com.rentastage.ticketservice.model.Venue;
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.assertThat;
+
+public class TicketServiceViewTest {
+
+  Venue venue = new Venue(3, 20);
+
+  DefaultTicketService ticketService = new DefaultTicketService(venue);
+
+  @Test
+  public void changedRowsAreRenderedAgain() {
+    assertThat(ticketService.toString(), containsString("A -------------------- A"));
+    SeatHold seatHold = ticketService.findAndHoldSeats(3, "a@b.com");
+    assertThat(ticketService.toString(), containsString("A hhh----------------- A"));
+    ticketService.reserveSeats(seatHold.getId(), "a@b.com");
+    String view = ticketService.toString();
+    assertThat(view, containsString("A RRR----------------- A"));
+    assertThat(view, containsString("B -------------------- B"));
+    assertThat(view, containsString("Number Of Seats Available: 57"));
+  }
+
+  @Test
+  public void holdsAreListedAPageAtATime() {
+    for (int i = 0; i < TicketServiceView.PAGE_SIZE + 5; i++) {
+      ticketService.findAndHoldSeats(1, "customer" + i + "@example.com");
+    }
+    String firstPage = ticketService.render(1);
+    assertThat(firstPage, containsString("Page 1 of 2, 55 holds"));
+    assertThat(ticketService.render(2), containsString("Page 2 of 2, 55 holds"));
+    assertThat("reservations fit on one page", firstPage, not(containsString("reservations")));
+    assertThat(ticketService.toString(), is(firstPage));
+  }
+}
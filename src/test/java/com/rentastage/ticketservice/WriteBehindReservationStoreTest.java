@@ -0,0 +1,196 @@
+package com.rentastage.ticketservice;
+
+import com.rentastage.ticketservice.model.Reservation;
+import com.rentastage.ticketservice.model.Seat;
+import com.rentastage.ticketservice.model.SnowflakeIdGenerator;
+import com.rentastage.ticketservice.model.Venue;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.TransientDataAccessResourceException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class WriteBehindReservationStoreTest {
+
+  private final Venue venue = new Venue(3, 10);
+
+  private final SeatAllocator seatAllocator = new SeatAllocator(venue);
+
+  private JdbcTemplate jdbcTemplate;
+
+  @Before
+  public void createSchema() {
+    DriverManagerDataSource dataSource = new DriverManagerDataSource("jdbc:h2:mem:reservations;DB_CLOSE_DELAY=-1");
+    new ResourceDatabasePopulator(new ClassPathResource("schema.sql")).execute(dataSource);
+    jdbcTemplate = new JdbcTemplate(dataSource);
+  }
+
+  @After
+  public void dropSchema() {
+    jdbcTemplate.execute("DROP ALL OBJECTS");
+  }
+
+  private Reservation reservation(long id, int numSeats) {
+    List<Seat> seats = seatAllocator.claim(numSeats);
+    seatAllocator.reserve(seats);
+    return Reservation.newReservation().id(id).reserves(seats).customerEmail("a@b.com").build();
+  }
+
+  @Test
+  public void closeWritesQueuedReservationsAndTheirSeats() {
+    WriteBehindReservationStore store = new WriteBehindReservationStore(jdbcTemplate, 4, 3);
+    for (int i = 1; i <= 10; i++) {
+      store.store(reservation(i, i % 2 + 1));
+    }
+    store.close();
+
+    assertThat(store.getWritten(), is(10L));
+    assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM reservation", Integer.class), is(10));
+    assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM reserved_seat", Integer.class), is(15));
+    assertThat(jdbcTemplate.queryForObject("SELECT confirmation_code FROM reservation WHERE id = 1", String.class),
+        is("0000-0000-00001"));
+    assertThat(jdbcTemplate.queryForObject("SELECT row_name FROM reserved_seat WHERE reservation_id = 1 AND seat_offset = 0",
+        String.class), is(venue.getSeatStore().seat(0).getRowName()));
+  }
+
+  @Test
+  public void catalogReservationsAreStoredWithTheirEvent() {
+    WriteBehindReservationStore store = new WriteBehindReservationStore(jdbcTemplate, 4, 3);
+    EventCatalog catalog = new EventCatalog(1, 16, SnowflakeIdGenerator.LOCAL, store);
+    catalog.createEvent("Matinee", 2, 10);
+    int evening = catalog.createEvent("Evening", 2, 10);
+    try {
+      catalog.reserveSeats(evening, catalog.findAndHoldSeats(evening, 2, "a@b.com").getId(), "a@b.com");
+      store.store(reservation(1, 1));
+    } finally {
+      catalog.shutdown();
+    }
+    store.close();
+
+    assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM reservation WHERE event_id = ?", Integer.class, evening),
+        is(1));
+    assertThat(jdbcTemplate.queryForObject("SELECT event_id FROM reservation WHERE id = 1", Integer.class),
+        is(WriteBehindReservationStore.DEFAULT_EVENT_ID));
+  }
+
+  @Test
+  public void dropsBatchThatCannotBeWritten() {
+    WriteBehindReservationStore store = new WriteBehindReservationStore(jdbcTemplate, 4, 1);
+    store.store(reservation(1, 1));
+    store.store(reservation(1, 1));
+    store.store(reservation(2, 1));
+    store.close();
+
+    assertThat(store.getWritten(), is(2L));
+    assertThat(store.getDropped(), is(1L));
+    assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM reserved_seat", Integer.class), is(2));
+  }
+
+  @Test
+  public void dropsReservationsOnceClosed() {
+    WriteBehindReservationStore store = new WriteBehindReservationStore(jdbcTemplate, 4, 1);
+    Reservation reservation = reservation(1, 1);
+    store.close();
+    store.store(reservation);
+
+    assertThat(store.getDropped(), is(1L));
+    assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM reservation", Integer.class), is(0));
+  }
+
+  @Test
+  public void reservingSucceedsWhenTheStoreCannotTakeTheReservation() {
+    WriteBehindReservationStore store = new WriteBehindReservationStore(jdbcTemplate, 4, 1);
+    store.close();
+    DefaultTicketService ticketService = new DefaultTicketService(venue, SnowflakeIdGenerator.LOCAL, Journal.NONE, store);
+    int seatHoldId = ticketService.findAndHoldSeats(2, "a@b.com").getId();
+
+    String confirmationCode = ticketService.reserveSeats(seatHoldId, "a@b.com");
+    assertThat("a retry gets the same code", ticketService.reserveSeats(seatHoldId, "a@b.com"), is(confirmationCode));
+    assertThat(store.getDropped(), is(1L));
+  }
+
+  @Test
+  public void onlyTheReservationsTheDatabaseRejectsAreDropped() {
+    WriteBehindReservationStore store = new WriteBehindReservationStore(jdbcTemplate, 4, 3);
+    store.store(reservation(1, 1));
+    store.store(reservation(1, 1));
+    store.store(reservation(2, 1));
+    store.close();
+
+    assertThat(store.getWritten(), is(2L));
+    assertThat(store.getDropped(), is(1L));
+  }
+
+  @Test
+  public void retriesWhileTheDatabaseIsUnavailable() {
+    AtomicInteger failures = new AtomicInteger(2);
+    JdbcTemplate unavailable = new JdbcTemplate(jdbcTemplate.getDataSource()) {
+      @Override
+      public int[] batchUpdate(String sql, List<Object[]> batchArgs) {
+        if (failures.getAndDecrement() > 0) {
+          throw new TransientDataAccessResourceException("Database is down");
+        }
+        return super.batchUpdate(sql, batchArgs);
+      }
+    };
+    WriteBehindReservationStore store = new WriteBehindReservationStore(unavailable, 4, 3, 3, 1);
+    store.store(reservation(1, 2));
+    store.store(reservation(2, 1));
+    store.close();
+
+    assertThat(store.getWritten(), is(2L));
+    assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM reserved_seat", Integer.class), is(3));
+  }
+
+  @Test
+  public void aPoisonedReservationInTheMiddleOfABatchOnlyDropsItself() {
+    JdbcTemplate poisoned = new JdbcTemplate(jdbcTemplate.getDataSource()) {
+      @Override
+      public int[] batchUpdate(String sql, List<Object[]> batchArgs) {
+        if (batchArgs.stream().anyMatch(args -> args[0].equals(2L))) {
+          //Rejected in a batch, and never written on its own either
+          if (batchArgs.size() > 1) {
+            throw new DataIntegrityViolationException("Rejected batch");
+          }
+          throw new TransientDataAccessResourceException("Cannot write reservation 2");
+        }
+        return super.batchUpdate(sql, batchArgs);
+      }
+    };
+    WriteBehindReservationStore store = new WriteBehindReservationStore(poisoned, 4, 3, 2, 1);
+    store.store(reservation(1, 1));
+    store.store(reservation(2, 1));
+    store.store(reservation(3, 1));
+    store.close();
+
+    assertThat(store.getWritten(), is(2L));
+    assertThat(store.getDropped(), is(1L));
+    assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM reservation WHERE id IN (1, 3)", Integer.class), is(2));
+  }
+
+  @Test
+  public void dropsAtOnceWhenTheWriterHasStopped() {
+    JdbcTemplate broken = new JdbcTemplate(jdbcTemplate.getDataSource()) {
+      @Override
+      public int[] batchUpdate(String sql, List<Object[]> batchArgs) {
+        throw new OutOfMemoryError("Writer dies");
+      }
+    };
+    WriteBehindReservationStore store = new WriteBehindReservationStore(broken, 1, 1);
+    //The queue fills once the writer is gone, the last store must drop instead of waiting for room
+    for (int i = 1; i <= 3; i++) {
+      store.store(reservation(i, 1));
+    }
+    assertThat(store.getDropped(), is(1L));
+  }
+}
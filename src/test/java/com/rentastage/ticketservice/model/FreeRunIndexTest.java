@@ -0,0 +1,70 @@
+package com.rentastage.ticketservice.model;
+
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class FreeRunIndexTest {
+
+  private final Venue venue = new Venue(3, 10);
+
+  private final FreeRunIndex index = venue.getFreeRunIndex();
+
+  private void setStatus(int row, int fromCol, int toCol, ReservedStatus status) {
+    for (int col = fromCol; col < toCol; col++) {
+      venue.getSeatLayout()[row][col].setStatus(status);
+    }
+  }
+
+  @Test
+  public void initialRuns() {
+    assertThat(index.longestRun(), is(10));
+    assertThat(index.freeRunCount(), is(3));
+    assertThat(index.findRow(10), is(0));
+    assertThat(index.findRun(0, 10), is(0));
+    assertThat(index.findRow(11), is(-1));
+    assertThat(index.findRun(2, 11), is(-1));
+  }
+
+  @Test
+  public void findsLeftmostRunInRowNearestStage() {
+    //row 0: HHH----HH-
+    setStatus(0, 0, 3, ReservedStatus.ON_HOLD);
+    setStatus(0, 7, 9, ReservedStatus.RESERVED);
+    assertThat(index.longestRun(0), is(4));
+    assertThat(index.findRun(0, 1), is(3));
+    assertThat(index.findRun(0, 4), is(3));
+    assertThat(index.findRun(0, 5), is(-1));
+    assertThat(index.findRow(4), is(0));
+    assertThat(index.findRow(5), is(1));
+
+    //row 1: -----HHHHH, the run crosses the middle of the tree
+    setStatus(1, 5, 10, ReservedStatus.ON_HOLD);
+    assertThat(index.findRow(5), is(1));
+    assertThat(index.findRow(6), is(2));
+    setStatus(1, 0, 2, ReservedStatus.ON_HOLD);
+    assertThat(index.findRun(1, 3), is(2));
+    assertThat(index.findRow(5), is(2));
+  }
+
+  @Test
+  public void releasedSeatsJoinNeighbouringRuns() {
+    setStatus(0, 0, 10, ReservedStatus.RESERVED);
+    setStatus(1, 0, 10, ReservedStatus.RESERVED);
+    setStatus(2, 0, 10, ReservedStatus.RESERVED);
+    assertThat(index.longestRun(), is(0));
+    assertThat(index.freeRunCount(), is(0));
+    assertThat(index.findRow(1), is(-1));
+
+    setStatus(2, 4, 6, ReservedStatus.UNRESERVED);
+    setStatus(2, 7, 8, ReservedStatus.UNRESERVED);
+    assertThat(index.longestRun(), is(2));
+    assertThat(index.freeRunCount(), is(2));
+    setStatus(2, 6, 7, ReservedStatus.UNRESERVED);
+    assertThat(index.longestRun(), is(4));
+    assertThat(index.freeRunCount(), is(1));
+    assertThat(index.findRow(4), is(2));
+    assertThat(index.findRun(2, 4), is(4));
+  }
+}
@@ -30,6 +30,16 @@ public class ReservationTest {
     assertThat(actual.split("\\|").length, is(5));
   }
 
+  @Test
+  public void confirmationCode() {
+    Seat seat = Seat.newSeat().number(1).rowName("A").build();
+    seat.setStatus(ReservedStatus.RESERVED);
+    Reservation reservation = Reservation.newReservation().id(32 * 32 + 31).reserves(Arrays.asList(seat)).customerEmail("a@bc.com").build();
+
+    assertThat(reservation.getConfirmationCode(), is("0000-0000-0010Z"));
+    assertThat(Utils.confirmationCode(Long.MAX_VALUE), is("7ZZZ-ZZZZ-ZZZZZ"));
+  }
+
   @Test
   public void build() {
     Seat[] holds = {
@@ -0,0 +1,93 @@
+package com.rentastage.ticketservice.model;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class SeatAvailabilityIndexTest {
+
+  @Test
+  public void initialCounts() {
+    SeatAvailabilityIndex index = new SeatAvailabilityIndex(130);
+    assertThat(index.count(ReservedStatus.UNRESERVED), is(130));
+    assertThat(index.count(ReservedStatus.ON_HOLD), is(0));
+    assertThat(index.count(ReservedStatus.RESERVED), is(0));
+    assertThat(index.nextSeat(ReservedStatus.UNRESERVED, 0), is(0));
+    assertThat(index.nextSeat(ReservedStatus.UNRESERVED, 129), is(129));
+    assertThat(index.nextSeat(ReservedStatus.UNRESERVED, 130), is(-1));
+    assertThat(index.nextSeat(ReservedStatus.ON_HOLD, 0), is(-1));
+  }
+
+  @Test
+  public void tracksTransitions() {
+    Venue venue = new Venue();
+    SeatAvailabilityIndex index = venue.getAvailabilityIndex();
+    Seat[] firstRow = venue.getSeatLayout()[0];
+    int total = venue.getNoOfRows() * venue.getNoOfSeatsPerRow();
+
+    firstRow[0].setStatus(ReservedStatus.ON_HOLD);
+    firstRow[1].setStatus(ReservedStatus.RESERVED);
+    assertThat(index.count(ReservedStatus.UNRESERVED), is(total - 2));
+    assertThat(index.count(ReservedStatus.ON_HOLD), is(1));
+    assertThat(index.count(ReservedStatus.RESERVED), is(1));
+    assertThat(index.nextSeat(ReservedStatus.UNRESERVED, 0), is(2));
+    assertThat(index.nextSeat(ReservedStatus.ON_HOLD, 0), is(0));
+    assertThat(index.nextSeat(ReservedStatus.RESERVED, 0), is(1));
+    assertThat(index.count(ReservedStatus.UNRESERVED, 0, 2), is(0));
+    assertThat(index.count(ReservedStatus.UNRESERVED, 1, 70), is(68));
+    assertThat(index.count(ReservedStatus.UNRESERVED, 64, total), is(total - 64));
+
+    //setting the same status again is not a transition
+    firstRow[0].setStatus(ReservedStatus.ON_HOLD);
+    assertThat(index.count(ReservedStatus.ON_HOLD), is(1));
+
+    firstRow[0].setStatus(ReservedStatus.UNRESERVED);
+    assertThat(index.nextSeat(ReservedStatus.UNRESERVED, 0), is(0));
+    assertThat(index.nextSeat(ReservedStatus.ON_HOLD, 0), is(-1));
+  }
+
+  @Test
+  public void consistentUnderConcurrentTransitions() throws InterruptedException {
+    Venue venue = new Venue();
+    SeatAvailabilityIndex index = venue.getAvailabilityIndex();
+    Seat[] seats = Arrays.stream(venue.getSeatLayout()).flatMap(Arrays::stream).toArray(Seat[]::new);
+    int threads = 8;
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    CountDownLatch start = new CountDownLatch(1);
+    for (int t = 0; t < threads; t++) {
+      int seed = t;
+      executor.execute(() -> {
+        try {
+          start.await();
+        } catch (InterruptedException e) {
+          return;
+        }
+        ReservedStatus[] statuses = ReservedStatus.values();
+        for (int i = 0; i < 20000; i++) {
+          seats[(i * 31 + seed) % seats.length].setStatus(statuses[(i + seed) % statuses.length]);
+        }
+      });
+    }
+    start.countDown();
+    executor.shutdown();
+    executor.awaitTermination(30, TimeUnit.SECONDS);
+
+    for (ReservedStatus status : ReservedStatus.values()) {
+      int expected = (int) Arrays.stream(seats).filter(seat -> seat.getStatus() == status).count();
+      assertThat(index.count(status), is(expected));
+      int found = 0;
+      for (int offset = index.nextSeat(status, 0); offset >= 0; offset = index.nextSeat(status, offset + 1)) {
+        assertThat(seats[offset].getStatus(), is(status));
+        found++;
+      }
+      assertThat(found, is(expected));
+    }
+  }
+}
@@ -0,0 +1,194 @@
+package com.rentastage.ticketservice.model;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Path;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class SeatStateVersionsTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  Venue venue = new Venue(10, 300);
+
+  SeatStore seatStore = venue.getSeatStore();
+
+  SeatStateVersions versions = venue.getSeatStateVersions();
+
+  int size = seatStore.size();
+
+  @Test
+  public void aVersionIsPublishedWhenTheLastOverlappingWriteFinishes() {
+    versions.beginWrite();
+    seatStore.getAndSetStatus(0, ReservedStatus.ON_HOLD);
+    versions.beginWrite();
+    seatStore.getAndSetStatus(2999, ReservedStatus.RESERVED);
+    versions.endWrite();
+    assertThat("a write is still running", versions.getEpoch(), is(0L));
+    assertThat(versions.count(ReservedStatus.UNRESERVED), is(size));
+    versions.endWrite();
+
+    assertThat(versions.getEpoch(), is(1L));
+    assertThat(versions.count(ReservedStatus.UNRESERVED), is(size - 2));
+    assertThat(versions.read(state -> state.getStatus(0)), is(ReservedStatus.ON_HOLD));
+    assertThat(versions.read(state -> state.getStatus(2999)), is(ReservedStatus.RESERVED));
+    assertThat(versions.read(state -> state.copyStatusWords(size)), is(seatStore.copyStatusWords()));
+
+    versions.beginWrite();
+    versions.endWrite();
+    assertThat("nothing changed", versions.getEpoch(), is(1L));
+  }
+
+  @Test
+  public void aVersionOfASharedStoreShowsTheSeatsOfTheLastSync() throws Exception {
+    Path file = folder.newFolder().toPath().resolve("seats.bin");
+    Venue venue = new Venue(10, 300, file);
+    SeatStore seatStore = venue.getSeatStore();
+    SeatStateVersions versions = venue.getSeatStateVersions();
+    //Another process holds a seat in the page the next write copies
+    SeatStore other = new SeatStore(Venue.createRowNames(10), 300, MappedStatusWords.open(file, 10, 300), null);
+    other.getAndSetStatus(1, ReservedStatus.ON_HOLD);
+
+    versions.beginWrite();
+    seatStore.getAndSetStatus(0, ReservedStatus.ON_HOLD);
+    versions.endWrite();
+    assertThat(versions.count(ReservedStatus.ON_HOLD), is(1));
+    assertThat("not synced yet", versions.read(state -> state.getStatus(1)), is(ReservedStatus.UNRESERVED));
+
+    venue.syncSharedSeats();
+    assertThat(versions.count(ReservedStatus.ON_HOLD), is(2));
+    assertThat(versions.read(state -> state.getStatus(1)), is(ReservedStatus.ON_HOLD));
+  }
+
+  @Test
+  public void aVersionStaysUnchangedWhileItIsRead() {
+    versions.read(state -> {
+      for (int i = 0; i < 5; i++) {
+        versions.beginWrite();
+        seatStore.getAndSetStatus(i, ReservedStatus.ON_HOLD);
+        versions.endWrite();
+      }
+      assertThat(state.getStatus(0), is(ReservedStatus.UNRESERVED));
+      assertThat(state.getStatus(4), is(ReservedStatus.UNRESERVED));
+      return null;
+    });
+    assertThat(versions.getEpoch(), is(5L));
+    assertThat(versions.read(state -> state.getStatus(4)), is(ReservedStatus.ON_HOLD));
+  }
+
+  @Test
+  public void readersOnlySeeWholeWritesWhileWritersRun() throws Exception {
+    int holdSize = 4;
+    int writers = 2;
+    ExecutorService executor = Executors.newFixedThreadPool(writers + 2);
+    AtomicInteger nextHold = new AtomicInteger();
+    AtomicBoolean done = new AtomicBoolean();
+    AtomicInteger reads = new AtomicInteger();
+    try {
+      for (int w = 0; w < writers; w++) {
+        executor.submit(() -> {
+          int hold;
+          while ((hold = nextHold.getAndIncrement()) < size / holdSize) {
+            versions.beginWrite();
+            for (int seat = 0; seat < holdSize; seat++) {
+              //Spread over the pages, so a hold changes two pages at a time
+              seatStore.getAndSetStatus((hold * holdSize + seat) * 7 % size, ReservedStatus.ON_HOLD);
+            }
+            versions.endWrite();
+          }
+        });
+      }
+      Future<?>[] readers = new Future<?>[2];
+      for (int r = 0; r < readers.length; r++) {
+        readers[r] = executor.submit(() -> {
+          do {
+            versions.read(state -> {
+              int held = 0;
+              for (int offset = 0; offset < size; offset++) {
+                held += state.getStatus(offset) == ReservedStatus.ON_HOLD ? 1 : 0;
+              }
+              assertThat(held, is(state.count(ReservedStatus.ON_HOLD)));
+              assertThat("only whole holds", held % holdSize, is(0));
+              return null;
+            });
+            reads.incrementAndGet();
+          } while (!done.get());
+        });
+      }
+      while (nextHold.get() < size / holdSize) {
+        Thread.sleep(1);
+      }
+      done.set(true);
+      for (Future<?> reader : readers) {
+        reader.get(10, TimeUnit.SECONDS);
+      }
+    } finally {
+      executor.shutdownNow();
+      executor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+    assertThat(reads.get(), greaterThan(0));
+    assertThat(versions.count(ReservedStatus.ON_HOLD), is(size));
+  }
+
+  @Test
+  public void writesWaitOnceOverlappingWritesKeepTheVersionBehindTooLong() throws Exception {
+    SeatStateVersions lagging = new SeatStateVersions(seatStore, venue.getAvailabilityIndex(), 1);
+    venue.addStatusListener(lagging);
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      lagging.beginWrite();
+      seatStore.getAndSetStatus(0, ReservedStatus.ON_HOLD);
+      Thread.sleep(5);
+      executor.submit(() -> {
+        lagging.beginWrite();
+        seatStore.getAndSetStatus(1, ReservedStatus.ON_HOLD);
+        lagging.endWrite();
+      }).get(10, TimeUnit.SECONDS);
+      assertThat("a write is still running", lagging.getEpoch(), is(0L));
+
+      Future<?> waiting = executor.submit(() -> {
+        lagging.beginWrite();
+        seatStore.getAndSetStatus(2, ReservedStatus.ON_HOLD);
+        lagging.endWrite();
+      });
+      Thread.sleep(50);
+      assertThat("waits for the running write", waiting.isDone(), is(false));
+      lagging.endWrite();
+      waiting.get(10, TimeUnit.SECONDS);
+      assertThat(lagging.read(state -> state.count(ReservedStatus.ON_HOLD)), is(3));
+    } finally {
+      executor.shutdownNow();
+      executor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+  }
+
+  @Test
+  public void readsFromManyShortLivedThreadsReuseTheReaderSlots() throws Exception {
+    for (int i = 0; i < 200; i++) {
+      int seat = i;
+      Thread thread = new Thread(() -> versions.read(state -> {
+        versions.beginWrite();
+        seatStore.getAndSetStatus(seat, ReservedStatus.ON_HOLD);
+        versions.endWrite();
+        return state.getStatus(seat);
+      }));
+      thread.start();
+      thread.join();
+    }
+    assertThat(versions.getEpoch(), is(200L));
+    assertThat(versions.read(state -> state.count(ReservedStatus.ON_HOLD)), is(200));
+  }
+}
@@ -0,0 +1,153 @@
+package com.rentastage.ticketservice.model;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.assertThat;
+
+public class SeatStoreTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private final SeatStore store = new SeatStore(new String[]{"A", "B", "C"}, 30, null);
+
+  @Test
+  public void seatsAreViewsOfTheStore() {
+    Seat seat = store.seat(store.offset(1, 4));
+    assertThat(seat.getRowName(), is("B"));
+    assertThat(seat.getNumber(), is(5));
+    assertThat(seat.getCode(), is((1 << 16) | 4));
+    assertThat(seat.toString(), is("B5"));
+    assertThat(seat, is(store.seat(34)));
+    assertThat(seat.hashCode(), is(store.seat(34).hashCode()));
+    assertThat(seat, not(store.seat(35)));
+
+    List<Seat> seats = store.asList();
+    assertThat(seats.size(), is(90));
+    assertThat(seats.get(89).toString(), is("C30"));
+  }
+
+  @Test
+  public void statusIsPackedPerSeat() {
+    //seats 31 and 32 share a word boundary, 33 shares a word with 32
+    store.seat(31).setStatus(ReservedStatus.RESERVED);
+    store.seat(32).setStatus(ReservedStatus.ON_HOLD);
+    assertThat(store.getStatus(30), is(ReservedStatus.UNRESERVED));
+    assertThat(store.getStatus(31), is(ReservedStatus.RESERVED));
+    assertThat(store.getStatus(32), is(ReservedStatus.ON_HOLD));
+    assertThat(store.getStatus(33), is(ReservedStatus.UNRESERVED));
+
+    assertThat(store.compareAndSetStatus(33, ReservedStatus.ON_HOLD, ReservedStatus.RESERVED), is(false));
+    assertThat(store.compareAndSetStatus(32, ReservedStatus.ON_HOLD, ReservedStatus.RESERVED), is(true));
+    assertThat(store.getStatus(32), is(ReservedStatus.RESERVED));
+    assertThat(store.getAndSetStatus(31, ReservedStatus.UNRESERVED), is(ReservedStatus.RESERVED));
+    assertThat(store.getStatus(31), is(ReservedStatus.UNRESERVED));
+  }
+
+  @Test
+  public void notifiesTransitions() {
+    int[] transitions = new int[1];
+    SeatStore listened = new SeatStore(new String[]{"A"}, 10, (store, offset, from, to) -> transitions[0]++);
+    listened.seat(3).setStatus(ReservedStatus.ON_HOLD);
+    listened.seat(3).setStatus(ReservedStatus.ON_HOLD);
+    listened.compareAndSetStatus(3, ReservedStatus.UNRESERVED, ReservedStatus.ON_HOLD);
+    listened.compareAndSetStatus(3, ReservedStatus.ON_HOLD, ReservedStatus.RESERVED);
+    assertThat(transitions[0], is(2));
+  }
+
+  @Test
+  public void sharedStoreReportsEveryChangeOnce() throws IOException {
+    //Two mappings of one file, as two processes would have
+    Path file = folder.newFolder().toPath().resolve("seats.bin");
+    List<String> mine = new ArrayList<>();
+    List<String> theirs = new ArrayList<>();
+    String[] rowNames = {"A", "B"};
+    SeatStore store = new SeatStore(rowNames, 40, MappedStatusWords.open(file, 2, 40),
+        (s, offset, from, to) -> mine.add(offset + ":" + from + ">" + to));
+    SeatStore other = new SeatStore(rowNames, 40, MappedStatusWords.open(file, 2, 40),
+        (s, offset, from, to) -> theirs.add(offset + ":" + from + ">" + to));
+    assertThat(store.isShared(), is(true));
+
+    assertThat(other.compareAndSetStatus(33, ReservedStatus.UNRESERVED, ReservedStatus.ON_HOLD), is(true));
+    assertThat("the seat is taken for both", store.compareAndSetStatus(33, ReservedStatus.UNRESERVED,
+        ReservedStatus.ON_HOLD), is(false));
+    assertThat(store.getStatus(33), is(ReservedStatus.ON_HOLD));
+    assertThat(mine.isEmpty(), is(true));
+    store.getAndSetStatus(79, ReservedStatus.RESERVED);
+    other.getAndSetStatus(33, ReservedStatus.RESERVED);
+
+    assertThat(store.syncSharedChanges(), is(1));
+    assertThat(mine.toString(), is("[79:UNRESERVED>RESERVED, 33:UNRESERVED>RESERVED]"));
+    assertThat(store.syncSharedChanges(), is(0));
+    assertThat(other.syncSharedChanges(), is(1));
+    assertThat(theirs.toString(), is("[33:UNRESERVED>ON_HOLD, 33:ON_HOLD>RESERVED, 79:UNRESERVED>RESERVED]"));
+
+    SeatStore reopened = new SeatStore(rowNames, 40, MappedStatusWords.open(file, 2, 40), null);
+    assertThat(reopened.getStatus(79), is(ReservedStatus.RESERVED));
+    assertThat(reopened.syncSharedChanges(), is(2));
+  }
+
+  @Test
+  public void seatsHeldByAProcessThatDiedAreReleasedByTheNextProcessAlone() throws Exception {
+    Path file = folder.newFolder().toPath().resolve("seats.bin");
+    Process process = new ProcessBuilder(Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+        "-cp", System.getProperty("java.class.path"), HoldAndDie.class.getName(), file.toString())
+        .inheritIO().start();
+    assertThat(process.waitFor(60, TimeUnit.SECONDS), is(true));
+
+    SeatStore restarted = new SeatStore(new String[]{"A"}, 40, MappedStatusWords.open(file, 1, 40), null);
+    assertThat(restarted.getStatus(3), is(ReservedStatus.UNRESERVED));
+    assertThat(restarted.getStatus(34), is(ReservedStatus.UNRESERVED));
+    assertThat("reservations are kept", restarted.getStatus(4), is(ReservedStatus.RESERVED));
+  }
+
+  @Test
+  public void seatsHeldByAProcessThatDiedAreReleasedWhileOthersKeepRunning() throws Exception {
+    Path file = folder.newFolder().toPath().resolve("seats.bin");
+    //This process keeps the file open while the other one holds seats and dies
+    SeatStore running = new SeatStore(new String[]{"A"}, 40, MappedStatusWords.open(file, 1, 40), null);
+    running.getAndSetStatus(5, ReservedStatus.ON_HOLD);
+    Process process = new ProcessBuilder(Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+        "-cp", System.getProperty("java.class.path"), HoldAndDie.class.getName(), file.toString())
+        .inheritIO().start();
+    assertThat(process.waitFor(60, TimeUnit.SECONDS), is(true));
+    assertThat(running.getStatus(3), is(ReservedStatus.ON_HOLD));
+
+    assertThat(running.syncSharedChanges(), is(1));
+    assertThat(running.getStatus(3), is(ReservedStatus.UNRESERVED));
+    assertThat(running.getStatus(34), is(ReservedStatus.UNRESERVED));
+    assertThat("reservations are kept", running.getStatus(4), is(ReservedStatus.RESERVED));
+    assertThat("holds of running processes are kept", running.getStatus(5), is(ReservedStatus.ON_HOLD));
+  }
+
+  /**
+   * Holds seats in a shared file and dies without releasing them
+   */
+  public static class HoldAndDie {
+    public static void main(String[] args) {
+      SeatStore store = new SeatStore(new String[]{"A"}, 40, MappedStatusWords.open(Paths.get(args[0]), 1, 40), null);
+      store.getAndSetStatus(3, ReservedStatus.ON_HOLD);
+      store.getAndSetStatus(34, ReservedStatus.ON_HOLD);
+      store.getAndSetStatus(4, ReservedStatus.RESERVED);
+      Runtime.getRuntime().halt(0);
+    }
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void sharedFileMustMatchTheVenue() throws IOException {
+    Path file = folder.newFolder().toPath().resolve("seats.bin");
+    MappedStatusWords.open(file, 2, 40);
+    MappedStatusWords.open(file, 4, 20);
+  }
+}
@@ -0,0 +1,63 @@
+package com.rentastage.ticketservice.model;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class SnowflakeIdGeneratorTest {
+
+  AtomicLong clock = new AtomicLong(SnowflakeIdGenerator.EPOCH_MILLIS + 1000);
+
+  @Test
+  public void reservationIdsIncrease() {
+    SnowflakeIdGenerator generator = new SnowflakeIdGenerator(3, clock::get);
+    long previous = 0;
+    for (int i = 0; i < 300_000; i++) {
+      long id = generator.nextReservationId();
+      assertThat(id, greaterThan(previous));
+      assertThat(SnowflakeIdGenerator.nodeOf(id), is(3));
+      previous = id;
+    }
+  }
+
+  @Test
+  public void reservationIdsIncreaseWhenClockGoesBack() {
+    SnowflakeIdGenerator generator = new SnowflakeIdGenerator(0, clock::get);
+    long first = generator.nextReservationId();
+    clock.addAndGet(-500);
+    assertThat(generator.nextReservationId(), greaterThan(first));
+  }
+
+  @Test
+  public void nodesNeverShareIds() {
+    SnowflakeIdGenerator first = new SnowflakeIdGenerator(1, clock::get);
+    SnowflakeIdGenerator second = new SnowflakeIdGenerator(2, clock::get);
+    Set<Long> reservationIds = new HashSet<>();
+    Set<Integer> holdIds = new HashSet<>();
+    for (int i = 0; i < 1000; i++) {
+      assertThat(reservationIds.add(first.nextReservationId()), is(true));
+      assertThat(reservationIds.add(second.nextReservationId()), is(true));
+      assertThat(holdIds.add(first.nextHoldId()), is(true));
+      assertThat(holdIds.add(second.nextHoldId()), is(true));
+    }
+  }
+
+  @Test
+  public void holdIdsArePositive() {
+    SnowflakeIdGenerator generator = new SnowflakeIdGenerator(SnowflakeIdGenerator.MAX_NODE_ID, clock::get);
+    for (int i = 0; i < 1000; i++) {
+      assertThat(generator.nextHoldId(), greaterThan(0));
+    }
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void invalidNodeId() {
+    new SnowflakeIdGenerator(SnowflakeIdGenerator.MAX_NODE_ID + 1);
+  }
+}
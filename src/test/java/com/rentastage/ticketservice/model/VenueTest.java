@@ -31,4 +31,23 @@ public class VenueTest {
     Venue venue = new Venue();
     assertSeatLayout(venue.getSeatLayout());
   }
-}
\ No newline at end of file
+
+  @Test
+  public void configuredDimensionsAreUsed() {
+    Venue venue = new Venue(3, 4, "");
+    assertEquals(3, venue.getNoOfRows());
+    assertEquals(4, venue.getNoOfSeatsPerRow());
+    assertEquals(12, venue.getSeatStore().size());
+  }
+
+  @Test
+  public void rowVersionChangesOnlyForTheRowOfTheSeat() {
+    Venue venue = new Venue(3, 4);
+    SeatStore seatStore = venue.getSeatStore();
+    seatStore.getAndSetStatus(seatStore.offset(1, 2), ReservedStatus.ON_HOLD);
+    seatStore.getAndSetStatus(seatStore.offset(1, 2), ReservedStatus.RESERVED);
+    assertEquals(0, venue.getRowVersions().version(0));
+    assertEquals(2, venue.getRowVersions().version(1));
+    assertEquals(0, venue.getRowVersions().version(2));
+  }
+}
@@ -0,0 +1,111 @@
+package com.rentastage.ticketservice.perf;
+
+import com.rentastage.ticketservice.ChannelBasedTicketService;
+import com.rentastage.ticketservice.DefaultTicketService;
+import com.rentastage.ticketservice.TicketService;
+import com.rentastage.ticketservice.model.SeatHold;
+import com.rentastage.ticketservice.model.Venue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+/**
+ * Sells out a venue with many threads holding and reserving at once and reports throughput and latency
+ * for the default engine and the single owner thread engine side by side.
+ * <p>
+ * Usage: {@code EngineContentionComparison [rows] [seatsPerRow] [seatsPerHold] [threads...]}
+ */
+public class EngineContentionComparison {
+
+  public static void main(String[] args) throws Exception {
+    int rows = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+    int seatsPerRow = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+    int seatsPerHold = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+    List<Integer> threadCounts = new ArrayList<>();
+    for (int i = 3; i < args.length; i++) {
+      threadCounts.add(Integer.parseInt(args[i]));
+    }
+    if (threadCounts.isEmpty()) {
+      threadCounts.add(1);
+      threadCounts.add(4);
+      threadCounts.add(Runtime.getRuntime().availableProcessors() * 2);
+    }
+
+    System.out.printf("venue %dx%d, %d seats per hold%n", rows, seatsPerRow, seatsPerHold);
+    for (int threads : threadCounts) {
+      //warm up, then measure
+      for (int run = 0; run < 2; run++) {
+        boolean measure = run == 1;
+        report(measure, "default", threads, sellOut(new DefaultTicketService(new Venue(rows, seatsPerRow)), threads, seatsPerHold));
+        ChannelBasedTicketService channel = new ChannelBasedTicketService(new Venue(rows, seatsPerRow), 4096, 5);
+        report(measure, "channel", threads, sellOut(channel, threads, seatsPerHold));
+        channel.shutdown();
+      }
+    }
+  }
+
+  private static void report(boolean measure, String engine, int threads, Result result) {
+    if (measure) {
+      System.out.printf("%-8s threads=%-3d %,10.0f ops/s  hold[%s]  reserve[%s]%n",
+          engine, threads, result.opsPerSecond(), result.holds, result.reserves);
+    }
+  }
+
+  static Result sellOut(TicketService ticketService, int threads, int seatsPerHold) throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    CountDownLatch start = new CountDownLatch(1);
+    Function<Integer, Result> worker = id -> {
+      Result result = new Result();
+      String customerEmail = "customer" + id + "@example.com";
+      try {
+        start.await();
+      } catch (InterruptedException e) {
+        return result;
+      }
+      while (true) {
+        long begin = System.nanoTime();
+        SeatHold seatHold;
+        try {
+          seatHold = ticketService.findAndHoldSeats(seatsPerHold, customerEmail);
+        } catch (RuntimeException soldOut) {
+          return result;
+        }
+        long held = System.nanoTime();
+        ticketService.reserveSeats(seatHold.getId(), customerEmail);
+        result.holds.record(held - begin);
+        result.reserves.record(System.nanoTime() - held);
+      }
+    };
+    List<Future<Result>> futures = new ArrayList<>();
+    for (int i = 0; i < threads; i++) {
+      int id = i;
+      futures.add(executor.submit(() -> worker.apply(id)));
+    }
+    long begin = System.nanoTime();
+    start.countDown();
+    Result total = new Result();
+    for (Future<Result> future : futures) {
+      Result result = future.get();
+      total.holds.merge(result.holds);
+      total.reserves.merge(result.reserves);
+    }
+    total.elapsedNanos = System.nanoTime() - begin;
+    executor.shutdown();
+    return total;
+  }
+
+  static class Result {
+    final LatencyStats holds = new LatencyStats();
+    final LatencyStats reserves = new LatencyStats();
+    long elapsedNanos;
+
+    double opsPerSecond() {
+      return (holds.count() + reserves.count()) / (elapsedNanos / 1e9);
+    }
+  }
+}
@@ -0,0 +1,158 @@
+package com.rentastage.ticketservice.perf;
+
+import com.rentastage.ticketservice.AsyncTicketService;
+import com.rentastage.ticketservice.Engines;
+import com.rentastage.ticketservice.SeatChangeFeed;
+import com.rentastage.ticketservice.TicketService;
+import com.rentastage.ticketservice.TicketServiceRoutes;
+import com.rentastage.ticketservice.model.Venue;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.HttpHandler;
+import org.springframework.http.server.reactive.ReactorHttpHandlerAdapter;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.server.RouterFunctions;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.ipc.netty.NettyContext;
+import reactor.ipc.netty.http.server.HttpServer;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Drives the HTTP API over loopback and reports the sustained request rate and latency percentiles.
+ * <p>
+ * The API is served by Netty on a free local port, the same way the application serves it. Every customer is a
+ * closed loop that reads the available seats, holds seats and reserves them, so there are always as many requests
+ * in flight as there are customers. The run lasts a fixed time, the venue is sized so it does not sell out.
+ * <p>
+ * Usage: {@code HttpLoadGenerator [key=value...]}, keys are the fields of {@link Config}
+ */
+public class HttpLoadGenerator {
+
+  public static class Config {
+    String engine = "default";
+    int rows = 1000;
+    int seatsPerRow = 1000;
+    int seconds = 10;
+    int customers = 64;
+    int holdSize = 2;
+    int asyncThreads = 4;
+
+    static Config parse(String[] args) {
+      Config config = new Config();
+      for (String arg : args) {
+        String[] pair = arg.split("=", 2);
+        String value = pair[1];
+        switch (pair[0]) {
+          case "engine": config.engine = value; break;
+          case "rows": config.rows = Integer.parseInt(value); break;
+          case "seatsPerRow": config.seatsPerRow = Integer.parseInt(value); break;
+          case "seconds": config.seconds = Integer.parseInt(value); break;
+          case "customers": config.customers = Integer.parseInt(value); break;
+          case "holdSize": config.holdSize = Integer.parseInt(value); break;
+          case "asyncThreads": config.asyncThreads = Integer.parseInt(value); break;
+          default: throw new IllegalArgumentException("Unknown option " + pair[0]);
+        }
+      }
+      return config;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("engine=%s venue=%dx%d seconds=%d customers=%d holdSize=%d asyncThreads=%d",
+          engine, rows, seatsPerRow, seconds, customers, holdSize, asyncThreads);
+    }
+  }
+
+  public static class Report {
+    //Latencies are recorded on the client's event loop threads
+    final LatencyStats reads = new LatencyStats();
+    final LatencyStats holds = new LatencyStats();
+    final LatencyStats reserves = new LatencyStats();
+    final AtomicInteger errors = new AtomicInteger();
+    long elapsedNanos;
+
+    double requestsPerSecond() {
+      return (reads.count() + holds.count() + reserves.count() + errors.get()) / (elapsedNanos / 1e9);
+    }
+
+    @Override
+    public String toString() {
+      return String.format("%,.0f requests/s, %d errors%n  available [%s]%n  hold      [%s]%n  reserve   [%s]",
+          requestsPerSecond(), errors.get(), reads, holds, reserves);
+    }
+  }
+
+  public static void main(String[] args) {
+    Config config = Config.parse(args);
+    System.out.println(config);
+    //warm up, then measure
+    Config warmUp = Config.parse(args);
+    warmUp.seconds = Math.min(config.seconds, 5);
+    run(warmUp);
+    System.out.println(run(config));
+  }
+
+  public static Report run(Config config) {
+    Venue venue = new Venue(config.rows, config.seatsPerRow);
+    TicketService ticketService = Engines.create(config.engine, venue);
+    AsyncTicketService asyncTicketService = new AsyncTicketService(ticketService, config.asyncThreads, 4096);
+    HttpHandler handler = RouterFunctions.toHttpHandler(new TicketServiceRoutes(asyncTicketService, ticketService, venue,
+        new SeatChangeFeed(venue, 65536)).routes());
+    NettyContext server = HttpServer.create("127.0.0.1", 0).newHandler(new ReactorHttpHandlerAdapter(handler)).block();
+    WebClient client = WebClient.create("http://127.0.0.1:" + server.address().getPort());
+    Report report = new Report();
+    long begin = System.nanoTime();
+    long deadline = begin + TimeUnit.SECONDS.toNanos(config.seconds);
+    try {
+      Flux.range(0, config.customers)
+          .flatMap(customer -> customer(client, "customer" + customer + "@example.com", config.holdSize, report)
+              .repeat(() -> System.nanoTime() < deadline), config.customers)
+          .blockLast();
+    } finally {
+      report.elapsedNanos = System.nanoTime() - begin;
+      server.dispose();
+      asyncTicketService.shutdown();
+      Engines.shutdown(ticketService);
+    }
+    return report;
+  }
+
+  /**
+   * One round of a customer: read the available seats, hold seats and reserve them
+   */
+  @SuppressWarnings("unchecked")
+  private static Mono<Object> customer(WebClient client, String customerEmail, int holdSize, Report report) {
+    Mono<Map> read = timed(report.reads, () -> client.get().uri("/seats/available").retrieve().bodyToMono(Map.class));
+    Map<String, Object> holdBody = new HashMap<>();
+    holdBody.put("numSeats", holdSize);
+    holdBody.put("customerEmail", customerEmail);
+    Mono<Map> hold = timed(report.holds, () -> client.post().uri("/holds").contentType(MediaType.APPLICATION_JSON)
+        .syncBody(holdBody).retrieve().bodyToMono(Map.class));
+    return read.then(hold)
+        .flatMap(seatHold -> timed(report.reserves, () -> client.post().uri("/holds/{id}/reservation", seatHold.get("id"))
+            .contentType(MediaType.APPLICATION_JSON).syncBody(Collections.singletonMap("customerEmail", customerEmail))
+            .retrieve().bodyToMono(Map.class)))
+        .cast(Object.class)
+        .onErrorResume(e -> {
+          report.errors.incrementAndGet();
+          return Mono.empty();
+        });
+  }
+
+  private static <T> Mono<T> timed(LatencyStats stats, Supplier<Mono<T>> call) {
+    return Mono.defer(() -> {
+      long begin = System.nanoTime();
+      return call.get().doOnSuccess(value -> {
+        synchronized (stats) {
+          stats.record(System.nanoTime() - begin);
+        }
+      });
+    });
+  }
+}
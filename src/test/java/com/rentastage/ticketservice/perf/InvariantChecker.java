@@ -0,0 +1,76 @@
+package com.rentastage.ticketservice.perf;
+
+import com.rentastage.ticketservice.TicketService;
+import com.rentastage.ticketservice.model.ReservedStatus;
+import com.rentastage.ticketservice.model.Seat;
+import com.rentastage.ticketservice.model.SeatHold;
+import com.rentastage.ticketservice.model.SeatStore;
+import com.rentastage.ticketservice.model.Venue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Checks the state of a venue after a load run, once all holds that were not reserved have expired.
+ * <p>
+ * Holds do not expire during the run, so a seat may appear in at most one hold. Reserved seats must be RESERVED,
+ * the seats of abandoned holds must have been released, and the counts of the venue must match the holds and
+ * {@link TicketService#numSeatsAvailable()}.
+ */
+public class InvariantChecker {
+
+  /**
+   * @param holds every hold handed out during the run
+   * @param confirmationCodes the confirmation code of every reserved hold by hold id
+   * @return a description of every violation found, empty when the venue is consistent
+   */
+  public List<String> check(Venue venue, TicketService ticketService, List<SeatHold> holds, Map<Integer, String> confirmationCodes) {
+    List<String> violations = new ArrayList<>();
+    Map<Seat, Integer> holdBySeat = new HashMap<>();
+    int reservedSeats = 0;
+    for (SeatHold seatHold : holds) {
+      boolean reserved = confirmationCodes.containsKey(seatHold.getId());
+      ReservedStatus expected = reserved ? ReservedStatus.RESERVED : ReservedStatus.UNRESERVED;
+      for (Seat seat : seatHold.getHolds()) {
+        Integer other = holdBySeat.put(seat, seatHold.getId());
+        if (other != null) {
+          violations.add(String.format("Seat %s is in holds %d and %d", seat, other, seatHold.getId()));
+        }
+        if (seat.getStatus() != expected) {
+          violations.add(String.format("Seat %s of hold %d is %s, expected %s", seat, seatHold.getId(), seat.getStatus(), expected));
+        }
+      }
+      if (reserved) {
+        reservedSeats += seatHold.getHolds().size();
+      }
+    }
+
+    Set<String> codes = new HashSet<>();
+    confirmationCodes.forEach((seatHoldId, code) -> {
+      if (!codes.add(code)) {
+        violations.add(String.format("Confirmation code %s was given to more than one hold", code));
+      }
+    });
+
+    int[] counts = new int[ReservedStatus.values().length];
+    SeatStore seatStore = venue.getSeatStore();
+    for (int offset = 0; offset < seatStore.size(); offset++) {
+      counts[seatStore.getStatus(offset).ordinal()]++;
+    }
+    if (counts[ReservedStatus.ON_HOLD.ordinal()] != 0) {
+      violations.add(String.format("%d seats are still on hold after all holds expired", counts[ReservedStatus.ON_HOLD.ordinal()]));
+    }
+    if (counts[ReservedStatus.RESERVED.ordinal()] != reservedSeats) {
+      violations.add(String.format("%d seats are reserved, reservations hold %d", counts[ReservedStatus.RESERVED.ordinal()], reservedSeats));
+    }
+    if (counts[ReservedStatus.UNRESERVED.ordinal()] != ticketService.numSeatsAvailable()) {
+      violations.add(String.format("%d seats are unreserved, numSeatsAvailable() is %d",
+          counts[ReservedStatus.UNRESERVED.ordinal()], ticketService.numSeatsAvailable()));
+    }
+    return violations;
+  }
+}
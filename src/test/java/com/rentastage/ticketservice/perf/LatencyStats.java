@@ -0,0 +1,49 @@
+package com.rentastage.ticketservice.perf;
+
+import java.util.Arrays;
+
+/**
+ * Collects operation latencies in nanoseconds and reports percentiles.
+ * Not thread safe, use one per thread and {@link #merge(LatencyStats)} them afterwards
+ */
+public class LatencyStats {
+  private long[] samples = new long[1024];
+  private int count;
+
+  public void record(long nanos) {
+    if (count == samples.length) {
+      samples = Arrays.copyOf(samples, count * 2);
+    }
+    samples[count++] = nanos;
+  }
+
+  public void merge(LatencyStats other) {
+    for (int i = 0; i < other.count; i++) {
+      record(other.samples[i]);
+    }
+  }
+
+  public int count() {
+    return count;
+  }
+
+  /**
+   * @param percentile between 0 and 100
+   * @return the latency at the given percentile in microseconds
+   */
+  public double percentileMicros(double percentile) {
+    if (count == 0) {
+      return 0;
+    }
+    long[] sorted = Arrays.copyOf(samples, count);
+    Arrays.sort(sorted);
+    int index = (int) Math.min(count - 1, Math.ceil(percentile / 100 * count) - 1);
+    return sorted[Math.max(0, index)] / 1000.0;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("n=%d p50=%.1fus p99=%.1fus p999=%.1fus max=%.1fus",
+        count, percentileMicros(50), percentileMicros(99), percentileMicros(99.9), percentileMicros(100));
+  }
+}
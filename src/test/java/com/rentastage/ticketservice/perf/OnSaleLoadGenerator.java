@@ -0,0 +1,184 @@
+package com.rentastage.ticketservice.perf;
+
+import com.rentastage.ticketservice.Engines;
+import com.rentastage.ticketservice.TicketService;
+import com.rentastage.ticketservice.model.SeatHold;
+import com.rentastage.ticketservice.model.Venue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Replays an on-sale rush against a ticket service in process and checks the venue afterwards.
+ * <p>
+ * Every customer holds a Zipf distributed number of seats, then either abandons the hold or reserves it.
+ * Some customers retry the reserve, as a client would after a timeout, and must get the same confirmation code.
+ * Customers are run by a pool of threads that all start at once. After the run every abandoned hold is
+ * expired and {@link InvariantChecker} verifies the venue.
+ * <p>
+ * Usage: {@code OnSaleLoadGenerator [key=value...]}, keys are the fields of {@link Config}
+ */
+public class OnSaleLoadGenerator {
+
+  public static class Config {
+    String engine = "default";
+    int rows = 100;
+    int seatsPerRow = 100;
+    int customers = 10000;
+    int threads = 64;
+    int maxHoldSize = 10;
+    double zipfExponent = 1.2;
+    double abandonRate = 0.2;
+    double reserveRetryRate = 0.05;
+
+    static Config parse(String[] args) {
+      Config config = new Config();
+      for (String arg : args) {
+        String[] pair = arg.split("=", 2);
+        String value = pair[1];
+        switch (pair[0]) {
+          case "engine": config.engine = value; break;
+          case "rows": config.rows = Integer.parseInt(value); break;
+          case "seatsPerRow": config.seatsPerRow = Integer.parseInt(value); break;
+          case "customers": config.customers = Integer.parseInt(value); break;
+          case "threads": config.threads = Integer.parseInt(value); break;
+          case "maxHoldSize": config.maxHoldSize = Integer.parseInt(value); break;
+          case "zipfExponent": config.zipfExponent = Double.parseDouble(value); break;
+          case "abandonRate": config.abandonRate = Double.parseDouble(value); break;
+          case "reserveRetryRate": config.reserveRetryRate = Double.parseDouble(value); break;
+          default: throw new IllegalArgumentException("Unknown option " + pair[0]);
+        }
+      }
+      return config;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("engine=%s venue=%dx%d customers=%d threads=%d maxHoldSize=%d zipfExponent=%.2f abandonRate=%.2f reserveRetryRate=%.2f",
+          engine, rows, seatsPerRow, customers, threads, maxHoldSize, zipfExponent, abandonRate, reserveRetryRate);
+    }
+  }
+
+  public static class Report {
+    final LatencyStats holds = new LatencyStats();
+    final LatencyStats reserves = new LatencyStats();
+    final LatencyStats retries = new LatencyStats();
+    int abandoned;
+    int rejected;
+    long elapsedNanos;
+    List<String> violations = new ArrayList<>();
+
+    double opsPerSecond() {
+      return (holds.count() + reserves.count() + retries.count() + rejected) / (elapsedNanos / 1e9);
+    }
+
+    @Override
+    public String toString() {
+      return String.format("%,.0f ops/s, %d rejected, %d abandoned%n  hold    [%s]%n  reserve [%s]%n  retry   [%s]%n  %d violations%s",
+          opsPerSecond(), rejected, abandoned, holds, reserves, retries, violations.size(),
+          violations.isEmpty() ? "" : "\n  " + String.join("\n  ", violations.subList(0, Math.min(20, violations.size()))));
+    }
+  }
+
+  public static void main(String[] args) throws InterruptedException {
+    Config config = Config.parse(args);
+    System.out.println(config);
+    //warm up, then measure
+    run(config);
+    Report report = run(config);
+    System.out.println(report);
+    if (!report.violations.isEmpty()) {
+      System.exit(1);
+    }
+  }
+
+  public static Report run(Config config) throws InterruptedException {
+    Venue venue = new Venue(config.rows, config.seatsPerRow);
+    TicketService ticketService = Engines.create(config.engine, venue);
+    ZipfDistribution holdSizes = new ZipfDistribution(config.maxHoldSize, config.zipfExponent);
+    List<SeatHold> holds = Collections.synchronizedList(new ArrayList<>());
+    Map<Integer, String> confirmationCodes = new ConcurrentHashMap<>();
+    List<String> violations = Collections.synchronizedList(new ArrayList<>());
+    AtomicInteger abandoned = new AtomicInteger();
+    AtomicInteger rejected = new AtomicInteger();
+    ThreadLocal<Report> threadReport = ThreadLocal.withInitial(Report::new);
+    List<Report> threadReports = Collections.synchronizedList(new ArrayList<>());
+
+    ExecutorService executor = Executors.newFixedThreadPool(config.threads, runnable -> {
+      Thread thread = new Thread(() -> {
+        threadReports.add(threadReport.get());
+        runnable.run();
+      });
+      thread.setDaemon(true);
+      return thread;
+    });
+    CountDownLatch start = new CountDownLatch(1);
+    for (int i = 0; i < config.customers; i++) {
+      String customerEmail = "customer" + i + "@example.com";
+      executor.execute(() -> {
+        try {
+          start.await();
+        } catch (InterruptedException e) {
+          return;
+        }
+        Report report = threadReport.get();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long begin = System.nanoTime();
+        SeatHold seatHold;
+        try {
+          seatHold = ticketService.findAndHoldSeats(holdSizes.sample(), customerEmail);
+        } catch (RuntimeException soldOut) {
+          rejected.incrementAndGet();
+          return;
+        }
+        report.holds.record(System.nanoTime() - begin);
+        holds.add(seatHold);
+        if (random.nextDouble() < config.abandonRate) {
+          abandoned.incrementAndGet();
+          return;
+        }
+        begin = System.nanoTime();
+        String code = ticketService.reserveSeats(seatHold.getId(), customerEmail);
+        report.reserves.record(System.nanoTime() - begin);
+        confirmationCodes.put(seatHold.getId(), code);
+        if (random.nextDouble() < config.reserveRetryRate) {
+          begin = System.nanoTime();
+          String retried = ticketService.reserveSeats(seatHold.getId(), customerEmail);
+          report.retries.record(System.nanoTime() - begin);
+          if (!retried.equals(code)) {
+            violations.add(String.format("Retried reserve of hold %d returned %s, expected %s", seatHold.getId(), retried, code));
+          }
+        }
+      });
+    }
+    long begin = System.nanoTime();
+    start.countDown();
+    executor.shutdown();
+    executor.awaitTermination(10, TimeUnit.MINUTES);
+    long elapsedNanos = System.nanoTime() - begin;
+
+    Engines.expireAllSeatHolds(ticketService);
+    Report total = new Report();
+    threadReports.forEach(report -> {
+      total.holds.merge(report.holds);
+      total.reserves.merge(report.reserves);
+      total.retries.merge(report.retries);
+    });
+    total.abandoned = abandoned.get();
+    total.rejected = rejected.get();
+    total.elapsedNanos = elapsedNanos;
+    total.violations.addAll(violations);
+    total.violations.addAll(new InvariantChecker().check(venue, ticketService, holds, confirmationCodes));
+    Engines.shutdown(ticketService);
+    return total;
+  }
+}
@@ -0,0 +1,30 @@
+package com.rentastage.ticketservice.perf;
+
+import com.rentastage.ticketservice.Engines;
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class OnSaleLoadGeneratorTest {
+
+  @Test
+  public void rushLeavesVenueConsistent() throws InterruptedException {
+    for (String engine : Engines.NAMES) {
+      OnSaleLoadGenerator.Config config = new OnSaleLoadGenerator.Config();
+      config.engine = engine;
+      config.rows = 10;
+      config.seatsPerRow = 34;
+      config.customers = 500;
+      config.threads = 16;
+      config.reserveRetryRate = 0.5;
+      OnSaleLoadGenerator.Report report = OnSaleLoadGenerator.run(config);
+
+      assertThat(engine + " " + report.violations, report.violations, is(Collections.emptyList()));
+      assertThat("venue should sell out", report.rejected, greaterThan(0));
+    }
+  }
+}
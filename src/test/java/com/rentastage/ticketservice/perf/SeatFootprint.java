@@ -0,0 +1,50 @@
+package com.rentastage.ticketservice.perf;
+
+import com.rentastage.ticketservice.DefaultTicketService;
+import com.rentastage.ticketservice.TicketService;
+import com.rentastage.ticketservice.model.Venue;
+
+/**
+ * Measures the heap retained per seat by a venue and its ticket service, with all seats held in groups of 4.
+ * <p>
+ * Usage: {@code SeatFootprint [rows] [seatsPerRow]}
+ */
+public class SeatFootprint {
+
+  public static void main(String[] args) {
+    int rows = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+    int seatsPerRow = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+    int seats = rows * seatsPerRow;
+
+    long before = usedHeap();
+    Venue venue = new Venue(rows, seatsPerRow);
+    long afterVenue = usedHeap();
+    TicketService ticketService = new DefaultTicketService(venue);
+    long afterService = usedHeap();
+    for (int i = 0; i < seats / 4; i++) {
+      ticketService.findAndHoldSeats(4, "customer@example.com");
+    }
+    long afterHolds = usedHeap();
+
+    System.out.printf("%d seats%n", seats);
+    System.out.printf("venue          %8.1f bytes/seat%n", (afterVenue - before) / (double) seats);
+    System.out.printf("ticket service %8.1f bytes/seat%n", (afterService - afterVenue) / (double) seats);
+    System.out.printf("seat holds     %8.1f bytes/seat%n", (afterHolds - afterService) / (double) seats);
+    System.out.printf("total          %8.1f bytes/seat%n", (afterHolds - before) / (double) seats);
+    //keep everything reachable until measured
+    System.out.println(ticketService.numSeatsAvailable() + venue.getNoOfRows() > 0 ? "" : "?");
+  }
+
+  private static long usedHeap() {
+    Runtime runtime = Runtime.getRuntime();
+    for (int i = 0; i < 5; i++) {
+      System.gc();
+      try {
+        Thread.sleep(50);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+}
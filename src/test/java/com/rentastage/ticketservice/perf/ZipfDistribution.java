@@ -0,0 +1,29 @@
+package com.rentastage.ticketservice.perf;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Samples integers from 1 to n where k is drawn with a probability proportional to 1 / k^exponent, so small
+ * values are common and large values rare. Thread safe
+ */
+public class ZipfDistribution {
+  private final double[] cumulative;
+
+  public ZipfDistribution(int n, double exponent) {
+    cumulative = new double[n];
+    double sum = 0;
+    for (int k = 1; k <= n; k++) {
+      sum += 1 / Math.pow(k, exponent);
+      cumulative[k - 1] = sum;
+    }
+    for (int i = 0; i < n; i++) {
+      cumulative[i] /= sum;
+    }
+  }
+
+  public int sample() {
+    int index = Arrays.binarySearch(cumulative, ThreadLocalRandom.current().nextDouble());
+    return (index >= 0 ? index : -index - 1) + 1;
+  }
+}